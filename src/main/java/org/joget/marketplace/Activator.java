@@ -22,5 +22,14 @@ public class Activator implements BundleActivator {
         for (ServiceRegistration registration : registrationList) {
             registration.unregister();
         }
+
+        // Release the background threads of the shared HTTP client, node balancer, model catalogue, generations
+        // and zip compression, and the archives spilled to disk
+        OllamaHttpClient.getInstance().shutdown();
+        OllamaNodeBalancer.getInstance().shutdown();
+        ModelCatalog.getInstance().shutdown();
+        GenerationExecutor.getInstance().shutdown();
+        ParallelZipWriter.shutdown();
+        ArchiveCache.getInstance().clear();
     }
 }
\ No newline at end of file
@@ -0,0 +1,535 @@
+package org.joget.marketplace;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Bounds the number of generations running against each Ollama endpoint
+ * setting and queues the rest. An endpoint setting that lists several nodes
+ * gets the concurrency limit once per node. The limits of an endpoint setting
+ * are the lowest any menu calling it asked for.
+ * 
+ * Waiting requests are admitted fairly: the queue takes turns between apps,
+ * and within an app between users, so one busy user or app cannot hold every
+ * slot. Interactive requests go ahead of background work, but background work
+ * still gets one slot in every few so it never starves. When the queue is full
+ * new requests are rejected straight away with an estimate of when to retry.
+ * 
+ * A waiting request either blocks a thread in {@link Ticket#await(long)} or
+ * registers a callback with {@link Ticket#onAdmitted(Runnable)}, which lets
+ * it wait without holding a thread.
+ */
+public class AdmissionController {
+
+    public static final int DEFAULT_MAX_CONCURRENT = 4;
+    public static final int DEFAULT_MAX_QUEUE_LENGTH = 50;
+
+    // One admission in this many goes to background work when both lanes wait
+    private static final int BACKGROUND_SHARE = 4;
+
+    // Assumed duration of a generation until one has been measured
+    private static final long INITIAL_SERVICE_TIME = 30000L;
+
+    private static final AdmissionController INSTANCE = new AdmissionController();
+
+    /**
+     * Priority lanes of the queue
+     */
+    public enum Lane {
+        INTERACTIVE, BACKGROUND
+    }
+
+    private final Map<String, EndpointQueue> queues = new ConcurrentHashMap<>();
+
+    // Callbacks of tickets admitted or released, run once the lock is let go
+    private final List<Runnable> callbacks = new ArrayList<>();
+
+    private AdmissionController() {
+    }
+
+    /**
+     * Gets the controller shared by all instances of the plugin
+     * 
+     * @return The shared controller
+     */
+    public static AdmissionController getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets the concurrency and queue limits a menu asks for on an endpoint
+     * setting
+     * 
+     * @param endpoint       The endpoint setting
+     * @param menuKey        The key of the menu
+     * @param maxConcurrent  Generations allowed to run at once per node, or 0
+     *                       or less for the default
+     * @param maxQueueLength Requests allowed to wait, or 0 or less for the
+     *                       default
+     */
+    public void configure(String endpoint, String menuKey, int maxConcurrent, int maxQueueLength) {
+        synchronized (this) {
+            EndpointQueue queue = queues.computeIfAbsent(endpoint, key -> new EndpointQueue());
+            queue.maxQueueLength.set(menuKey, maxQueueLength);
+            if (queue.maxConcurrent.set(menuKey, maxConcurrent)) {
+                // A raised limit can admit requests that are already waiting
+                queue.dispatch();
+                notifyAll();
+            }
+        }
+        runCallbacks();
+    }
+
+    /**
+     * Queues a request for an endpoint. The request is admitted immediately if
+     * a slot is free.
+     * 
+     * @param endpoint The endpoint setting the request will call
+     * @param nodes    The number of nodes the endpoint setting lists
+     * @param appId    The app the request comes from
+     * @param username The user sending the request
+     * @param lane     The priority lane
+     * @return The ticket of the request, which must be released once the
+     *         generation is over
+     * @throws QueueFullException If the queue of the endpoint is full
+     */
+    public Ticket enqueue(String endpoint, int nodes, String appId, String username, Lane lane)
+            throws QueueFullException {
+        Ticket ticket;
+        synchronized (this) {
+            EndpointQueue queue = queues.computeIfAbsent(endpoint, key -> new EndpointQueue());
+            queue.nodes = Math.max(1, nodes);
+
+            if (queue.waiting >= queue.maxQueueLength.get()) {
+                queue.rejected++;
+                throw new QueueFullException(queue.estimateWait(queue.waiting + 1));
+            }
+
+            ticket = new Ticket(queue, appId != null ? appId : "", username != null ? username : "", lane);
+            queue.add(ticket);
+            queue.dispatch();
+            if (!ticket.admitted) {
+                ticket.waited = true;
+                queue.queued++;
+            }
+            notifyAll();
+        }
+        runCallbacks();
+        return ticket;
+    }
+
+    private void runCallbacks() {
+        List<Runnable> ready;
+        synchronized (this) {
+            if (callbacks.isEmpty()) {
+                return;
+            }
+            ready = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        for (Runnable callback : ready) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Gets the queue statistics of every endpoint used so far
+     * 
+     * @return A JSON object keyed by endpoint
+     * @throws JSONException If the statistics cannot be built
+     */
+    public synchronized JSONObject getStatistics() throws JSONException {
+        JSONObject stats = new JSONObject();
+        JSONObject endpoints = new JSONObject();
+        for (Map.Entry<String, EndpointQueue> entry : queues.entrySet()) {
+            endpoints.put(entry.getKey(), entry.getValue().toJson());
+        }
+        stats.put("endpoints", endpoints);
+        return stats;
+    }
+
+    /**
+     * A request's place in the queue of an endpoint
+     */
+    public class Ticket {
+
+        private final EndpointQueue queue;
+        private final String appId;
+        private final String username;
+        private final Lane lane;
+        private final long queuedAt = System.currentTimeMillis();
+
+        private boolean admitted = false;
+        private boolean waited = false;
+        private boolean finished = false;
+        private long admittedAt;
+        private Runnable callback;
+
+        Ticket(EndpointQueue queue, String appId, String username, Lane lane) {
+            this.queue = queue;
+            this.appId = appId;
+            this.username = username;
+            this.lane = lane;
+        }
+
+        /**
+         * Waits until the request is admitted
+         * 
+         * @param timeoutMs The longest time to wait
+         * @return true if the request is admitted
+         * @throws InterruptedException If the thread is interrupted while
+         *                              waiting
+         */
+        public boolean await(long timeoutMs) throws InterruptedException {
+            synchronized (AdmissionController.this) {
+                long deadline = System.currentTimeMillis() + timeoutMs;
+                while (!admitted && !finished) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    AdmissionController.this.wait(remaining);
+                }
+                return admitted;
+            }
+        }
+
+        /**
+         * Checks whether the request is admitted, without waiting
+         * 
+         * @return true if the request holds a slot
+         */
+        public boolean isAdmitted() {
+            synchronized (AdmissionController.this) {
+                return admitted;
+            }
+        }
+
+        /**
+         * Calls back once the request is admitted, or once it gives up its
+         * place without being admitted, so it can wait without holding a
+         * thread. The callback runs at once if that already happened, and
+         * otherwise on the thread that admitted or released the request, with
+         * no lock held. It must return quickly.
+         * 
+         * @param callback The callback
+         */
+        public void onAdmitted(Runnable callback) {
+            synchronized (AdmissionController.this) {
+                if (!admitted && !finished) {
+                    this.callback = callback;
+                    return;
+                }
+            }
+            callback.run();
+        }
+
+        /**
+         * Gets the position of the request in the order it will be admitted
+         * 
+         * @return The 1-based position, or 0 once the request is admitted
+         */
+        public int getPosition() {
+            synchronized (AdmissionController.this) {
+                return admitted || finished ? 0 : queue.positionOf(this);
+            }
+        }
+
+        /**
+         * Estimates how long the request still has to wait
+         * 
+         * @return The estimated wait in milliseconds
+         */
+        public long getEstimatedWait() {
+            synchronized (AdmissionController.this) {
+                return admitted || finished ? 0 : queue.estimateWait(queue.positionOf(this));
+            }
+        }
+
+        /**
+         * Gets how long the request has waited so far
+         * 
+         * @return The wait in milliseconds
+         */
+        public long getWaited() {
+            synchronized (AdmissionController.this) {
+                return (admitted ? admittedAt : System.currentTimeMillis()) - queuedAt;
+            }
+        }
+
+        /**
+         * Gives up the slot of an admitted request, or the place of one still
+         * waiting, and admits the next request in line. Calling it more than
+         * once has no effect.
+         */
+        public void release() {
+            synchronized (AdmissionController.this) {
+                if (finished) {
+                    return;
+                }
+                finished = true;
+
+                if (admitted) {
+                    queue.active--;
+                    queue.recordServiceTime(System.currentTimeMillis() - admittedAt);
+                } else {
+                    queue.remove(this);
+                    if (callback != null) {
+                        callbacks.add(callback);
+                        callback = null;
+                    }
+                }
+                queue.dispatch();
+                AdmissionController.this.notifyAll();
+            }
+            runCallbacks();
+        }
+    }
+
+    /**
+     * The running generations and waiting requests of a single endpoint. All
+     * access is guarded by the controller.
+     */
+    private class EndpointQueue {
+
+        private final Map<Lane, LaneQueue> lanes = new EnumMap<>(Lane.class);
+        private final EndpointLimit maxConcurrent = new EndpointLimit(DEFAULT_MAX_CONCURRENT);
+        private final EndpointLimit maxQueueLength = new EndpointLimit(DEFAULT_MAX_QUEUE_LENGTH);
+        private int nodes = 1;
+        private int active = 0;
+        private int waiting = 0;
+        private int admissionsSinceBackground = 0;
+        private double averageServiceTime = INITIAL_SERVICE_TIME;
+        private boolean serviceTimeMeasured = false;
+
+        private long admitted = 0;
+        private long queued = 0;
+        private long rejected = 0;
+        private long totalWait = 0;
+
+        EndpointQueue() {
+            for (Lane lane : Lane.values()) {
+                lanes.put(lane, new LaneQueue());
+            }
+        }
+
+        void add(Ticket ticket) {
+            lanes.get(ticket.lane).add(ticket);
+            waiting++;
+        }
+
+        void remove(Ticket ticket) {
+            if (lanes.get(ticket.lane).remove(ticket)) {
+                waiting--;
+            }
+        }
+
+        /**
+         * Admits waiting requests while slots are free
+         */
+        void dispatch() {
+            while (active < getCapacity() && waiting > 0) {
+                Lane lane = nextLane(lanes.get(Lane.INTERACTIVE).isEmpty(), lanes.get(Lane.BACKGROUND).isEmpty(),
+                        admissionsSinceBackground);
+                admissionsSinceBackground = lane == Lane.BACKGROUND ? 0 : admissionsSinceBackground + 1;
+
+                Ticket ticket = lanes.get(lane).poll();
+                waiting--;
+                active++;
+                ticket.admitted = true;
+                ticket.admittedAt = System.currentTimeMillis();
+                if (ticket.callback != null) {
+                    callbacks.add(ticket.callback);
+                    ticket.callback = null;
+                }
+
+                admitted++;
+                if (ticket.waited) {
+                    totalWait += ticket.admittedAt - ticket.queuedAt;
+                }
+            }
+        }
+
+        /**
+         * Works out the position of a ticket by replaying the admission order
+         * on a copy of the queue
+         */
+        int positionOf(Ticket ticket) {
+            LaneQueue interactive = lanes.get(Lane.INTERACTIVE).copy();
+            LaneQueue background = lanes.get(Lane.BACKGROUND).copy();
+            int sinceBackground = admissionsSinceBackground;
+
+            int position = 1;
+            while (!interactive.isEmpty() || !background.isEmpty()) {
+                Lane lane = nextLane(interactive.isEmpty(), background.isEmpty(), sinceBackground);
+                sinceBackground = lane == Lane.BACKGROUND ? 0 : sinceBackground + 1;
+                if ((lane == Lane.INTERACTIVE ? interactive : background).poll() == ticket) {
+                    return position;
+                }
+                position++;
+            }
+            return position;
+        }
+
+        /**
+         * Estimates the wait of the request at the given position from the
+         * measured duration of recent generations
+         */
+        long estimateWait(int position) {
+            int rounds = (position + getCapacity() - 1) / getCapacity();
+            return (long) (rounds * averageServiceTime);
+        }
+
+        int getCapacity() {
+            return maxConcurrent.get() * nodes;
+        }
+
+        void recordServiceTime(long duration) {
+            if (!serviceTimeMeasured) {
+                averageServiceTime = duration;
+                serviceTimeMeasured = true;
+            } else {
+                averageServiceTime = 0.8 * averageServiceTime + 0.2 * duration;
+            }
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("capacity", getCapacity());
+            json.put("maxQueueLength", maxQueueLength.get());
+            json.put("active", active);
+            json.put("waiting", waiting);
+            json.put("admitted", admitted);
+            json.put("queued", queued);
+            json.put("rejected", rejected);
+            json.put("averageWait", queued > 0 ? totalWait / queued : 0);
+            json.put("averageServiceTime", (long) averageServiceTime);
+            return json;
+        }
+    }
+
+    private static Lane nextLane(boolean interactiveEmpty, boolean backgroundEmpty, int admissionsSinceBackground) {
+        if (backgroundEmpty) {
+            return Lane.INTERACTIVE;
+        }
+        if (interactiveEmpty || admissionsSinceBackground >= BACKGROUND_SHARE - 1) {
+            return Lane.BACKGROUND;
+        }
+        return Lane.INTERACTIVE;
+    }
+
+    /**
+     * The waiting requests of one lane, taking turns between apps and, within
+     * each app, between users. Turns rotate by moving the app and user that
+     * were just served to the back of their maps.
+     */
+    private static class LaneQueue {
+
+        private final LinkedHashMap<String, LinkedHashMap<String, Deque<Ticket>>> apps = new LinkedHashMap<>();
+
+        boolean isEmpty() {
+            return apps.isEmpty();
+        }
+
+        void add(Ticket ticket) {
+            apps.computeIfAbsent(ticket.appId, key -> new LinkedHashMap<>())
+                    .computeIfAbsent(ticket.username, key -> new ArrayDeque<>())
+                    .addLast(ticket);
+        }
+
+        boolean remove(Ticket ticket) {
+            LinkedHashMap<String, Deque<Ticket>> users = apps.get(ticket.appId);
+            if (users == null) {
+                return false;
+            }
+            Deque<Ticket> tickets = users.get(ticket.username);
+            if (tickets == null || !tickets.remove(ticket)) {
+                return false;
+            }
+            if (tickets.isEmpty()) {
+                users.remove(ticket.username);
+                if (users.isEmpty()) {
+                    apps.remove(ticket.appId);
+                }
+            }
+            return true;
+        }
+
+        Ticket poll() {
+            Iterator<Map.Entry<String, LinkedHashMap<String, Deque<Ticket>>>> appIterator = apps.entrySet()
+                    .iterator();
+            if (!appIterator.hasNext()) {
+                return null;
+            }
+            Map.Entry<String, LinkedHashMap<String, Deque<Ticket>>> app = appIterator.next();
+            appIterator.remove();
+
+            LinkedHashMap<String, Deque<Ticket>> users = app.getValue();
+            Iterator<Map.Entry<String, Deque<Ticket>>> userIterator = users.entrySet().iterator();
+            Map.Entry<String, Deque<Ticket>> user = userIterator.next();
+            userIterator.remove();
+
+            Ticket ticket = user.getValue().pollFirst();
+
+            // Move the user and the app to the back of the line if they still wait
+            if (!user.getValue().isEmpty()) {
+                users.put(user.getKey(), user.getValue());
+            }
+            if (!users.isEmpty()) {
+                apps.put(app.getKey(), users);
+            }
+            return ticket;
+        }
+
+        LaneQueue copy() {
+            LaneQueue copy = new LaneQueue();
+            for (Map.Entry<String, LinkedHashMap<String, Deque<Ticket>>> app : apps.entrySet()) {
+                LinkedHashMap<String, Deque<Ticket>> users = new LinkedHashMap<>();
+                for (Map.Entry<String, Deque<Ticket>> user : app.getValue().entrySet()) {
+                    users.put(user.getKey(), new ArrayDeque<>(user.getValue()));
+                }
+                copy.apps.put(app.getKey(), users);
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Thrown when the queue of an endpoint is full
+     */
+    public static class QueueFullException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long retryAfterSeconds;
+
+        public QueueFullException(long estimatedWait) {
+            super("The assistant is busy, please try again in " + toSeconds(estimatedWait) + " seconds");
+            this.retryAfterSeconds = toSeconds(estimatedWait);
+        }
+
+        private static long toSeconds(long milliseconds) {
+            return Math.max(1, (milliseconds + 999) / 1000);
+        }
+
+        /**
+         * Gets the estimated time until a place in the queue frees up
+         * 
+         * @return The estimate in whole seconds, at least 1
+         */
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+}
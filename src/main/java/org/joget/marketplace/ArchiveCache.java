@@ -0,0 +1,532 @@
+package org.joget.marketplace;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+
+import org.joget.commons.util.LogUtil;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Cache of the zip archives built from responses, addressed by a hash of the
+ * response text. Zip entries carry a fixed timestamp, so the same response
+ * always gives the same bytes and the key doubles as the ETag of the archive.
+ * 
+ * Archives are kept in memory up to a byte budget. The least recently used
+ * ones are then written to a temporary directory, which is itself bounded;
+ * archives too large for the memory budget go there directly.
+ */
+public class ArchiveCache {
+
+    private static final long MAX_MEMORY_BYTES = 32L * 1024 * 1024;
+    private static final long MAX_DISK_BYTES = 512L * 1024 * 1024;
+
+    // Archives larger than this skip the memory budget
+    private static final long MAX_MEMORY_ARCHIVE = MAX_MEMORY_BYTES / 4;
+
+    private static final ArchiveCache INSTANCE = new ArchiveCache();
+
+    // Access-ordered so iteration starts from the least recently used archive
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final File directory;
+    private long memoryBytes = 0;
+    private long diskBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long spills = 0;
+    private long evictions = 0;
+
+    private ArchiveCache() {
+        directory = new File(System.getProperty("java.io.tmpdir"), "ollama-chat-archives");
+        // Archives left by an earlier run are not tracked, so they would never be evicted
+        deleteFiles();
+    }
+
+    /**
+     * Gets the cache shared by all instances of the plugin
+     * 
+     * @return The shared cache
+     */
+    public static ArchiveCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Builds the key of the archive of a response
+     * 
+     * @param text   The response text
+     * @param parsed Whether the archive is built from the files of a JSON
+     *               project rather than extracted from the text
+     * @return The hex-encoded SHA-256 key
+     */
+    public static String buildKey(String text, boolean parsed) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((byte) (parsed ? 1 : 0));
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return ResponseCache.toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Builds the key of the archive of a response read from a stream, equal to
+     * the key of the same text given as a string
+     * 
+     * @param text   The response text, left open
+     * @param parsed Whether the archive is built from the files of a JSON
+     *               project rather than extracted from the text
+     * @return The hex-encoded SHA-256 key
+     * @throws IOException If the text cannot be read
+     */
+    public static String buildKey(Reader text, boolean parsed) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        digest.update((byte) (parsed ? 1 : 0));
+
+        // Encoded in chunks straight into the digest
+        Writer encoder = new OutputStreamWriter(new DigestOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }, digest), StandardCharsets.UTF_8);
+        char[] chunk = new char[8192];
+        int read;
+        while ((read = text.read(chunk)) != -1) {
+            encoder.write(chunk, 0, read);
+        }
+        encoder.flush();
+        return ResponseCache.toHex(digest.digest());
+    }
+
+    /**
+     * Gets an archive
+     * 
+     * @param key The key of the archive
+     * @return The archive, or null if it is not cached. An archive read from
+     *         disk must be closed.
+     */
+    public synchronized Archive get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.data != null) {
+                hits++;
+                return new Archive(entry.data, null, entry.length);
+            }
+            try {
+                // Opened while the lock is held, so the file cannot be evicted first
+                Archive archive = new Archive(null, new FileInputStream(entry.file), entry.length);
+                hits++;
+                return archive;
+            } catch (IOException e) {
+                LogUtil.warn(ArchiveCache.class.getName(), "Could not read cached archive: " + e.getMessage());
+                remove(key, entry);
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Keeps an archive, spilling the least recently used archives to disk
+     * while the memory budget is exceeded
+     * 
+     * @param key  The key of the archive
+     * @param data The zip file data
+     */
+    public void put(String key, byte[] data) {
+        put(new Entry(key, data, data.length));
+    }
+
+    /**
+     * Keeps an archive captured while it was sent. The captured bytes are
+     * kept as they are, in memory or in the file they were written to.
+     * 
+     * @param key     The key of the archive
+     * @param capture The capture of the complete archive
+     */
+    public void put(String key, CapturingOutputStream capture) {
+        if (!capture.finish()) {
+            return;
+        }
+        if (capture.file == null) {
+            put(new Entry(key, capture.memory.getBuffer(), capture.length));
+            return;
+        }
+
+        synchronized (this) {
+            File file = new File(directory, key + ".zip");
+            if (entries.containsKey(key) || !capture.file.renameTo(file)) {
+                return;
+            }
+            // Taken over by the cache, so discarding the capture keeps it
+            capture.file = null;
+            Entry entry = new Entry(key, null, capture.length);
+            entry.file = file;
+            entries.put(key, entry);
+            diskBytes += entry.length;
+            evictFromDisk();
+        }
+    }
+
+    /**
+     * Starts capturing an archive as it is sent, so it can be cached
+     * afterwards. An archive too large for the memory budget is written to the
+     * disk directory as it comes.
+     * 
+     * @param out The stream the archive is sent to
+     * @return The stream to write the archive to, to be discarded once done
+     */
+    public CapturingOutputStream capture(OutputStream out) {
+        return new CapturingOutputStream(out, directory);
+    }
+
+    private void put(Entry entry) {
+        List<Entry> toSpill = new ArrayList<>();
+        synchronized (this) {
+            if (entries.containsKey(entry.key)) {
+                return;
+            }
+            entries.put(entry.key, entry);
+            if (entry.length > MAX_MEMORY_ARCHIVE) {
+                entry.spilling = true;
+                toSpill.add(entry);
+            } else {
+                memoryBytes += entry.data.length;
+                for (Entry eldest : entries.values()) {
+                    if (memoryBytes <= MAX_MEMORY_BYTES) {
+                        break;
+                    }
+                    if (eldest.data != null && !eldest.spilling) {
+                        eldest.spilling = true;
+                        toSpill.add(eldest);
+                        memoryBytes -= eldest.data.length;
+                    }
+                }
+            }
+        }
+
+        // Write outside the lock, so lookups do not wait on the disk; the data stays readable meanwhile
+        for (Entry spilled : toSpill) {
+            spill(spilled);
+        }
+    }
+
+    private void spill(Entry entry) {
+        byte[] data;
+        synchronized (this) {
+            data = entry.data;
+        }
+        File file = new File(directory, entry.key + ".zip");
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            try (OutputStream out = new FileOutputStream(file)) {
+                out.write(data, 0, (int) entry.length);
+            }
+        } catch (IOException e) {
+            LogUtil.warn(ArchiveCache.class.getName(), "Could not spill archive to disk: " + e.getMessage());
+            file.delete();
+            synchronized (this) {
+                if (entries.get(entry.key) == entry) {
+                    entries.remove(entry.key);
+                    evictions++;
+                }
+                entry.data = null;
+                entry.spilling = false;
+            }
+            return;
+        }
+
+        synchronized (this) {
+            entry.file = file;
+            entry.data = null;
+            entry.spilling = false;
+            if (entries.get(entry.key) != entry) {
+                // Evicted while it was being written
+                file.delete();
+                return;
+            }
+            diskBytes += entry.length;
+            spills++;
+            evictFromDisk();
+        }
+    }
+
+    /**
+     * Drops the least recently used archives on disk while over the disk
+     * budget. Called with the lock held.
+     */
+    private void evictFromDisk() {
+        Iterator<Entry> leastRecentFirst = entries.values().iterator();
+        while (diskBytes > MAX_DISK_BYTES && leastRecentFirst.hasNext()) {
+            Entry eldest = leastRecentFirst.next();
+            if (eldest.file != null) {
+                leastRecentFirst.remove();
+                diskBytes -= eldest.length;
+                eldest.file.delete();
+                evictions++;
+            }
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        if (entry.data != null) {
+            if (!entry.spilling) {
+                memoryBytes -= entry.data.length;
+            }
+        } else if (entry.file != null) {
+            diskBytes -= entry.length;
+            entry.file.delete();
+        }
+    }
+
+    /**
+     * Gets the cache statistics
+     * 
+     * @return The statistics as JSON
+     * @throws JSONException If the statistics cannot be built
+     */
+    public synchronized JSONObject getStatistics() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("entries", entries.size());
+        stats.put("memoryBytes", memoryBytes);
+        stats.put("diskBytes", diskBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("spills", spills);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+
+    /**
+     * Drops every archive and deletes the spilled files. Called when the plugin
+     * bundle is stopped.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        memoryBytes = 0;
+        diskBytes = 0;
+        deleteFiles();
+    }
+
+    private void deleteFiles() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * A cached archive, read either from memory or from disk
+     */
+    public static class Archive implements AutoCloseable {
+
+        private final byte[] data;
+        private final InputStream in;
+        private final long length;
+
+        Archive(byte[] data, InputStream in, long length) {
+            this.data = data;
+            this.in = in;
+            this.length = length;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * Opens the archive for reading
+         * 
+         * @return A stream of the zip file data, closed with the archive
+         */
+        public InputStream openStream() {
+            return data != null ? new ByteArrayInputStream(data, 0, (int) length) : in;
+        }
+
+        /**
+         * Copies the archive to a stream
+         * 
+         * @param out The stream to write to
+         * @throws IOException If the archive cannot be read or written
+         */
+        public void writeTo(OutputStream out) throws IOException {
+            if (data != null) {
+                out.write(data, 0, (int) length);
+                return;
+            }
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * A stream that keeps a copy of what is written through it, so an archive
+     * sent as it is built can be cached afterwards. The copy moves from memory
+     * to a file once it is too large for the memory budget; if that file
+     * cannot be written, capturing stops while the archive is still sent.
+     */
+    public static class CapturingOutputStream extends FilterOutputStream {
+
+        private final File directory;
+        private CaptureBuffer memory = new CaptureBuffer();
+        private File file;
+        private OutputStream fileOut;
+        private long length = 0;
+        private boolean failed = false;
+
+        CapturingOutputStream(OutputStream out, File directory) {
+            super(out);
+            this.directory = directory;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (failed) {
+                return;
+            }
+            try {
+                if (fileOut == null && length + len > MAX_MEMORY_ARCHIVE) {
+                    file = new File(directory, "capture-" + UUID.randomUUID() + ".tmp");
+                    if (!directory.isDirectory() && !directory.mkdirs()) {
+                        throw new IOException("Cannot create " + directory);
+                    }
+                    fileOut = new BufferedOutputStream(new FileOutputStream(file));
+                    memory.writeTo(fileOut);
+                    memory = null;
+                }
+                if (fileOut != null) {
+                    fileOut.write(b, off, len);
+                } else {
+                    memory.write(b, off, len);
+                }
+                length += len;
+            } catch (IOException e) {
+                LogUtil.warn(ArchiveCache.class.getName(), "Could not capture archive: " + e.getMessage());
+                discard();
+            }
+        }
+
+        /**
+         * Ends the capture
+         * 
+         * @return true if the whole archive was captured
+         */
+        private boolean finish() {
+            if (failed) {
+                return false;
+            }
+            if (fileOut != null) {
+                try {
+                    fileOut.close();
+                } catch (IOException e) {
+                    LogUtil.warn(ArchiveCache.class.getName(), "Could not capture archive: " + e.getMessage());
+                    discard();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Drops the capture and deletes its file, unless the cache took it.
+         * Does nothing if called again.
+         */
+        public void discard() {
+            failed = true;
+            memory = null;
+            if (fileOut != null) {
+                try {
+                    fileOut.close();
+                } catch (IOException e) {
+                    // The file is deleted anyway
+                }
+                fileOut = null;
+            }
+            if (file != null) {
+                file.delete();
+                file = null;
+            }
+        }
+    }
+
+    /**
+     * A byte array stream whose buffer can be kept as is, without the copy of
+     * toByteArray
+     */
+    private static class CaptureBuffer extends ByteArrayOutputStream {
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    private static class Entry {
+
+        private final String key;
+        private final long length;
+
+        // May be longer than the archive, which fills its start
+        private byte[] data;
+        private File file;
+
+        // Set while the data is being written to disk
+        private boolean spilling;
+
+        Entry(String key, byte[] data, long length) {
+            this.key = key;
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.joget.marketplace;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import javax.servlet.ServletRequest;
+
+import org.joget.commons.util.LogUtil;
+
+/**
+ * Servlet 3 asynchronous processing of a request, reached by reflection as
+ * the plugin is built against the Servlet 2.5 API. Once a request is put in
+ * asynchronous mode its container thread can return while another thread
+ * writes the response and completes it.
+ * 
+ * On a 2.5 container, or when a servlet or filter on the way to the plugin is
+ * not marked as supporting asynchronous processing, no request is started and
+ * callers complete the request on the container thread as before.
+ */
+public class AsyncRequest {
+
+    private static final Method IS_ASYNC_SUPPORTED;
+    private static final Method START_ASYNC;
+    private static final Method SET_TIMEOUT;
+    private static final Method COMPLETE;
+
+    private static volatile boolean fallbackLogged = false;
+
+    static {
+        Method isAsyncSupported = null;
+        Method startAsync = null;
+        Method setTimeout = null;
+        Method complete = null;
+        try {
+            isAsyncSupported = ServletRequest.class.getMethod("isAsyncSupported");
+            startAsync = ServletRequest.class.getMethod("startAsync");
+            Class<?> asyncContext = startAsync.getReturnType();
+            setTimeout = asyncContext.getMethod("setTimeout", long.class);
+            complete = asyncContext.getMethod("complete");
+        } catch (NoSuchMethodException e) {
+            // A Servlet 2.5 container
+            isAsyncSupported = null;
+            startAsync = null;
+        }
+        IS_ASYNC_SUPPORTED = isAsyncSupported;
+        START_ASYNC = startAsync;
+        SET_TIMEOUT = setTimeout;
+        COMPLETE = complete;
+    }
+
+    private final Object asyncContext;
+
+    private AsyncRequest(Object asyncContext) {
+        this.asyncContext = asyncContext;
+    }
+
+    /**
+     * Checks whether the container implements asynchronous processing
+     * 
+     * @return true on a Servlet 3 container
+     */
+    public static boolean isAvailable() {
+        return IS_ASYNC_SUPPORTED != null;
+    }
+
+    /**
+     * Puts a request in asynchronous mode, when the container and the path to
+     * the plugin allow it
+     * 
+     * @param request The request
+     * @param timeout Milliseconds after which the container ends the request
+     *                if it has not been completed
+     * @return The asynchronous request, or null if the request must be
+     *         completed on the container thread
+     */
+    public static AsyncRequest start(ServletRequest request, long timeout) {
+        if (IS_ASYNC_SUPPORTED == null) {
+            logFallback("the container does not implement Servlet 3");
+            return null;
+        }
+        try {
+            if (!Boolean.TRUE.equals(IS_ASYNC_SUPPORTED.invoke(request))) {
+                logFallback("the request does not support asynchronous processing");
+                return null;
+            }
+            Object asyncContext = START_ASYNC.invoke(request);
+            SET_TIMEOUT.invoke(asyncContext, timeout);
+            return new AsyncRequest(asyncContext);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+            LogUtil.warn(AsyncRequest.class.getName(), "Could not start asynchronous processing: " + cause);
+            return null;
+        }
+    }
+
+    /**
+     * Completes the request, which ends the response
+     */
+    public void complete() {
+        try {
+            COMPLETE.invoke(asyncContext);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            // Already completed by the container, for example after a timeout
+            Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+            LogUtil.debug(AsyncRequest.class.getName(), "Could not complete asynchronous request: " + cause);
+        }
+    }
+
+    private static void logFallback(String reason) {
+        if (!fallbackLogged) {
+            fallbackLogged = true;
+            LogUtil.info(AsyncRequest.class.getName(), "Chat requests are completed on the container thread, as "
+                    + reason);
+        }
+    }
+}
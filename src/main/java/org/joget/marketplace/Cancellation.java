@@ -0,0 +1,122 @@
+package org.joget.marketplace;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * Stops a generation from another thread: on an explicit cancel, when its
+ * last client goes away, or when the deadline of the request that started it
+ * passes.
+ * 
+ * Cancelling tears down the upstream exchange in flight, so Ollama sees the
+ * connection close, stops decoding and frees its slot for the next request
+ * straight away. The deadline bounds the wait in the queue and the upstream
+ * call together, instead of each getting its own timeout.
+ */
+public class Cancellation {
+
+    private volatile long deadline = Long.MAX_VALUE;
+    private String reason;
+    private OllamaHttpClient.Exchange exchange;
+
+    /**
+     * Sets the time by which the work must be done
+     * 
+     * @param deadline The deadline in milliseconds since the epoch
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Gets the time left before the deadline
+     * 
+     * @return The milliseconds left, or Long.MAX_VALUE if there is no deadline
+     */
+    public long getRemaining() {
+        long current = deadline;
+        return current == Long.MAX_VALUE ? Long.MAX_VALUE : current - System.currentTimeMillis();
+    }
+
+    /**
+     * Cancels the work, aborting the upstream exchange in flight if any
+     * 
+     * @param reason Why the work is cancelled
+     * @return false if it was already cancelled
+     */
+    public boolean cancel(String reason) {
+        OllamaHttpClient.Exchange inFlight;
+        synchronized (this) {
+            if (this.reason != null) {
+                return false;
+            }
+            this.reason = reason;
+            inFlight = exchange;
+        }
+        if (inFlight != null) {
+            inFlight.cancel();
+        }
+        return true;
+    }
+
+    public synchronized boolean isCancelled() {
+        return reason != null;
+    }
+
+    public synchronized String getReason() {
+        return reason;
+    }
+
+    /**
+     * Fails when the work is cancelled or its deadline passed
+     * 
+     * @throws CancelledException     If the work is cancelled
+     * @throws SocketTimeoutException If the deadline passed
+     */
+    public void check() throws IOException {
+        String cancelled = getReason();
+        if (cancelled != null) {
+            throw new CancelledException(cancelled);
+        }
+        if (getRemaining() <= 0) {
+            throw new SocketTimeoutException("The request deadline passed");
+        }
+    }
+
+    /**
+     * Registers the exchange in flight, so a cancel can abort it
+     * 
+     * @param inFlight The exchange
+     * @return false if the work is already cancelled, in which case the
+     *         exchange must not go ahead
+     */
+    synchronized boolean register(OllamaHttpClient.Exchange inFlight) {
+        if (reason != null) {
+            return false;
+        }
+        exchange = inFlight;
+        return true;
+    }
+
+    synchronized void unregister(OllamaHttpClient.Exchange inFlight) {
+        if (exchange == inFlight) {
+            exchange = null;
+        }
+    }
+
+    /**
+     * Thrown by work that was cancelled
+     */
+    public static class CancelledException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public CancelledException(String reason) {
+            super(reason);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.joget.marketplace;
+
+/**
+ * Circuit breaker of a single Ollama node.
+ *
+ * After a run of consecutive failures, or when the health probe cannot reach
+ * the node, the breaker opens and calls fail fast instead of each waiting out
+ * a dead socket. Once the open period has passed, or as soon as a probe
+ * reaches the node again, a single trial call is let through: as soon as the
+ * node answers it with a successful status the breaker closes, and if it
+ * fails first the breaker opens again. The trial is judged on the response
+ * status rather than the whole generation, which can take minutes.
+ */
+public class CircuitBreaker {
+
+    public static final int FAILURE_THRESHOLD = 3;
+    public static final long OPEN_DURATION = 30000L;
+
+    /**
+     * States of the breaker
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt;
+    private boolean trialInFlight = false;
+    private long opened = 0;
+
+    /**
+     * Checks whether a call could be let through now, without claiming it
+     *
+     * @return true if the node may be called
+     */
+    public synchronized boolean isAvailable() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return System.currentTimeMillis() - openedAt >= OPEN_DURATION;
+            default:
+                return !trialInFlight;
+        }
+    }
+
+    /**
+     * Claims a call. When the breaker is not closed the call becomes its trial
+     * call and no other is let through until it is over.
+     *
+     * @return true if the call may go ahead
+     */
+    public synchronized boolean tryAcquire() {
+        if (!isAvailable()) {
+            return false;
+        }
+        if (state != State.CLOSED) {
+            state = State.HALF_OPEN;
+            trialInFlight = true;
+        }
+        return true;
+    }
+
+    /**
+     * Records a successful call, or one the node started answering, closing
+     * the breaker
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records a failed call, opening the breaker after too many in a row or
+     * when a trial call fails
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD) {
+            open();
+        }
+    }
+
+    /**
+     * Ends a claimed call that says nothing about the node, for example one
+     * whose client went away
+     */
+    public synchronized void release() {
+        trialInFlight = false;
+    }
+
+    /**
+     * Opens the breaker because the health probe could not reach the node
+     */
+    public synchronized void recordProbeFailure() {
+        if (state != State.OPEN) {
+            open();
+        }
+    }
+
+    /**
+     * Lets a trial call through straight away because the health probe reached
+     * the node again
+     */
+    public synchronized void recordProbeSuccess() {
+        if (state == State.OPEN) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        trialInFlight = false;
+        opened++;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Gets the time until an open breaker lets a trial call through
+     *
+     * @return The remaining open time in milliseconds, 0 if calls may go ahead
+     */
+    public synchronized long getRemainingOpenTime() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, OPEN_DURATION - (System.currentTimeMillis() - openedAt));
+    }
+
+    /**
+     * Gets how often the breaker has opened
+     *
+     * @return The number of times it opened
+     */
+    public synchronized long getOpenedCount() {
+        return opened;
+    }
+}
@@ -0,0 +1,612 @@
+package org.joget.marketplace;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Single-pass tokenizer that pulls the code files out of a chat answer.
+ * 
+ * The answer is read once, left to right, and may be fed in chunks as it
+ * arrives. It recognises "File N: name" headers, either in strong tags or on
+ * a markdown line of their own, HTML code blocks (pre, optionally wrapped in
+ * a code-block container div and holding a code tag) and markdown code fences
+ * of three or more backticks, closed by a run at least as long at the start
+ * of a line. The first code block after a header becomes the content of that
+ * file; HTML entities in HTML blocks are decoded while the block is read.
+ * Input that cannot be decided yet, such as a tag cut in two by a chunk
+ * boundary, is kept until the next chunk arrives.
+ * 
+ * Each character is examined a bounded number of times, so the cost is linear
+ * in the length of the answer however the blocks are nested or left unclosed.
+ */
+public class CodeBlockTokenizer {
+
+    // Upper bound of the answer length, in characters
+    public static final int MAX_INPUT_LENGTH = 4 * 1024 * 1024;
+
+    private static final String HEADER_START = "<strong>File";
+    private static final String LINE_HEADER_START = "File";
+    private static final String HEADER_END = "</strong>";
+    private static final String PRE_START = "<pre";
+    private static final String CODE_START = "<code";
+    private static final String FENCE = "```";
+
+    // Longest header text, fence info string and entity looked at before giving up on them
+    private static final int MAX_HEADER_LENGTH = 512;
+    private static final int MAX_FENCE_INFO_LENGTH = 64;
+    private static final int MAX_ENTITY_LENGTH = 10;
+
+    // Input already read is dropped from the buffer once this much has piled up
+    private static final int COMPACT_THRESHOLD = 8192;
+
+    private static final Pattern HEADER_PATTERN = Pattern.compile("^\\s+\\d+:?\\s+(.+)$", Pattern.DOTALL);
+
+    private enum State {
+        TEXT, HEADER, LINE_HEADER, PRE_TAG, PRE_CONTENT, CODE_TAG, HTML_BLOCK, FENCE_INFO, FENCE_BLOCK
+    }
+
+    private final int maxInputLength;
+    private final StringBuilder input = new StringBuilder();
+    private final StringBuilder token = new StringBuilder();
+    private final List<CodeFile> files = new ArrayList<>();
+
+    private State state = State.TEXT;
+    private int pos = 0;
+    private int tokenStart = 0;
+    private long length = 0;
+    private String terminator;
+    private String fileName;
+    private int fenceLength;
+
+    // Whether only markdown decoration has been read since the start of the line
+    private boolean lineStart = true;
+    private boolean finished = false;
+
+    public CodeBlockTokenizer() {
+        this(MAX_INPUT_LENGTH);
+    }
+
+    /**
+     * @param maxInputLength The maximum number of characters accepted
+     */
+    public CodeBlockTokenizer(int maxInputLength) {
+        this.maxInputLength = maxInputLength;
+    }
+
+    /**
+     * Tokenizes a complete answer
+     * 
+     * @param content The answer
+     * @return The code files found, in the order they appeared
+     * @throws IOException If the answer is longer than the maximum length
+     */
+    public static List<CodeFile> tokenize(String content) throws IOException {
+        CodeBlockTokenizer tokenizer = new CodeBlockTokenizer();
+        tokenizer.feed(content);
+        tokenizer.finish();
+        return tokenizer.getFiles();
+    }
+
+    /**
+     * Reads the next chunk of the answer
+     * 
+     * @param chunk The chunk
+     * @throws IOException If the answer grows beyond the maximum length
+     */
+    public void feed(CharSequence chunk) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("The tokenizer has already finished");
+        }
+        length += chunk.length();
+        if (length > maxInputLength) {
+            throw new InputTooLargeException(maxInputLength);
+        }
+
+        input.append(chunk);
+        scan(false);
+        compact();
+    }
+
+    /**
+     * Reads what is left of the answer. A code block still open at the end is
+     * dropped.
+     */
+    public void finish() {
+        if (!finished) {
+            scan(true);
+            finished = true;
+            input.setLength(0);
+            token.setLength(0);
+        }
+    }
+
+    /**
+     * Gets the code files found so far
+     * 
+     * @return The code files, in the order they appeared. Files sharing a
+     *         name, such as the pom.xml of each module, are all kept.
+     */
+    public List<CodeFile> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * Advances through the buffered input as far as it can be decided
+     * 
+     * @param last Whether no more input will follow
+     */
+    private void scan(boolean last) {
+        while (true) {
+            scanInput(last);
+
+            // A header line may end with the answer
+            if (last && state == State.LINE_HEADER) {
+                state = State.TEXT;
+                startFile(token.toString());
+            }
+
+            // A header or fence opened at the very end never completed, so what follows it is plain text
+            if (!last || (state != State.HEADER && state != State.FENCE_INFO)) {
+                return;
+            }
+            pos = tokenStart;
+            state = State.TEXT;
+        }
+    }
+
+    private void scanInput(boolean last) {
+        while (pos < input.length()) {
+            boolean progressed;
+            switch (state) {
+                case TEXT:
+                    progressed = scanText(last);
+                    break;
+                case HEADER:
+                    progressed = scanHeader(last);
+                    break;
+                case LINE_HEADER:
+                    progressed = scanLineHeader();
+                    break;
+                case PRE_TAG:
+                case CODE_TAG:
+                    progressed = skipTag();
+                    break;
+                case PRE_CONTENT:
+                    progressed = scanPreContent(last);
+                    break;
+                case HTML_BLOCK:
+                    progressed = scanHtmlBlock(last);
+                    break;
+                case FENCE_INFO:
+                    progressed = scanFenceInfo();
+                    break;
+                default:
+                    progressed = scanFenceBlock(last);
+                    break;
+            }
+            if (!progressed) {
+                return;
+            }
+        }
+    }
+
+    private boolean scanText(boolean last) {
+        while (pos < input.length()) {
+            char c = input.charAt(pos);
+            if (c == '\n') {
+                lineStart = true;
+            } else if (c == 'F' && lineStart) {
+                int header = startsWith(pos, LINE_HEADER_START, last);
+                if (header < 0) {
+                    return false;
+                }
+                if (header > 0) {
+                    pos += LINE_HEADER_START.length();
+                    startToken(State.LINE_HEADER);
+                    return true;
+                }
+                lineStart = false;
+            } else if (c == '<') {
+                int header = startsWith(pos, HEADER_START, last);
+                int pre = startsWith(pos, PRE_START, last);
+                if (header < 0 || pre < 0) {
+                    return false;
+                }
+                if (header > 0) {
+                    pos += HEADER_START.length();
+                    startToken(State.HEADER);
+                    return true;
+                }
+                if (pre > 0 && pos + PRE_START.length() < input.length()) {
+                    char next = input.charAt(pos + PRE_START.length());
+                    if (next == '>' || Character.isWhitespace(next)) {
+                        pos += PRE_START.length();
+                        startToken(State.PRE_TAG);
+                        return true;
+                    }
+                } else if (pre > 0 && !last) {
+                    return false;
+                }
+            } else if (c == '`') {
+                int fence = startsWith(pos, FENCE, last);
+                if (fence < 0) {
+                    return false;
+                }
+                if (fence > 0) {
+                    int run = backtickRun(pos);
+                    if (pos + run == input.length() && !last) {
+                        return false;
+                    }
+                    pos += run;
+                    fenceLength = run;
+                    startToken(State.FENCE_INFO);
+                    return true;
+                }
+            }
+            if (!isDecoration(c)) {
+                lineStart = false;
+            }
+            pos++;
+        }
+        return true;
+    }
+
+    private void startToken(State next) {
+        tokenStart = pos;
+        token.setLength(0);
+        lineStart = false;
+        state = next;
+    }
+
+    private static boolean isDecoration(char c) {
+        return c == '#' || c == '*' || c == '_' || c == '>' || c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    /**
+     * Reads the text of a strong tag that started with "File", giving up on
+     * it, and reading it again as plain text, if it is too long to be a header
+     */
+    private boolean scanHeader(boolean last) {
+        while (pos < input.length()) {
+            char c = input.charAt(pos);
+            if (c == '<') {
+                int end = startsWith(pos, HEADER_END, last);
+                if (end < 0) {
+                    return false;
+                }
+                if (end > 0) {
+                    pos += HEADER_END.length();
+                    state = State.TEXT;
+                    startFile(token.toString());
+                    return true;
+                }
+            }
+            token.append(c);
+            pos++;
+            if (token.length() > MAX_HEADER_LENGTH) {
+                pos = tokenStart;
+                state = State.TEXT;
+                return true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the rest of a markdown line that started with "File", giving up on
+     * it, and reading it again as plain text, if it is too long to be a header
+     */
+    private boolean scanLineHeader() {
+        while (pos < input.length()) {
+            char c = input.charAt(pos);
+            if (c == '\n') {
+                state = State.TEXT;
+                startFile(token.toString());
+                return true;
+            }
+            token.append(c);
+            pos++;
+            if (token.length() > MAX_HEADER_LENGTH) {
+                pos = tokenStart;
+                state = State.TEXT;
+                return true;
+            }
+        }
+        return true;
+    }
+
+    private void startFile(String header) {
+        Matcher matcher = HEADER_PATTERN.matcher(header);
+        if (!matcher.matches()) {
+            return;
+        }
+        String name = matcher.group(1).replace("<code>", "").replace("</code>", "").replace("`", "");
+
+        // Drop the markdown emphasis around the name
+        int start = 0;
+        int end = name.length();
+        while (start < end && isDecoration(name.charAt(start))) {
+            start++;
+        }
+        while (end > start && isDecoration(name.charAt(end - 1))) {
+            end--;
+        }
+        name = name.substring(start, end);
+        if (name.isEmpty() || name.indexOf('<') >= 0) {
+            return;
+        }
+        fileName = name;
+    }
+
+    /**
+     * Skips the rest of an opening pre or code tag, up to its closing bracket
+     */
+    private boolean skipTag() {
+        int end = input.indexOf(">", pos);
+        if (end < 0) {
+            pos = input.length();
+            return false;
+        }
+        pos = end + 1;
+        if (state == State.PRE_TAG) {
+            state = State.PRE_CONTENT;
+        } else {
+            terminator = "</code>";
+            token.setLength(0);
+            state = State.HTML_BLOCK;
+        }
+        return true;
+    }
+
+    /**
+     * Decides whether a pre block holds a code tag, which then delimits the
+     * code, or the code directly
+     */
+    private boolean scanPreContent(boolean last) {
+        int code = startsWith(pos, CODE_START, last);
+        if (code < 0) {
+            return false;
+        }
+        if (code > 0 && pos + CODE_START.length() < input.length()) {
+            char next = input.charAt(pos + CODE_START.length());
+            if (next == '>' || Character.isWhitespace(next)) {
+                pos += CODE_START.length();
+                state = State.CODE_TAG;
+                return true;
+            }
+        } else if (code > 0 && !last) {
+            return false;
+        }
+        terminator = "</pre>";
+        token.setLength(0);
+        state = State.HTML_BLOCK;
+        return true;
+    }
+
+    private boolean scanHtmlBlock(boolean last) {
+        while (pos < input.length()) {
+            char c = input.charAt(pos);
+            if (c == '<') {
+                int end = startsWith(pos, terminator, last);
+                if (end < 0) {
+                    return false;
+                }
+                if (end > 0) {
+                    pos += terminator.length();
+                    state = State.TEXT;
+                    endBlock();
+                    return true;
+                }
+            } else if (c == '&') {
+                int semicolon = -1;
+                int limit = Math.min(input.length(), pos + MAX_ENTITY_LENGTH);
+                for (int i = pos + 1; i < limit; i++) {
+                    if (input.charAt(i) == ';') {
+                        semicolon = i;
+                        break;
+                    }
+                }
+                if (semicolon < 0 && limit == input.length() && !last) {
+                    return false;
+                }
+                String decoded = semicolon > 0 ? decodeEntity(input.substring(pos + 1, semicolon)) : null;
+                if (decoded != null) {
+                    token.append(decoded);
+                    pos = semicolon + 1;
+                    continue;
+                }
+            }
+            token.append(c);
+            pos++;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the info string of a fence up to the end of its line, giving up
+     * on it if the line cannot be one, as with inline backticks. The info
+     * string is a language name, optionally followed by blanks.
+     */
+    private boolean scanFenceInfo() {
+        while (pos < input.length()) {
+            char c = input.charAt(pos++);
+            if (c == '\n') {
+                token.setLength(0);
+                state = State.FENCE_BLOCK;
+                return true;
+            }
+            boolean languageChar = Character.isLetterOrDigit(c) || c == '+' || c == '#' || c == '-' || c == '.'
+                    || c == '_';
+            boolean blank = c == ' ' || c == '\t' || c == '\r';
+            boolean secondWord = languageChar && token.length() > 0
+                    && Character.isWhitespace(token.charAt(token.length() - 1)) && !token.toString().trim().isEmpty();
+            if ((!languageChar && !blank) || secondWord
+                    || pos - tokenStart > MAX_FENCE_INFO_LENGTH) {
+                pos = tokenStart;
+                state = State.TEXT;
+                return true;
+            }
+            token.append(c);
+        }
+        return true;
+    }
+
+    private boolean scanFenceBlock(boolean last) {
+        while (pos < input.length()) {
+            char c = input.charAt(pos);
+            if (c == '`' && (token.length() == 0 || token.charAt(token.length() - 1) == '\n')) {
+                int run = backtickRun(pos);
+                if (pos + run == input.length() && !last) {
+                    return false;
+                }
+                if (run >= fenceLength) {
+                    pos += run;
+                    if (token.length() > 0) {
+                        token.setLength(token.length() - 1);
+                    }
+                    state = State.TEXT;
+                    endBlock();
+                    return true;
+                }
+
+                // A shorter run is part of the code
+                token.append(input, pos, pos + run);
+                pos += run;
+                continue;
+            }
+            token.append(c);
+            pos++;
+        }
+        return true;
+    }
+
+    /**
+     * Gives the code block just read to the file whose header came before it
+     */
+    private void endBlock() {
+        if (fileName != null) {
+            files.add(new CodeFile(fileName, token.toString()));
+            fileName = null;
+        }
+        token.setLength(0);
+    }
+
+    /**
+     * Checks whether the input continues with the given text at a position
+     * 
+     * @return 1 if it does, 0 if it does not, -1 if more input is needed to
+     *         tell
+     */
+    private int startsWith(int at, String text, boolean last) {
+        int available = Math.min(text.length(), input.length() - at);
+        for (int i = 0; i < available; i++) {
+            if (input.charAt(at + i) != text.charAt(i)) {
+                return 0;
+            }
+        }
+        if (available < text.length()) {
+            return last ? 0 : -1;
+        }
+        return 1;
+    }
+
+    /**
+     * Counts the backticks starting at a position of the input read so far
+     */
+    private int backtickRun(int at) {
+        int end = at;
+        while (end < input.length() && input.charAt(end) == '`') {
+            end++;
+        }
+        return end - at;
+    }
+
+    private static String decodeEntity(String name) {
+        switch (name) {
+            case "lt":
+                return "<";
+            case "gt":
+                return ">";
+            case "amp":
+                return "&";
+            case "quot":
+                return "\"";
+            case "apos":
+            case "#39":
+                return "'";
+            default:
+                break;
+        }
+        try {
+            int codePoint;
+            if (name.startsWith("#x") || name.startsWith("#X")) {
+                codePoint = Integer.parseInt(name.substring(2), 16);
+            } else if (name.startsWith("#")) {
+                codePoint = Integer.parseInt(name.substring(1));
+            } else {
+                return null;
+            }
+            return Character.isValidCodePoint(codePoint) ? new String(Character.toChars(codePoint)) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Drops the input that has been read for good. The text of a header or
+     * fence info string is kept, as it is read again if it turns out not to be
+     * one.
+     */
+    private void compact() {
+        int keepFrom = state == State.HEADER || state == State.LINE_HEADER || state == State.FENCE_INFO ? tokenStart
+                : pos;
+        if (keepFrom >= COMPACT_THRESHOLD) {
+            input.delete(0, keepFrom);
+            pos -= keepFrom;
+            tokenStart -= keepFrom;
+        }
+    }
+
+    /**
+     * A code file found in the answer
+     */
+    public static class CodeFile {
+
+        private final String name;
+        private final String content;
+
+        public CodeFile(String name, String content) {
+            this.name = name;
+            this.content = content;
+        }
+
+        /**
+         * Gets the name given in the file header
+         * 
+         * @return The file name, possibly with directories
+         */
+        public String getName() {
+            return name;
+        }
+
+        public String getContent() {
+            return content;
+        }
+    }
+
+    /**
+     * Thrown when the answer is longer than the tokenizer accepts
+     */
+    public static class InputTooLargeException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public InputTooLargeException(int maxInputLength) {
+            super("The content is longer than " + maxInputLength + " characters");
+        }
+    }
+}
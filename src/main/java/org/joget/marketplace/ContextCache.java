@@ -0,0 +1,149 @@
+package org.joget.marketplace;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Keeps the token context Ollama returns from /api/generate for each
+ * conversation, so the next turn can continue from it instead of having the
+ * model re-process the whole conversation.
+ * 
+ * Contexts are stored as primitive int arrays. A single context longer than
+ * the per-entry cap is not kept, and the least recently used contexts are
+ * evicted once the total number of cached tokens exceeds the cache budget.
+ */
+public class ContextCache {
+
+    public static final int MAX_TOKENS_PER_ENTRY = 128 * 1024;
+    public static final long MAX_TOTAL_TOKENS = 4L * 1024 * 1024;
+
+    private static final ContextCache INSTANCE = new ContextCache();
+
+    // Access-ordered so iteration starts from the least recently used context
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalTokens = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long rejected = 0;
+
+    private ContextCache() {
+    }
+
+    /**
+     * Gets the cache shared by all instances of the plugin
+     * 
+     * @return The shared cache
+     */
+    public static ContextCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the context stored for a conversation
+     * 
+     * @param key   The conversation key
+     * @param model The model the next request will use; contexts produced by
+     *              another model are not returned
+     * @return The context tokens, or null if none is cached
+     */
+    public synchronized int[] get(String key, String model) {
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.model.equals(model)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.tokens;
+    }
+
+    /**
+     * Stores the context returned by the latest turn of a conversation,
+     * replacing the previous one
+     * 
+     * @param key    The conversation key
+     * @param model  The model that produced the context
+     * @param tokens The context tokens
+     */
+    public synchronized void put(String key, String model, int[] tokens) {
+        remove(key);
+
+        if (tokens == null || tokens.length == 0) {
+            return;
+        }
+        if (tokens.length > MAX_TOKENS_PER_ENTRY) {
+            rejected++;
+            return;
+        }
+
+        entries.put(key, new Entry(model, tokens));
+        totalTokens += tokens.length;
+
+        Iterator<Entry> leastRecentFirst = entries.values().iterator();
+        while (totalTokens > MAX_TOTAL_TOKENS && leastRecentFirst.hasNext()) {
+            totalTokens -= leastRecentFirst.next().tokens.length;
+            leastRecentFirst.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Forgets the context of a conversation
+     * 
+     * @param key The conversation key
+     */
+    public synchronized void remove(String key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            totalTokens -= previous.tokens.length;
+        }
+    }
+
+    /**
+     * Converts the context array of an Ollama response to primitive ints
+     * 
+     * @param context The JSON context array
+     * @return The context tokens
+     * @throws JSONException If an element is not a number
+     */
+    public static int[] toTokens(JSONArray context) throws JSONException {
+        int[] tokens = new int[context.length()];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = context.getInt(i);
+        }
+        return tokens;
+    }
+
+    /**
+     * Gets the cache statistics
+     * 
+     * @return The statistics as JSON
+     * @throws JSONException If the statistics cannot be built
+     */
+    public synchronized JSONObject getStatistics() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("entries", entries.size());
+        stats.put("totalTokens", totalTokens);
+        stats.put("maxTotalTokens", MAX_TOTAL_TOKENS);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("rejected", rejected);
+        return stats;
+    }
+
+    private static class Entry {
+
+        private final String model;
+        private final int[] tokens;
+
+        Entry(String model, int[] tokens) {
+            this.model = model != null ? model : "";
+            this.tokens = tokens;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package org.joget.marketplace;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Keeps the recent turns of each chat conversation on the server so follow-up
+ * questions can be sent to /api/chat as a messages[] history.
+ * 
+ * Conversations are keyed by user, HTTP session and the conversation ID the
+ * page generates. The store holds a bounded number of conversations, drops
+ * those left idle, and each conversation keeps only as many turns as fit in
+ * its stored token allowance. When a request is built, the newest turns that
+ * fit in the context token budget are sent and older ones are left out, so the
+ * prompt size stays flat however long the conversation runs.
+ */
+public class ConversationStore {
+
+    public static final int DEFAULT_TOKEN_BUDGET = 8192;
+
+    private static final int MAX_CONVERSATIONS = 1000;
+    private static final long IDLE_TIMEOUT = 2 * 60 * 60 * 1000L;
+
+    // Turns beyond this many times the budget are dropped from storage
+    private static final int STORED_BUDGET_MULTIPLIER = 2;
+
+    // A partially fitting turn is only trimmed if at least this many tokens remain
+    private static final int MIN_TRIMMED_TOKENS = 64;
+
+    private static final String TRIMMED_MARKER = "[earlier content trimmed] ";
+
+    private static final ConversationStore INSTANCE = new ConversationStore();
+
+    private final Map<String, Conversation> conversations = new LinkedHashMap<String, Conversation>(16, 0.75f,
+            true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Conversation> eldest) {
+            return size() > MAX_CONVERSATIONS;
+        }
+    };
+
+    private ConversationStore() {
+    }
+
+    /**
+     * Gets the store shared by all instances of the plugin
+     * 
+     * @return The shared store
+     */
+    public static ConversationStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Builds the key identifying a conversation
+     * 
+     * @param username       The current user
+     * @param sessionId      The HTTP session ID
+     * @param conversationId The conversation ID generated by the page
+     * @return The conversation key
+     */
+    public static String buildKey(String username, String sessionId, String conversationId) {
+        return (username != null ? username : "") + "|" + (sessionId != null ? sessionId : "") + "|"
+                + (conversationId != null ? conversationId : "");
+    }
+
+    /**
+     * Gets the conversation for the key, creating it if needed
+     * 
+     * @param key The conversation key
+     * @return The conversation
+     */
+    public synchronized Conversation getConversation(String key) {
+        evictIdle();
+
+        Conversation conversation = conversations.get(key);
+        if (conversation == null) {
+            conversation = new Conversation();
+            conversations.put(key, conversation);
+        }
+        conversation.touch();
+        return conversation;
+    }
+
+    /**
+     * Forgets a conversation
+     * 
+     * @param key The conversation key
+     */
+    public synchronized void removeConversation(String key) {
+        conversations.remove(key);
+    }
+
+    /**
+     * Gets the number of conversations currently held
+     * 
+     * @return The number of conversations
+     */
+    public synchronized int size() {
+        return conversations.size();
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - IDLE_TIMEOUT;
+        Iterator<Conversation> iterator = conversations.values().iterator();
+        while (iterator.hasNext()) {
+            // Access order puts the least recently used conversations first
+            if (iterator.next().lastAccess >= cutoff) {
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Estimates the number of tokens in a text. Roughly four characters per
+     * token holds for English prose and source code with common tokenizers.
+     * 
+     * @param text The text to estimate
+     * @return The estimated token count
+     */
+    public static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return (text.length() + 3) / 4;
+    }
+
+    /**
+     * The turns of a single conversation
+     */
+    public static class Conversation {
+
+        private final Deque<Turn> turns = new ArrayDeque<>();
+        private int storedTokens = 0;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+
+        /**
+         * Records a completed exchange. The oldest turns are dropped once the
+         * stored history exceeds twice the token budget.
+         * 
+         * @param userMessage      The message the user sent
+         * @param assistantMessage The response of the LLM
+         * @param tokenBudget      The context token budget
+         */
+        public synchronized void addExchange(String userMessage, String assistantMessage, int tokenBudget) {
+            addTurn(new Turn("user", userMessage));
+            addTurn(new Turn("assistant", assistantMessage));
+
+            int storedLimit = tokenBudget * STORED_BUDGET_MULTIPLIER;
+            while (storedTokens > storedLimit && turns.size() > 2) {
+                // Turns are stored in user/assistant pairs, drop them together
+                storedTokens -= turns.removeFirst().tokens;
+                storedTokens -= turns.removeFirst().tokens;
+            }
+        }
+
+        private void addTurn(Turn turn) {
+            turns.addLast(turn);
+            storedTokens += turn.tokens;
+        }
+
+        /**
+         * Gets the newest turns that fit in the token budget, oldest first. A
+         * turn that only partly fits is trimmed from its start.
+         * 
+         * @param tokenBudget The tokens available for history
+         * @return The history as /api/chat messages
+         * @throws JSONException If the messages cannot be built
+         */
+        public synchronized JSONArray getHistory(int tokenBudget) throws JSONException {
+            List<JSONObject> selected = new ArrayList<>();
+            int remaining = tokenBudget;
+
+            Iterator<Turn> newestFirst = turns.descendingIterator();
+            while (newestFirst.hasNext() && remaining > 0) {
+                Turn turn = newestFirst.next();
+                String content = turn.content;
+
+                if (turn.tokens > remaining) {
+                    if (remaining < MIN_TRIMMED_TOKENS) {
+                        break;
+                    }
+                    // Keep the end of the turn, which is closest to the current question
+                    int keepChars = (remaining - estimateTokens(TRIMMED_MARKER)) * 4;
+                    content = TRIMMED_MARKER + content.substring(content.length() - keepChars);
+                }
+
+                JSONObject message = new JSONObject();
+                message.put("role", turn.role);
+                message.put("content", content);
+                selected.add(message);
+                remaining -= estimateTokens(content);
+            }
+
+            JSONArray history = new JSONArray();
+            for (int i = selected.size() - 1; i >= 0; i--) {
+                history.put(selected.get(i));
+            }
+            return history;
+        }
+
+        /**
+         * Gets the number of turns currently stored
+         * 
+         * @return The number of turns
+         */
+        public synchronized int getTurnCount() {
+            return turns.size();
+        }
+    }
+
+    /**
+     * A single message of a conversation with its estimated token count
+     */
+    private static class Turn {
+
+        private final String role;
+        private final String content;
+        private final int tokens;
+
+        Turn(String role, String content) {
+            this.role = role;
+            this.content = content != null ? content : "";
+            this.tokens = estimateTokens(this.content);
+        }
+    }
+}
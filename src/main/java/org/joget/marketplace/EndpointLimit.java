@@ -0,0 +1,72 @@
+package org.joget.marketplace;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A limit that the menus calling one endpoint each set from their
+ * properties. Menus that call the same endpoint share its capacity, so the
+ * lowest value any of them set applies, whichever menu served the last
+ * request. A menu that has not set the limit for an hour, for example because
+ * it was removed, no longer counts.
+ */
+class EndpointLimit {
+
+    private static final long RETENTION = 60L * 60 * 1000;
+
+    private final int defaultValue;
+    private final Map<String, Setting> settings = new HashMap<>();
+    private int value;
+
+    EndpointLimit(int defaultValue) {
+        this.defaultValue = defaultValue;
+        this.value = defaultValue;
+    }
+
+    /**
+     * Sets the limit a menu asks for
+     * 
+     * @param menuKey The key of the menu
+     * @param limit   The limit, or 0 or less for the default
+     * @return true if the limit that applies changed
+     */
+    synchronized boolean set(String menuKey, int limit) {
+        long now = System.currentTimeMillis();
+        Setting setting = settings.get(menuKey);
+        if (setting == null) {
+            setting = new Setting();
+            settings.put(menuKey, setting);
+        }
+        setting.value = limit > 0 ? limit : defaultValue;
+        setting.setAt = now;
+
+        int lowest = Integer.MAX_VALUE;
+        Iterator<Setting> iterator = settings.values().iterator();
+        while (iterator.hasNext()) {
+            Setting current = iterator.next();
+            if (current.setAt + RETENTION <= now) {
+                iterator.remove();
+            } else {
+                lowest = Math.min(lowest, current.value);
+            }
+        }
+        boolean changed = lowest != value;
+        value = lowest;
+        return changed;
+    }
+
+    /**
+     * Gets the limit that applies
+     * 
+     * @return The lowest limit set, or the default if no menu set one
+     */
+    synchronized int get() {
+        return value;
+    }
+
+    private static class Setting {
+        private int value;
+        private long setAt;
+    }
+}
@@ -0,0 +1,418 @@
+package org.joget.marketplace;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A single upstream generation shared by every request attached to it.
+ * 
+ * The request that started the generation feeds it tokens as Ollama produces
+ * them. Requests that attach later replay the text generated so far and then
+ * follow the new tokens, each on its own thread, so a slow or disconnected
+ * reader never holds up the upstream call.
+ * 
+ * The code files of the answer are extracted while it is generated: each
+ * token is also fed to a {@link CodeBlockTokenizer}, so a file is ready as soon
+ * as its code block closes, and the zip of the whole answer can be built as
+ * soon as the last token arrives. When the answer is a JSON project the files
+ * come from the parser instead, and the text is the project rendered as
+ * markdown.
+ */
+public class Generation {
+
+    private final String requestHash;
+    private final long startedAt = System.currentTimeMillis();
+    private final StringBuilder text = new StringBuilder();
+    private final Set<String> recordedConversations = new HashSet<>();
+    private final CodeBlockTokenizer tokenizer = new CodeBlockTokenizer();
+
+    // Cleared when the answer grows too long to extract the code from
+    private boolean extracting = true;
+
+    // The files of an answer parsed as a JSON project, which are not extracted from the text
+    private List<CodeBlockTokenizer.CodeFile> parsedFiles;
+    private String archiveKey;
+
+    private OllamaResponse result;
+    private Exception error;
+    private boolean finished = false;
+    private long finishedAt;
+
+    // The idempotency key of each request following the generation, by its reader token
+    private final Map<String, String> readers = new HashMap<>();
+
+    // Readers that left, so one leaving both by cancelling and by disconnecting counts once
+    private final Set<String> detachedReaders = new HashSet<>();
+
+    // Stops the upstream call once the last reader leaves
+    private final Cancellation cancellation = new Cancellation();
+
+    public Generation(String requestHash) {
+        this.requestHash = requestHash;
+    }
+
+    /**
+     * Gets the hash of the request being generated
+     * 
+     * @return The request hash
+     */
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * Appends a generated token and wakes up the readers waiting for it
+     * 
+     * @param token The token
+     */
+    public synchronized void append(String token) {
+        text.append(token);
+        if (extracting) {
+            try {
+                tokenizer.feed(token);
+            } catch (IOException e) {
+                extracting = false;
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Adds text rendered from an answer parsed as a JSON project, with the file
+     * it shows. The text is not searched for code files.
+     * 
+     * @param rendered The rendered text
+     * @param file     The file the text shows, or null
+     */
+    public synchronized void appendParsed(String rendered, CodeBlockTokenizer.CodeFile file) {
+        if (parsedFiles == null) {
+            parsedFiles = new ArrayList<>();
+        }
+        text.append(rendered);
+        if (file != null) {
+            parsedFiles.add(file);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Checks whether the answer is parsed as a JSON project
+     * 
+     * @return true if the files come from the parsed project
+     */
+    public synchronized boolean isParsed() {
+        return parsedFiles != null;
+    }
+
+    /**
+     * Gets the text generated so far
+     * 
+     * @return The text
+     */
+    public synchronized String getText() {
+        return result != null ? result.getText() : text.toString();
+    }
+
+    /**
+     * Gets the text generated after an offset, without copying what comes
+     * before it
+     * 
+     * @param offset The number of characters the reader already has
+     * @return The text after the offset, empty if there is none
+     */
+    public synchronized String getText(int offset) {
+        CharSequence content = getContent();
+        return offset < content.length() ? content.subSequence(offset, content.length()).toString() : "";
+    }
+
+    // The text, held once: by the result once the generation completed
+    private CharSequence getContent() {
+        return result != null ? result.getText() : text;
+    }
+
+    /**
+     * Gets the number of code files whose block has closed so far
+     * 
+     * @return The number of ready files
+     */
+    public synchronized int getFileCount() {
+        return getReadyFiles().size();
+    }
+
+    /**
+     * Gets the code files that became ready after the ones a reader already
+     * has
+     * 
+     * @param from The number of files the reader already has
+     * @return The new files
+     */
+    public synchronized List<CodeBlockTokenizer.CodeFile> getFiles(int from) {
+        List<CodeBlockTokenizer.CodeFile> files = getReadyFiles();
+        return from < files.size() ? new ArrayList<>(files.subList(from, files.size())) : new ArrayList<>();
+    }
+
+    /**
+     * Ends the extraction once the last token has arrived, reading any file
+     * header left at the very end
+     * 
+     * @return All the code files of the answer, or null if it was too long to
+     *         extract the code from
+     */
+    public synchronized List<CodeBlockTokenizer.CodeFile> finishExtraction() {
+        if (parsedFiles != null) {
+            return new ArrayList<>(parsedFiles);
+        }
+        if (!extracting) {
+            return null;
+        }
+        tokenizer.finish();
+        return new ArrayList<>(tokenizer.getFiles());
+    }
+
+    private List<CodeBlockTokenizer.CodeFile> getReadyFiles() {
+        if (parsedFiles != null) {
+            return parsedFiles;
+        }
+        return extracting ? tokenizer.getFiles() : new ArrayList<CodeBlockTokenizer.CodeFile>();
+    }
+
+    /**
+     * Gets the {@link ArchiveCache} key of the zip of the code files, built
+     * before the generation completed
+     * 
+     * @return The key, or null if the answer has no code files
+     */
+    public synchronized String getArchiveKey() {
+        return archiveKey;
+    }
+
+    public synchronized void setArchiveKey(String archiveKey) {
+        this.archiveKey = archiveKey;
+    }
+
+    /**
+     * Marks the generation as completed. The text of the response replaces
+     * the text built up while generating, which is let go.
+     * 
+     * @param response The complete response, whose text is the text of the
+     *                 generation
+     */
+    public synchronized void complete(OllamaResponse response) {
+        if (finished) {
+            return;
+        }
+        result = response;
+        text.setLength(0);
+        text.trimToSize();
+        finish();
+    }
+
+    /**
+     * Marks the generation as failed
+     * 
+     * @param e The failure
+     */
+    public synchronized void fail(Exception e) {
+        if (finished) {
+            return;
+        }
+        error = e;
+        finish();
+    }
+
+    private void finish() {
+        finished = true;
+        finishedAt = System.currentTimeMillis();
+        notifyAll();
+    }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    public synchronized long getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * Gets the complete response
+     * 
+     * @return The response, or null if the generation failed or is running
+     */
+    public synchronized OllamaResponse getResult() {
+        return result;
+    }
+
+    /**
+     * Gets the failure of the generation
+     * 
+     * @return The failure, or null if the generation succeeded or is running
+     */
+    public synchronized Exception getError() {
+        return error;
+    }
+
+    /**
+     * Waits for text beyond the given offset
+     * 
+     * @param offset    The number of characters the reader already has
+     * @param timeoutMs The longest time to wait
+     * @return The text after the offset, empty if none arrived in time, or null
+     *         once the generation finished and the reader has all of its text
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public synchronized String awaitText(int offset, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (text.length() <= offset && !finished) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return "";
+            }
+            wait(remaining);
+        }
+        CharSequence content = getContent();
+        if (content.length() > offset) {
+            return content.subSequence(offset, content.length()).toString();
+        }
+        return null;
+    }
+
+    /**
+     * Waits for the generation to finish
+     * 
+     * @param timeoutMs The longest time to wait
+     * @return true if the generation finished in time
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public synchronized boolean awaitFinished(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!finished) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Registers a request that follows the generation. Each connection gets
+     * its own reader token, even when it carries the same idempotency key as
+     * another, so one of them leaving does not detach the others.
+     * 
+     * @param requestKey The idempotency key of the request, or null
+     * @return The reader token of the request
+     */
+    public synchronized String attachReader(String requestKey) {
+        String readerToken = UUID.randomUUID().toString();
+        readers.put(readerToken, requestKey);
+        return readerToken;
+    }
+
+    /**
+     * Unregisters a request that stopped following the generation, because
+     * its client disconnected or cancelled. When the last reader leaves a
+     * running generation it is cancelled, which stops the upstream call.
+     * 
+     * @param readerToken The reader token of the request. A request that
+     *                    already left is not counted again.
+     * @return The number of readers left
+     */
+    public int detachReader(String readerToken) {
+        int left;
+        boolean abandoned;
+        synchronized (this) {
+            if (readerToken == null || !readers.containsKey(readerToken)) {
+                return readers.size();
+            }
+            readers.remove(readerToken);
+            detachedReaders.add(readerToken);
+            left = readers.size();
+            abandoned = left == 0 && !finished;
+        }
+        if (abandoned) {
+            cancellation.cancel("Every client of the generation went away");
+        }
+        return left;
+    }
+
+    /**
+     * Unregisters every request of a message, when its client cancels it
+     * 
+     * @param requestKey The idempotency key of the message
+     * @return The number of readers left, or -1 if no request of the message
+     *         followed the generation
+     */
+    public int detachRequest(String requestKey) {
+        int left;
+        boolean abandoned;
+        synchronized (this) {
+            boolean found = false;
+            Iterator<Map.Entry<String, String>> iterator = readers.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, String> reader = iterator.next();
+                if (requestKey.equals(reader.getValue())) {
+                    iterator.remove();
+                    detachedReaders.add(reader.getKey());
+                    found = true;
+                }
+            }
+            if (!found) {
+                return -1;
+            }
+            left = readers.size();
+            abandoned = left == 0 && !finished;
+        }
+        if (abandoned) {
+            cancellation.cancel("Every client of the generation went away");
+        }
+        return left;
+    }
+
+    /**
+     * Checks whether a request left the generation
+     * 
+     * @param readerToken The reader token of the request
+     * @return true if the request detached or its message was cancelled
+     */
+    public synchronized boolean isDetached(String readerToken) {
+        return readerToken != null && detachedReaders.contains(readerToken);
+    }
+
+    /**
+     * Gets the cancellation of the upstream call, which also carries its
+     * deadline
+     * 
+     * @return The cancellation
+     */
+    public Cancellation getCancellation() {
+        return cancellation;
+    }
+
+    public synchronized int getReaders() {
+        return readers.size();
+    }
+
+    /**
+     * Claims the recording of the result in a conversation, so that requests
+     * of the same conversation attached to one generation add the turn once
+     * 
+     * @param conversationKey The conversation key
+     * @return true if the caller should record the turn
+     */
+    public synchronized boolean claimRecording(String conversationKey) {
+        return recordedConversations.add(conversationKey);
+    }
+}
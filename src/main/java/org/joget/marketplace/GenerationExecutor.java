@@ -0,0 +1,121 @@
+package org.joget.marketplace;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Bounded pool of threads on which the chat requests wait for and relay their
+ * generations, so that the container's request threads, shared with the rest
+ * of Joget, are released while an LLM call is in flight.
+ * 
+ * A task is only accepted when a thread is free to run it: the admission
+ * controller already queues requests fairly in front of Ollama, so a second
+ * queue here would only hide how busy the pool is. Idle threads are released
+ * after a minute.
+ * 
+ * A single timer thread sends the heartbeats that detect clients which went
+ * away while nothing else was written to them.
+ */
+public class GenerationExecutor {
+
+    public static final int MAX_THREADS = 64;
+
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    // Seconds a client is asked to wait when every thread is busy
+    public static final int RETRY_AFTER_SECONDS = 5;
+
+    private static final GenerationExecutor INSTANCE = new GenerationExecutor();
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService timer;
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private long rejected = 0;
+
+    private GenerationExecutor() {
+        executor = new ThreadPoolExecutor(0, MAX_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), runnable -> {
+                    Thread thread = new Thread(runnable, "ollama-generation-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ollama-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the executor shared by all instances of the plugin
+     * 
+     * @return The shared executor
+     */
+    public static GenerationExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Runs a task on a thread of the pool
+     * 
+     * @param task The task
+     * @throws RejectedExecutionException If every thread is busy, or the pool
+     *                                    has been shut down
+     */
+    public void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                rejected++;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs a short task periodically on the timer thread
+     * 
+     * @param task     The task, which must not block
+     * @param periodMs The period in milliseconds, also the initial delay
+     * @return The future to cancel the task with
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long periodMs) {
+        return timer.scheduleWithFixedDelay(task, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the executor statistics
+     * 
+     * @return The statistics as JSON
+     * @throws JSONException If the statistics cannot be built
+     */
+    public synchronized JSONObject getStatistics() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("active", executor.getActiveCount());
+        stats.put("threads", executor.getPoolSize());
+        stats.put("maxThreads", MAX_THREADS);
+        stats.put("largestThreads", executor.getLargestPoolSize());
+        stats.put("completed", executor.getCompletedTaskCount());
+        stats.put("rejected", rejected);
+        stats.put("asyncSupported", AsyncRequest.isAvailable());
+        return stats;
+    }
+
+    /**
+     * Stops the threads. Called when the plugin bundle is stopped.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        timer.shutdownNow();
+    }
+}
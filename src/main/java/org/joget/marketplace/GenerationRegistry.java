@@ -0,0 +1,191 @@
+package org.joget.marketplace;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Tracks the generations in flight so that requests asking for the same thing
+ * share one upstream call instead of each starting their own.
+ * 
+ * A request attaches to an existing generation when it carries the same
+ * idempotency key as an earlier request (a retry of the same message), or when
+ * it is identical to a request still being generated (a double press). The
+ * generations of idempotency keys are kept for a short while after they
+ * finish, so a retry that arrives just after the answer completed still gets
+ * it without a new call.
+ */
+public class GenerationRegistry {
+
+    private static final int MAX_REQUEST_IDS = 1000;
+    private static final long COMPLETED_RETENTION = 2 * 60 * 1000L;
+
+    private static final GenerationRegistry INSTANCE = new GenerationRegistry();
+
+    private final Map<String, Generation> inFlight = new HashMap<>();
+
+    // Insertion-ordered so iteration starts from the oldest idempotency key
+    private final Map<String, Generation> byRequestId = new LinkedHashMap<>();
+
+    private long started = 0;
+    private long coalesced = 0;
+    private long retried = 0;
+    private long refused = 0;
+
+    private GenerationRegistry() {
+    }
+
+    /**
+     * Gets the registry shared by all instances of the plugin
+     * 
+     * @return The shared registry
+     */
+    public static GenerationRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Attaches a request to the generation it belongs to, starting a new one
+     * when no matching generation exists
+     * 
+     * @param requestKey  The scoped idempotency key, or null if the client sent
+     *                    none
+     * @param requestHash The hash of the request, see
+     *                    {@link ResponseCache#buildKey(OllamaRequest)}
+     * @return The attachment
+     */
+    public synchronized Attachment attach(String requestKey, String requestHash) {
+        evictCompleted();
+
+        if (requestKey != null) {
+            // A retry after a failure starts over instead of replaying the error
+            Generation generation = byRequestId.get(requestKey);
+            if (generation != null && generation.getError() == null) {
+                retried++;
+                return new Attachment(generation, false, generation.attachReader(requestKey));
+            }
+        }
+
+        Generation generation = inFlight.get(requestHash);
+        boolean owner = generation == null || generation.isFinished();
+        if (owner) {
+            started++;
+            generation = new Generation(requestHash);
+            inFlight.put(requestHash, generation);
+        } else {
+            coalesced++;
+        }
+
+        if (requestKey != null) {
+            // Keys of running generations are never forgotten, so past the cap new keys go untracked instead
+            if (byRequestId.size() < MAX_REQUEST_IDS || byRequestId.containsKey(requestKey)) {
+                byRequestId.put(requestKey, generation);
+            } else {
+                refused++;
+            }
+        }
+        return new Attachment(generation, owner, generation.attachReader(requestKey));
+    }
+
+    /**
+     * Finds the generation a message was attached to
+     * 
+     * @param requestKey The scoped idempotency key of the message
+     * @return The generation, or null if there is none or it has been
+     *         forgotten
+     */
+    public synchronized Generation find(String requestKey) {
+        return byRequestId.get(requestKey);
+    }
+
+    /**
+     * Removes a finished generation from the in-flight requests. Its
+     * idempotency keys stay attached until the retention period ends.
+     * 
+     * @param generation The finished generation
+     */
+    public synchronized void finish(Generation generation) {
+        if (inFlight.get(generation.getRequestHash()) == generation) {
+            inFlight.remove(generation.getRequestHash());
+        }
+    }
+
+    /**
+     * Forgets the idempotency keys whose generation finished before the
+     * retention period, then the oldest keys of finished generations while
+     * there are more keys than the cap. Keys of running generations are kept.
+     */
+    private void evictCompleted() {
+        long cutoff = System.currentTimeMillis() - COMPLETED_RETENTION;
+        int excess = byRequestId.size() - MAX_REQUEST_IDS;
+        Iterator<Generation> iterator = byRequestId.values().iterator();
+        while (iterator.hasNext()) {
+            Generation generation = iterator.next();
+            if (generation.isFinished() && (generation.getFinishedAt() < cutoff || excess >= 0)) {
+                iterator.remove();
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * Gets the usage statistics of the registry
+     * 
+     * @return The statistics as JSON
+     * @throws JSONException If the statistics cannot be built
+     */
+    public synchronized JSONObject getStatistics() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("inFlight", inFlight.size());
+        stats.put("requestIds", byRequestId.size());
+        stats.put("started", started);
+        stats.put("coalesced", coalesced);
+        stats.put("retried", retried);
+        stats.put("refused", refused);
+        return stats;
+    }
+
+    /**
+     * The generation a request was attached to
+     */
+    public static class Attachment {
+
+        private final Generation generation;
+        private final boolean owner;
+        private final String readerToken;
+
+        Attachment(Generation generation, boolean owner, String readerToken) {
+            this.generation = generation;
+            this.owner = owner;
+            this.readerToken = readerToken;
+        }
+
+        public Generation getGeneration() {
+            return generation;
+        }
+
+        /**
+         * Gets the token the request follows the generation under, which
+         * identifies it when it detaches
+         * 
+         * @return The reader token
+         */
+        public String getReaderToken() {
+            return readerToken;
+        }
+
+        /**
+         * Checks whether the request started the generation and so has to run
+         * the upstream call
+         * 
+         * @return true if the request owns the generation
+         */
+        public boolean isOwner() {
+            return owner;
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package org.joget.marketplace;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Keeps the generation jobs submitted through the job API, so that a client
+ * can poll for the output of a generation that carries on without it and pick
+ * up the result after a dropped connection.
+ * 
+ * A job can only be read by the conversation that submitted it. A running job
+ * follows its generation; once it finishes it keeps only the final text and
+ * the ID the response was stored under. Finished jobs are kept for as long as
+ * the stored responses, and the oldest ones are dropped once the store
+ * exceeds its job count or its approximate size in bytes. Running jobs are
+ * never dropped; when the store is full of them new jobs are refused.
+ */
+public class JobStore {
+
+    public static final long RETENTION = ResponseStore.RETENTION;
+
+    private static final int MAX_JOBS = 500;
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final JobStore INSTANCE = new JobStore();
+
+    // Insertion-ordered so iteration starts from the oldest job
+    private final LinkedHashMap<String, Job> jobs = new LinkedHashMap<>();
+    private final Map<String, Job> byRequestKey = new HashMap<>();
+    private long totalBytes = 0;
+    private long submitted = 0;
+    private long resumed = 0;
+    private long evictions = 0;
+
+    private JobStore() {
+    }
+
+    /**
+     * Gets the store shared by all instances of the plugin
+     * 
+     * @return The shared store
+     */
+    public static JobStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Adds a job for a message, unless an earlier submission of the same
+     * message created one. Submitting a message again then resumes its job
+     * instead of generating it again, even when both submissions arrive
+     * together. A new job starts pending, until it is given its generation
+     * or completed.
+     * 
+     * @param job The pending job to add
+     * @return The job of the earlier submission, or the job given once added
+     * @throws StoreFullException If the store is full of running jobs
+     */
+    public synchronized Job findOrAdd(Job job) throws StoreFullException {
+        if (job.requestKey != null) {
+            // A failed job is not resumed, so the message can be tried again
+            Job earlier = byRequestKey.get(job.requestKey);
+            if (earlier != null && !earlier.isExpired(System.currentTimeMillis()) && earlier.getError() == null) {
+                resumed++;
+                return earlier;
+            }
+        }
+
+        evict(1);
+        if (jobs.size() >= MAX_JOBS) {
+            throw new StoreFullException();
+        }
+        jobs.put(job.id, job);
+        job.store = this;
+        totalBytes += job.bytes;
+        if (job.requestKey != null) {
+            byRequestKey.put(job.requestKey, job);
+        }
+        submitted++;
+        return job;
+    }
+
+    /**
+     * Gets a job
+     * 
+     * @param conversationKey The key of the conversation asking for it
+     * @param jobId           The ID of the job
+     * @return The job, or null if there is no such job in this conversation or
+     *         it expired
+     */
+    public synchronized Job get(String conversationKey, String jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null || !job.conversationKey.equals(conversationKey)) {
+            return null;
+        }
+        if (job.isExpired(System.currentTimeMillis())) {
+            remove(job);
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * Drops the oldest finished jobs while the store is over its limits, and
+     * every expired one
+     * 
+     * @param room The number of jobs about to be added
+     */
+    private void evict(int room) {
+        long now = System.currentTimeMillis();
+        Iterator<Job> oldestFirst = jobs.values().iterator();
+        while (oldestFirst.hasNext()) {
+            Job job = oldestFirst.next();
+            boolean overLimit = jobs.size() + room > MAX_JOBS || totalBytes > MAX_BYTES;
+            if (!job.isFinished() || (!overLimit && !job.isExpired(now))) {
+                continue;
+            }
+            oldestFirst.remove();
+            forget(job);
+            if (overLimit) {
+                evictions++;
+            }
+        }
+    }
+
+    private void remove(Job job) {
+        jobs.remove(job.id);
+        forget(job);
+    }
+
+    private void forget(Job job) {
+        totalBytes -= job.bytes;
+        if (job.requestKey != null && byRequestKey.get(job.requestKey) == job) {
+            byRequestKey.remove(job.requestKey);
+        }
+    }
+
+    private synchronized void resize(Job job, long bytes) {
+        if (jobs.get(job.id) == job) {
+            totalBytes += bytes - job.bytes;
+        }
+        job.bytes = bytes;
+    }
+
+    /**
+     * Gets the store statistics
+     * 
+     * @return The statistics as JSON
+     * @throws JSONException If the statistics cannot be built
+     */
+    public synchronized JSONObject getStatistics() throws JSONException {
+        int running = 0;
+        for (Job job : jobs.values()) {
+            if (!job.isFinished()) {
+                running++;
+            }
+        }
+        JSONObject stats = new JSONObject();
+        stats.put("jobs", jobs.size());
+        stats.put("running", running);
+        stats.put("bytes", totalBytes);
+        stats.put("submitted", submitted);
+        stats.put("resumed", resumed);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+
+    /**
+     * A generation submitted through the job API
+     */
+    public static class Job {
+
+        private final String id = UUID.randomUUID().toString();
+        private final String conversationKey;
+        private final String requestKey;
+        private final long createdAt = System.currentTimeMillis();
+
+        // The generation while the job runs, dropped once it finishes
+        private Generation generation;
+        private String readerToken;
+        private AdmissionController.Ticket ticket;
+        private String text;
+        private String responseId;
+        private String error;
+        private boolean finished = false;
+        private long finishedAt;
+        private long bytes = 0;
+        private JobStore store;
+
+        /**
+         * Creates a pending job, to be added with
+         * {@link JobStore#findOrAdd(Job)}
+         * 
+         * @param conversationKey The key of the conversation submitting the
+         *                        job
+         * @param requestKey      The scoped idempotency key of the message,
+         *                        or null
+         */
+        public Job(String conversationKey, String requestKey) {
+            this.conversationKey = conversationKey;
+            this.requestKey = requestKey;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Gets the scoped idempotency key of the message of the job
+         * 
+         * @return The key, or null if the client sent no request ID
+         */
+        public String getRequestKey() {
+            return requestKey;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        /**
+         * Sets the admission ticket of the job while it waits for a slot, so
+         * pollers can be told its place in the queue
+         * 
+         * @param ticket The ticket, or null once admitted
+         */
+        public synchronized void setTicket(AdmissionController.Ticket ticket) {
+            this.ticket = ticket;
+        }
+
+        /**
+         * Gives a pending job the generation it follows
+         * 
+         * @param generation  The generation
+         * @param readerToken The token the job follows the generation under
+         * @return false if the job already finished, for example because it
+         *         was cancelled meanwhile
+         */
+        public synchronized boolean start(Generation generation, String readerToken) {
+            if (finished) {
+                return false;
+            }
+            this.generation = generation;
+            this.readerToken = readerToken;
+            return true;
+        }
+
+        /**
+         * Gets the token the job follows its generation under
+         * 
+         * @return The reader token, or null while the job is pending
+         */
+        public synchronized String getReaderToken() {
+            return readerToken;
+        }
+
+        /**
+         * Gets the generation the job follows
+         * 
+         * @return The generation, or null while the job is pending or once it
+         *         finished
+         */
+        public synchronized Generation getGeneration() {
+            return generation;
+        }
+
+        /**
+         * Gets the state of the job
+         * 
+         * @return "queued", "running", "done" or "failed"
+         */
+        public synchronized String getStatus() {
+            if (finished) {
+                return error != null ? "failed" : "done";
+            }
+            return ticket != null && ticket.getPosition() > 0 ? "queued" : "running";
+        }
+
+        /**
+         * Gets the place of the job in the queue of its endpoint
+         * 
+         * @return The 1-based position, or 0 if it is not waiting
+         */
+        public synchronized int getPosition() {
+            return !finished && ticket != null ? ticket.getPosition() : 0;
+        }
+
+        public synchronized long getEstimatedWait() {
+            return !finished && ticket != null ? ticket.getEstimatedWait() : 0;
+        }
+
+        /**
+         * Marks the job as done
+         * 
+         * @param text       The final response text
+         * @param responseId The ID the response was stored under
+         */
+        public void complete(String text, String responseId) {
+            JobStore owner;
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                this.text = text;
+                this.responseId = responseId;
+                finish();
+                owner = store;
+            }
+            // Two bytes per char
+            if (owner != null) {
+                owner.resize(this, text.length() * 2L);
+            } else {
+                bytes = text.length() * 2L;
+            }
+        }
+
+        /**
+         * Marks the job as failed
+         * 
+         * @param error The message of the failure
+         */
+        public synchronized void fail(String error) {
+            if (finished) {
+                return;
+            }
+            this.error = error;
+            finish();
+        }
+
+        private void finish() {
+            finished = true;
+            finishedAt = System.currentTimeMillis();
+            generation = null;
+            ticket = null;
+            notifyAll();
+        }
+
+        public synchronized boolean isFinished() {
+            return finished;
+        }
+
+        public synchronized long getFinishedAt() {
+            return finishedAt;
+        }
+
+        /**
+         * Gets the final response text
+         * 
+         * @return The text, or null if the job failed or is running
+         */
+        public synchronized String getText() {
+            return text;
+        }
+
+        public synchronized String getResponseId() {
+            return responseId;
+        }
+
+        public synchronized String getError() {
+            return error;
+        }
+
+        /**
+         * Waits for the job to finish
+         * 
+         * @param timeoutMs The longest time to wait
+         * @return true if the job finished in time
+         * @throws InterruptedException If the thread is interrupted while
+         *                              waiting
+         */
+        public synchronized boolean awaitFinished(long timeoutMs) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            while (!finished) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+
+        synchronized boolean isExpired(long now) {
+            return finished && finishedAt + RETENTION <= now;
+        }
+    }
+
+    /**
+     * Thrown when the store is full of running jobs
+     */
+    public static class StoreFullException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public StoreFullException() {
+            super("Too many generation jobs are running, please try again later");
+        }
+    }
+}
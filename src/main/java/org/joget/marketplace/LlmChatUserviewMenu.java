@@ -1,9 +1,22 @@
 package org.joget.marketplace;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.SocketTimeoutException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
@@ -17,33 +30,1218 @@ import org.joget.apps.userview.model.UserviewMenu;
 import org.joget.commons.util.LogUtil;
 import org.joget.commons.util.StringUtil;
 import org.joget.plugin.base.PluginWebSupport;
+import org.joget.workflow.model.service.WorkflowUserManager;
+import org.joget.workflow.util.WorkflowUtil;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 public class LlmChatUserviewMenu extends UserviewMenu implements PluginWebSupport {
 
+    // How often a request following a shared generation checks whether it finished
+    private static final long FOLLOW_WAIT_INTERVAL = 15000L;
+
+    // How often a stream with nothing else to send is written to, to find out whether its client is still there
+    private static final long HEARTBEAT_INTERVAL = 5000L;
+
+    // How often a queued request reports its position to the page
+    private static final long QUEUE_UPDATE_INTERVAL = 1000L;
+
+    // Not defined by the Servlet 2.5 HttpServletResponse
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    // Age up to which checkConnection reuses the background prober's result
+    private static final long CONNECTION_CHECK_MAX_AGE = 5000L;
+
+    // Added to the longest a request can wait in the queue and generate before the container ends it
+    private static final long ASYNC_TIMEOUT_MARGIN = 60000L;
+
+    // Sent when every generation thread is busy
+    private static final String SERVER_BUSY = "The server is busy, please try again shortly";
+
+    // Longest a pollJob request waits for new output, below common proxy read timeouts
+    private static final long MAX_POLL_WAIT = 25000L;
+
+    /**
+     * Utility method to send a JSON response
+     * 
+     * @param response The HttpServletResponse object
+     * @param key      The key for the JSON object
+     * @param value    The value for the JSON object
+     * @throws IOException If there's an error writing to the response
+     */
+    private void sendJsonResponse(HttpServletResponse response, String key, String value) throws IOException {
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache, no-store, must-revalidate");
+        response.setHeader("Pragma", "no-cache");
+        response.setDateHeader("Expires", 0);
+
+        try {
+            JSONObject jsonResponse = new JSONObject();
+            jsonResponse.put(key, value);
+            response.getWriter().write(jsonResponse.toString());
+        } catch (JSONException e) {
+            // Fallback if JSON creation fails
+            response.getWriter().write("{\"" + key + "\":\"" +
+                    StringUtil.escapeString(value, StringUtil.TYPE_JSON, null) + "\"}");
+        }
+    }
+
+    /**
+     * Runs the upstream call of a generation this request started, once the
+     * admission controller lets it through. While the request waits its client
+     * gets "queue" events with its position and expected wait. Every token is
+     * added to the generation for the requests attached to it, and when the
+     * page asked for streaming it is also written to this request's client as a
+     * "token" event as soon as Ollama produces it, and each code file of the
+     * answer as a "file" event as soon as its block closes. The zip of the code
+     * is built before the generation completes, so it is ready for download
+     * with the last token. If the client goes away the generation carries on
+     * as long as other requests still follow it; once none does, the upstream
+     * call is cancelled so Ollama stops generating. While the client waits in
+     * the queue or for the first token, heartbeats find out whether it left.
+     * The queue wait and the upstream call end by the deadline of the
+     * generation.
+     * 
+     * In project output mode the answer is parsed as it arrives, and the
+     * clients get the summary and the files rendered as markdown in place of
+     * the raw JSON.
+     * 
+     * @param generation    The generation to run
+     * @param ollamaRequest The request to send to Ollama
+     * @param ticket        The admission ticket of the request, released here
+     * @param response      The response to stream events to, or null
+     * @param readerToken   The reader token of the request
+     */
+    private void runGeneration(final Generation generation, OllamaRequest ollamaRequest,
+            AdmissionController.Ticket ticket, final HttpServletResponse response, final String readerToken) {
+        final AtomicBoolean clientConnected = new AtomicBoolean(response != null);
+        final ReentrantLock streamLock = new ReentrantLock();
+        final int[] filesSent = { 0 };
+        Cancellation cancellation = generation.getCancellation();
+        ollamaRequest.setCancellation(cancellation);
+        ScheduledFuture<?> heartbeat = null;
+        if (response != null) {
+            heartbeat = GenerationExecutor.getInstance().schedule(
+                    () -> relayHeartbeat(generation, clientConnected, streamLock, response, readerToken),
+                    HEARTBEAT_INTERVAL);
+        }
+
+        try {
+            // Wait for a free slot on the endpoint, reporting progress through the queue
+            long queueTimeout = ollamaRequest.getTimeouts().getRequestTimeout();
+            boolean firstCheck = true;
+            while (!ticket.await(firstCheck ? 0 : QUEUE_UPDATE_INTERVAL)) {
+                firstCheck = false;
+                cancellation.check();
+                if (ticket.getWaited() > queueTimeout) {
+                    throw new SocketTimeoutException("Timed out waiting in the queue for the Ollama API");
+                }
+
+                JSONObject status = new JSONObject();
+                status.put("position", ticket.getPosition());
+                status.put("waited", ticket.getWaited());
+                status.put("estimatedWait", ticket.getEstimatedWait());
+                relayEvent(generation, clientConnected, streamLock, response, readerToken, "queue", status);
+            }
+            if (!firstCheck) {
+                LogUtil.info(getClassName(), "Request admitted after waiting " + ticket.getWaited() + " ms");
+            }
+
+            OllamaApiClient.TokenListener listener = token -> {
+                generation.append(token);
+                relayEvent(generation, clientConnected, streamLock, response, readerToken, "token",
+                        new JSONObject().put("token", token));
+                relayFiles(generation, clientConnected, streamLock, response, readerToken, filesSent);
+            };
+            ProjectJsonParser parser = null;
+            if (ollamaRequest.isProjectOutput()) {
+                parser = new ProjectJsonParser(new ProjectJsonParser.Listener() {
+                    private int number = 0;
+
+                    @Override
+                    public void onSummary(String text) throws IOException {
+                        generation.appendParsed(text, null);
+                        relayEvent(generation, clientConnected, streamLock, response, readerToken, "token",
+                                new JSONObject().put("token", text));
+                    }
+
+                    @Override
+                    public void onFile(String path, String content) throws IOException {
+                        String rendered = ProjectJsonParser.renderFile(++number, path, content);
+                        generation.appendParsed(rendered, new CodeBlockTokenizer.CodeFile(path, content));
+                        relayEvent(generation, clientConnected, streamLock, response, readerToken, "token",
+                                new JSONObject().put("token", rendered));
+                        relayFiles(generation, clientConnected, streamLock, response, readerToken, filesSent);
+                    }
+                });
+                listener = parser::feed;
+            }
+
+            OllamaResponse result = OllamaApiClient.streamOllamaApi(ollamaRequest, listener);
+            if (parser != null && !parser.isComplete()) {
+                LogUtil.warn(getClassName(), "The JSON project ended early, after " + parser.getFileCount()
+                        + " files");
+            }
+            // The generation holds the only copy of the text while it runs
+            result = toRenderedResponse(result, generation.getText());
+
+            LogUtil.info(getClassName(), "Generated response: " + result.getText().length() + " characters");
+            generation.setArchiveKey(buildArchive(generation, result.getText()));
+            relayFiles(generation, clientConnected, streamLock, response, readerToken, filesSent);
+            generation.complete(result);
+        } catch (Exception e) {
+            if (cancellation.isCancelled()) {
+                // Whatever the call failed with, it was brought down by the cancel
+                LogUtil.info(getClassName(), "Generation cancelled: " + cancellation.getReason());
+                generation.fail(new Cancellation.CancelledException(cancellation.getReason()));
+            } else {
+                LogUtil.error(getClassName(), e, "Error calling Ollama API: " + e.getMessage());
+                generation.fail(e);
+            }
+        } finally {
+            if (heartbeat != null) {
+                heartbeat.cancel(false);
+                // Waits out a heartbeat being written, so it cannot interleave with the events written next
+                streamLock.lock();
+                streamLock.unlock();
+            }
+            ticket.release();
+            if (!generation.isFinished()) {
+                generation.fail(new IOException("Generation ended unexpectedly"));
+            }
+            GenerationRegistry.getInstance().finish(generation);
+        }
+    }
+
+    /**
+     * Copies the metadata of a response with the text its clients were shown,
+     * which the streamed response does not carry
+     * 
+     * @param result The response of the model
+     * @param text   The text shown
+     * @return The response with the text shown
+     */
+    private static OllamaResponse toRenderedResponse(OllamaResponse result, String text) {
+        OllamaResponse rendered = new OllamaResponse(text);
+        rendered.setContext(result.getContext());
+        rendered.setEvalCount(result.getEvalCount());
+        rendered.setEvalDuration(result.getEvalDuration());
+        return rendered;
+    }
+
+    /**
+     * Writes an event of a generation to this request's client while it is
+     * connected. Once it is gone, or it cancelled, the generation only
+     * continues while other requests still follow it.
+     * 
+     * @param generation      The generation the event belongs to
+     * @param clientConnected Whether the client can still be written to,
+     *                        cleared when a write fails
+     * @param streamLock      Held while a frame is written to the client
+     * @param response        The response to write to, or null
+     * @param readerToken     The reader token of the request
+     * @param event           The event name
+     * @param data            The event payload
+     * @throws IOException If no client follows the generation any more
+     */
+    private void relayEvent(Generation generation, AtomicBoolean clientConnected, ReentrantLock streamLock,
+            HttpServletResponse response, String readerToken, String event, JSONObject data) throws IOException {
+        if (clientConnected.get() && generation.isDetached(readerToken)) {
+            // The client cancelled, so it is no longer written to
+            clientConnected.set(false);
+        }
+        if (clientConnected.get()) {
+            streamLock.lock();
+            try {
+                sendEvent(response, event, data);
+                return;
+            } catch (IOException e) {
+                if (disconnectClient(generation, clientConnected, readerToken) == 0) {
+                    throw e;
+                }
+                return;
+            } finally {
+                streamLock.unlock();
+            }
+        }
+
+        if (generation.getReaders() == 0) {
+            throw new IOException("All clients of the generation disconnected");
+        }
+    }
+
+    /**
+     * Writes a heartbeat to this request's client, run periodically so a
+     * client that left is noticed while there is nothing else to send. It
+     * runs on the timer thread shared by every stream, so it never waits for
+     * the stream: when an event is being written, which also finds out
+     * whether the client left, the heartbeat is skipped.
+     * 
+     * @param generation      The generation the client follows
+     * @param clientConnected Whether the client can still be written to
+     * @param streamLock      Held while a frame is written to the client
+     * @param response        The response to write to
+     * @param readerToken     The reader token of the request
+     */
+    private void relayHeartbeat(Generation generation, AtomicBoolean clientConnected, ReentrantLock streamLock,
+            HttpServletResponse response, String readerToken) {
+        if (!clientConnected.get() || generation.isDetached(readerToken) || !streamLock.tryLock()) {
+            return;
+        }
+        try {
+            sendHeartbeat(response);
+        } catch (IOException e) {
+            disconnectClient(generation, clientConnected, readerToken);
+        } finally {
+            streamLock.unlock();
+        }
+    }
+
+    /**
+     * Detaches this request from its generation after a write to its client
+     * failed. The generation is cancelled if no other request follows it.
+     * 
+     * @param generation      The generation the client follows
+     * @param clientConnected Whether the client can still be written to,
+     *                        cleared here
+     * @param readerToken     The reader token of the request
+     * @return The number of readers left
+     */
+    private int disconnectClient(Generation generation, AtomicBoolean clientConnected, String readerToken) {
+        if (!clientConnected.compareAndSet(true, false)) {
+            return generation.getReaders();
+        }
+        int left = generation.detachReader(readerToken);
+        if (left > 0) {
+            LogUtil.info(getClassName(), "Client disconnected, generating for attached requests");
+        } else {
+            LogUtil.info(getClassName(), "Client disconnected, cancelling the generation");
+        }
+        return left;
+    }
+
+    /**
+     * Writes the code files of a generation that became ready since the last
+     * call to this request's client as "file" events
+     * 
+     * @param generation      The generation the files belong to
+     * @param clientConnected Whether the client can still be written to
+     * @param streamLock      Held while a frame is written to the client
+     * @param response        The response to write to, or null
+     * @param readerToken     The reader token of the request
+     * @param filesSent       The number of files already written, updated here
+     * @throws IOException If no client follows the generation any more
+     */
+    private void relayFiles(Generation generation, AtomicBoolean clientConnected, ReentrantLock streamLock,
+            HttpServletResponse response, String readerToken, int[] filesSent) throws IOException {
+        if (!clientConnected.get() || generation.getFileCount() <= filesSent[0]) {
+            return;
+        }
+        for (CodeBlockTokenizer.CodeFile file : generation.getFiles(filesSent[0])) {
+            relayEvent(generation, clientConnected, streamLock, response, readerToken, "file",
+                    toFileEvent(filesSent[0]++, file));
+        }
+    }
+
+    private static JSONObject toFileEvent(int index, CodeBlockTokenizer.CodeFile file) {
+        return new JSONObject().put("index", index).put("name", file.getName())
+                .put("length", file.getContent().length());
+    }
+
+    /**
+     * Builds the zip of the code files extracted while a generation ran and
+     * adds it to the archive cache
+     * 
+     * @param generation The generation
+     * @param text       The full text of the answer
+     * @return The archive cache key of the zip, or null if the answer has no
+     *         code files or was too long to extract the code from
+     */
+    private String buildArchive(Generation generation, String text) {
+        List<CodeBlockTokenizer.CodeFile> files = generation.finishExtraction();
+        if (files == null || files.isEmpty()) {
+            return null;
+        }
+        try {
+            boolean parsed = generation.isParsed();
+            byte[] archive = ZipFileUtil.createZip(files, parsed ? null : text);
+            if (archive == null) {
+                return null;
+            }
+            LogUtil.info(getClassName(), "Built zip of " + files.size() + " files: " + archive.length + " bytes");
+            String key = ArchiveCache.buildKey(text, parsed);
+            ArchiveCache.getInstance().put(key, archive);
+            return key;
+        } catch (IOException e) {
+            LogUtil.warn(getClassName(), "Could not build the zip of the response: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Answers a download with 304 Not Modified when the client already has the
+     * archive or file
+     * 
+     * @param request  The download request
+     * @param response The response
+     * @param key      The archive cache key of the archive, or the hash of the
+     *                 file
+     * @return true if the response was sent
+     */
+    private boolean sendNotModified(HttpServletRequest request, HttpServletResponse response, String key) {
+        if (!matchesETag(request, key)) {
+            return false;
+        }
+        LogUtil.info(getClassName(), "Client already has " + key);
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        setArchiveCacheHeaders(response, key);
+        return true;
+    }
+
+    /**
+     * Tells whether the If-None-Match header of a request matches an entity
+     * tag
+     * 
+     * @param request The request
+     * @param key     The unquoted entity tag
+     * @return true if the client already has the content
+     */
+    private static boolean matchesETag(HttpServletRequest request, String key) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String etag = "\"" + key + "\"";
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if ("*".equals(value) || etag.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends a script or style sheet of the page. A request for the version
+     * the page refers to may be cached for good, as a new version gets a new
+     * URL; any other request is revalidated with the entity tag.
+     * 
+     * @param request  The asset request
+     * @param response The response
+     * @throws IOException If the response cannot be written
+     */
+    private void sendAsset(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        PageAssets.Asset asset = PageAssets.getInstance().getAsset(request.getParameter("name"));
+        if (asset == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            sendJsonResponse(response, "error", "No such asset");
+            return;
+        }
+        boolean gzip = acceptsGzip(request);
+        String etag = asset.getETag(gzip);
+        response.setHeader("ETag", "\"" + etag + "\"");
+        response.setHeader("Vary", "Accept-Encoding");
+        response.setHeader("Cache-Control", asset.getVersion().equals(request.getParameter("v"))
+                ? "public, max-age=31536000, immutable"
+                : "public, no-cache");
+        if (matchesETag(request, etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] content = asset.getContent(gzip);
+        response.setContentType(asset.getContentType());
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        if (asset.isGzipped(gzip)) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        response.setContentLength(content.length);
+        if (!"HEAD".equals(request.getMethod())) {
+            ServletOutputStream out = response.getOutputStream();
+            out.write(content);
+            out.flush();
+        }
+    }
+
+    /**
+     * Tells whether a client accepts gzipped content
+     * 
+     * @param request The request
+     * @return false unless the Accept-Encoding header lists gzip with a
+     *         non-zero quality
+     */
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.toLowerCase().split(",")) {
+            String[] parts = coding.split(";");
+            if (!"gzip".equals(parts[0].trim())) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].replace(" ", "");
+                if (parameter.startsWith("q=") && parameter.matches("q=0(\\.0*)?")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Builds the key of the archive extracted from chat content, reading the
+     * content as a stream
+     * 
+     * @param chatContent The chat content
+     * @return The archive cache key
+     * @throws IOException If the content cannot be read
+     */
+    private static String buildExtractedKey(SpillableBuffer chatContent) throws IOException {
+        try (Reader reader = chatContent.openReader()) {
+            return ArchiveCache.buildKey(reader, false);
+        }
+    }
+
+    /**
+     * Gets the raw text of a response kept for this conversation, answering
+     * the request with an error when there is none
+     * 
+     * @param request    The request
+     * @param response   The response, to which any error is sent
+     * @param responseId The ID of the response
+     * @return The response text, or null if an error was sent
+     * @throws IOException If the error cannot be sent
+     */
+    private String getStoredResponse(HttpServletRequest request, HttpServletResponse response, String responseId)
+            throws IOException {
+        if (responseId == null || responseId.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            sendJsonResponse(response, "error", "A response ID is required");
+            return null;
+        }
+        String text = ResponseStore.getInstance().get(getConversationKey(request), responseId);
+        if (text == null) {
+            LogUtil.info(getClassName(), "Response " + responseId + " is no longer available");
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            sendJsonResponse(response, "error", "This response is no longer available, please send the message again");
+        }
+        return text;
+    }
+
+    /**
+     * Gets the files of the zip of a response. They are read back from the
+     * cached zip when there is one, so they are the files downloadCode sends;
+     * otherwise they are extracted from the text and the zip is cached for a
+     * later download.
+     * 
+     * @param text       The response text
+     * @param archiveKey The archive cache key kept with the response, or null
+     * @return A map of zip entry paths to code content, empty if the response
+     *         has no code files
+     * @throws IOException If the zip cannot be read or the text is too long to
+     *                     extract
+     */
+    private Map<String, String> loadZipEntries(String text, String archiveKey) throws IOException {
+        ArchiveCache archiveCache = ArchiveCache.getInstance();
+        String key = archiveKey != null ? archiveKey : ArchiveCache.buildKey(text, false);
+        ArchiveCache.Archive archive = archiveCache.get(key);
+        if (archive == null && archiveKey != null) {
+            // The zip built with the response is gone, so it is extracted from the text again
+            key = ArchiveCache.buildKey(text, false);
+            archive = archiveCache.get(key);
+        }
+        if (archive != null) {
+            try {
+                return ZipFileUtil.readZip(archive.openStream());
+            } finally {
+                archive.close();
+            }
+        }
+
+        Map<String, String> zipEntries = ZipFileUtil.extractZipEntries(text);
+        if (!zipEntries.isEmpty()) {
+            ByteArrayOutputStream zip = new ByteArrayOutputStream();
+            ZipFileUtil.writeZip(zipEntries, zip);
+            archiveCache.put(key, zip.toByteArray());
+        }
+        return zipEntries;
+    }
+
+    private static String hashContent(byte[] content) {
+        try {
+            return ResponseCache.toHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Builds the Content-Disposition header of a single file, named after the
+     * last segment of its path
+     * 
+     * @param path The path of the file
+     * @return The header value
+     * @throws UnsupportedEncodingException Never, UTF-8 is always supported
+     */
+    private static String buildAttachmentHeader(String path) throws UnsupportedEncodingException {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        String asciiName = name.replaceAll("[^\\x20-\\x7E]|[\"\\\\]", "_");
+        return "attachment; filename=\"" + asciiName + "\"; filename*=UTF-8''"
+                + URLEncoder.encode(name, "UTF-8").replace("+", "%20");
+    }
+
+    private static void setArchiveCacheHeaders(HttpServletResponse response, String key) {
+        // The browser keeps the archive but checks back, as a response ID only lives for a while
+        response.setHeader("ETag", "\"" + key + "\"");
+        response.setHeader("Cache-Control", "private, no-cache");
+    }
+
+    /**
+     * Follows a generation started by another request, replaying the text
+     * generated so far and then each new token as "token" events, and the code
+     * files ready so far and then each new one as "file" events. A heartbeat
+     * is sent whenever nothing new arrives for a while, to notice a client
+     * that left.
+     * 
+     * @param generation  The generation to follow
+     * @param response    The response to stream tokens to
+     * @param readerToken The reader token of the request
+     * @param deadline    The time by which the request must end
+     * @return false if the client disconnected or cancelled before the
+     *         generation finished
+     * @throws IOException If the wait is interrupted or the deadline passes
+     */
+    private boolean followGeneration(Generation generation, HttpServletResponse response, String readerToken,
+            long deadline) throws IOException {
+        int offset = 0;
+        int filesSent = 0;
+        try {
+            String text;
+            while ((text = generation.awaitText(offset, HEARTBEAT_INTERVAL)) != null) {
+                if (generation.isDetached(readerToken)) {
+                    return false;
+                }
+                if (!text.isEmpty()) {
+                    sendEvent(response, "token", new JSONObject().put("token", text));
+                    offset += text.length();
+                } else {
+                    sendHeartbeat(response);
+                }
+                filesSent = sendFiles(generation, response, filesSent);
+                checkDeadline(generation, readerToken, deadline);
+            }
+            sendFiles(generation, response, filesSent);
+            return true;
+        } catch (SocketTimeoutException e) {
+            throw e;
+        } catch (IOException e) {
+            generation.detachReader(readerToken);
+            LogUtil.info(getClassName(), "Client following a shared generation disconnected");
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            generation.detachReader(readerToken);
+            throw new IOException("Interrupted while waiting for the generation", e);
+        }
+    }
+
+    /**
+     * Detaches a request following a generation once its deadline passed
+     * 
+     * @param generation  The generation the request follows
+     * @param readerToken The reader token of the request
+     * @param deadline    The time by which the request must end
+     * @throws SocketTimeoutException If the deadline passed
+     */
+    private static void checkDeadline(Generation generation, String readerToken, long deadline)
+            throws SocketTimeoutException {
+        if (System.currentTimeMillis() >= deadline && !generation.isFinished()) {
+            generation.detachReader(readerToken);
+            throw new SocketTimeoutException("Timed out waiting for the generation");
+        }
+    }
+
+    private int sendFiles(Generation generation, HttpServletResponse response, int filesSent) throws IOException {
+        if (generation.getFileCount() > filesSent) {
+            for (CodeBlockTokenizer.CodeFile file : generation.getFiles(filesSent)) {
+                sendEvent(response, "file", toFileEvent(filesSent++, file));
+            }
+        }
+        return filesSent;
+    }
+
+    /**
+     * Waits for a generation started by another request to finish
+     * 
+     * @param generation  The generation to wait for
+     * @param readerToken The reader token of the request
+     * @param deadline    The time by which the request must end
+     * @throws IOException If the wait is interrupted or the deadline passes
+     */
+    private void awaitGeneration(Generation generation, String readerToken, long deadline) throws IOException {
+        try {
+            while (!generation.awaitFinished(
+                    Math.max(1, Math.min(FOLLOW_WAIT_INTERVAL, deadline - System.currentTimeMillis())))) {
+                checkDeadline(generation, readerToken, deadline);
+                if (generation.isDetached(readerToken)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            generation.detachReader(readerToken);
+            throw new IOException("Interrupted while waiting for the generation", e);
+        }
+    }
+
+    /**
+     * Builds the Ollama request of a chat message from the plugin properties
+     * and the conversation it belongs to
+     * 
+     * @param request  The sendMessage or submitJob request
+     * @param response The response, to which any error is sent
+     * @return The prepared message, or null if an error was sent
+     * @throws IOException If the error cannot be sent
+     */
+    private PreparedMessage prepareMessage(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        // Get message from request
+        String message = request.getParameter("message");
+        String apiEndpoint = getPropertyString("apiEndpoint");
+        String model = getPropertyString("model");
+        String systemPrompt = getPropertyString("systemPrompt");
+
+        // Get temperature with default value
+        double temperature = 0.7;
+
+        try {
+            String tempStr = getPropertyString("temperature");
+            if (tempStr != null && !tempStr.isEmpty()) {
+                temperature = Double.parseDouble(tempStr);
+            }
+        } catch (NumberFormatException e) {
+            LogUtil.warn(getClassName(), "Invalid temperature value, using default 0.7");
+        }
+
+        OllamaRequest ollamaRequest = new OllamaRequest(message, apiEndpoint, model, systemPrompt, temperature);
+        ollamaRequest.setProjectOutput("project".equals(getPropertyString("outputFormat")));
+        OllamaApiClient.applyDefaults(ollamaRequest);
+        configureEndpoints(ollamaRequest);
+
+        // Reject models the nodes are known not to have before queuing for them
+        if (Boolean.FALSE.equals(ModelCatalog.getInstance().isModelAvailable(ollamaRequest.getApiEndpoint(),
+                ollamaRequest.getModel()))) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            sendJsonResponse(response, "error",
+                    "Model " + ollamaRequest.getModel() + " is not available on the configured Ollama nodes");
+            return null;
+        }
+
+        int tokenBudget = getIntProperty("contextTokenBudget", ConversationStore.DEFAULT_TOKEN_BUDGET);
+        String conversationKey = getConversationKey(request);
+        ConversationStore.Conversation conversation = ConversationStore.getInstance().getConversation(conversationKey);
+        if (ollamaRequest.isChatEndpoint()) {
+            // Send the earlier turns of this conversation along
+            int historyBudget = tokenBudget
+                    - ConversationStore.estimateTokens(
+                            OllamaApiClient.buildSystemPrompt(systemPrompt, ollamaRequest.isProjectOutput()))
+                    - ConversationStore.estimateTokens(message);
+            ollamaRequest.setHistory(conversation.getHistory(Math.max(0, historyBudget)));
+        } else {
+            // Continue from the token context of the previous turn
+            ollamaRequest.setContext(ContextCache.getInstance().get(conversationKey, ollamaRequest.getModel()));
+        }
+
+        // By default a request may wait in the queue and then generate for a request timeout each. The
+        // client can ask for an earlier deadline, for example to end before a proxy in front of it does.
+        long timeout = 2L * ollamaRequest.getTimeouts().getRequestTimeout();
+        int requestedTimeout = getIntParameter(request, "timeout");
+        if (requestedTimeout > 0) {
+            timeout = Math.min(timeout, requestedTimeout);
+        }
+
+        boolean cacheEnabled = "true".equalsIgnoreCase(getPropertyString("enableResponseCache"));
+        return new PreparedMessage(ollamaRequest, conversationKey, conversation, tokenBudget,
+                ResponseCache.buildKey(ollamaRequest), cacheEnabled, System.currentTimeMillis() + timeout);
+    }
+
+    /**
+     * Applies the connection settings of this menu to a request: the timeouts
+     * go with the request, and the pool and queue limits are set on the
+     * endpoints it calls, where the lowest limit any menu sets applies
+     * 
+     * @param ollamaRequest The request, with its defaults applied
+     * @throws IOException If an endpoint URL is malformed
+     */
+    private void configureEndpoints(OllamaRequest ollamaRequest) throws IOException {
+        ollamaRequest.setTimeouts(new OllamaHttpClient.Timeouts(
+                getIntProperty("connectTimeout", OllamaHttpClient.DEFAULT_CONNECT_TIMEOUT),
+                getIntProperty("readTimeout", OllamaHttpClient.DEFAULT_READ_TIMEOUT),
+                getIntProperty("requestTimeout", OllamaHttpClient.DEFAULT_REQUEST_TIMEOUT)));
+
+        String menuKey = getMenuKey();
+        for (String endpoint : ollamaRequest.getEndpoints()) {
+            OllamaHttpClient.getInstance().configure(endpoint, menuKey,
+                    getIntProperty("maxConnections", OllamaHttpClient.DEFAULT_MAX_CONNECTIONS));
+        }
+        AdmissionController.getInstance().configure(ollamaRequest.getApiEndpoint(), menuKey,
+                getIntProperty("maxConcurrentRequests", AdmissionController.DEFAULT_MAX_CONCURRENT),
+                getIntProperty("maxQueueLength", AdmissionController.DEFAULT_MAX_QUEUE_LENGTH));
+    }
+
+    /**
+     * Builds a key identifying this menu among the menus of every app
+     * 
+     * @return The app ID and the menu ID
+     */
+    private String getMenuKey() {
+        return getAppId() + ":" + getPropertyString("id");
+    }
+
+    /**
+     * Gets the app the platform resolved for the request. Requests are queued
+     * under it rather than under the appId parameter, which the client could
+     * change at will to get a fresh share of the queue.
+     * 
+     * @return The app ID, or an empty string if no app was resolved
+     */
+    private static String getAppId() {
+        AppDefinition appDef = AppUtil.getCurrentAppDefinition();
+        return appDef != null && appDef.getId() != null ? appDef.getId() : "";
+    }
+
+    /**
+     * Gets the answer to a message from the response cache when it is
+     * enabled, recording the turn on a hit
+     * 
+     * @param prepared The prepared message
+     * @return The cached response, or null
+     */
+    private OllamaResponse getCachedResponse(PreparedMessage prepared) {
+        if (!prepared.cacheEnabled) {
+            return null;
+        }
+        OllamaResponse cached = ResponseCache.getInstance().get(prepared.requestHash);
+        if (cached != null) {
+            recordTurn(prepared.conversationKey, prepared.conversation, prepared.ollamaRequest, cached,
+                    prepared.tokenBudget);
+        }
+        return cached;
+    }
+
+    /**
+     * Builds the key retries of a message share, from the ID the page gave it
+     * 
+     * @param request         The request
+     * @param conversationKey The key of the conversation of the message
+     * @return The key, or null if the page sent no request ID
+     */
+    private static String getRequestKey(HttpServletRequest request, String conversationKey) {
+        String requestId = request.getParameter("requestId");
+        return requestId != null && !requestId.isEmpty() ? conversationKey + "|" + requestId : null;
+    }
+
+    /**
+     * Queues the request that owns a generation for a slot on its endpoint.
+     * The generation takes the deadline of the request. When the queue is
+     * full the generation is failed and the request is answered with 429.
+     * 
+     * @param request    The request
+     * @param response   The response, to which any error is sent
+     * @param prepared   The prepared message
+     * @param generation The generation the request owns
+     * @return The admission ticket, or null if an error was sent
+     * @throws IOException If the error cannot be sent
+     */
+    private AdmissionController.Ticket enqueue(HttpServletRequest request, HttpServletResponse response,
+            PreparedMessage prepared, Generation generation) throws IOException {
+        OllamaRequest ollamaRequest = prepared.ollamaRequest;
+        generation.getCancellation().setDeadline(prepared.deadline);
+        AdmissionController.Lane lane = "background".equals(request.getParameter("priority"))
+                ? AdmissionController.Lane.BACKGROUND
+                : AdmissionController.Lane.INTERACTIVE;
+        try {
+            return AdmissionController.getInstance().enqueue(ollamaRequest.getApiEndpoint(),
+                    ollamaRequest.getEndpoints().size(), getAppId(), WorkflowUtil.getCurrentUsername(), lane);
+        } catch (AdmissionController.QueueFullException e) {
+            LogUtil.warn(getClassName(), "Rejecting request, queue is full: " + e.getMessage());
+            generation.fail(e);
+            GenerationRegistry.getInstance().finish(generation);
+
+            response.setStatus(SC_TOO_MANY_REQUESTS);
+            response.setHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+            sendJsonResponse(response, "error", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Lets go of a generation a request will not wait for after all: the
+     * owner gives up its slot and fails the generation, a follower detaches
+     * from it
+     * 
+     * @param attachment The attachment of the request to the generation
+     * @param ticket     The admission ticket of the owner, or null
+     * @param reason     Why the generation is failed
+     */
+    private static void releaseAttachment(GenerationRegistry.Attachment attachment,
+            AdmissionController.Ticket ticket, Exception reason) {
+        Generation generation = attachment.getGeneration();
+        if (attachment.isOwner()) {
+            ticket.release();
+            generation.fail(reason);
+            GenerationRegistry.getInstance().finish(generation);
+        } else {
+            generation.detachReader(attachment.getReaderToken());
+        }
+    }
+
+    /**
+     * Keeps the result of a finished generation: the raw text is stored so the
+     * page can refer to it, the turn is added to the conversation once, and the
+     * owner puts the result in the response cache when it is enabled
+     * 
+     * @param prepared   The prepared message
+     * @param generation The finished generation
+     * @param owner      Whether the request ran the generation
+     * @return The ID the text was stored under, or null if the generation
+     *         failed
+     */
+    private String storeTurn(PreparedMessage prepared, Generation generation, boolean owner) {
+        OllamaResponse result = generation.getResult();
+        if (result == null) {
+            return null;
+        }
+        // Keep the raw text so the page can refer to it, for example to download its code
+        String responseId = ResponseStore.getInstance().put(prepared.conversationKey, result.getText(),
+                generation.getArchiveKey());
+
+        // Requests of one conversation attached to the same generation add the turn once
+        if (generation.claimRecording(prepared.conversationKey)) {
+            recordTurn(prepared.conversationKey, prepared.conversation, prepared.ollamaRequest, result,
+                    prepared.tokenBudget);
+        }
+        if (prepared.cacheEnabled && owner) {
+            ResponseCache.getInstance().put(prepared.requestHash, result,
+                    getIntProperty("responseCacheTtl", ResponseCache.DEFAULT_TTL_MINUTES));
+        }
+        return responseId;
+    }
+
+    private static String getErrorMessage(Exception error) {
+        return error != null && error.getMessage() != null ? error.getMessage() : "Error connecting to Ollama API";
+    }
+
+    /**
+     * Runs the part of a request that waits on a generation. It runs on the
+     * generation executor when the container can complete the request
+     * asynchronously, and on the container thread otherwise.
+     * 
+     * @param request   The request
+     * @param response  The response
+     * @param timeout   Milliseconds after which the container may end the
+     *                  asynchronous request
+     * @param admission The wait for the slot of the request that owns the
+     *                  generation, or null. When the request is completed
+     *                  asynchronously the reply only takes a generation
+     *                  thread once admitted.
+     * @param reply     The part of the request to run
+     * @return false if every generation thread was busy, in which case the
+     *         request was answered with 503 and the caller must let go of what
+     *         it holds
+     * @throws Exception If the reply fails on the container thread
+     */
+    private boolean runReply(HttpServletRequest request, HttpServletResponse response, long timeout,
+            AdmissionWait admission, ReplyTask reply) throws Exception {
+        AsyncRequest async = AsyncRequest.start(request, timeout);
+        if (async == null) {
+            reply.run();
+            return true;
+        }
+        Runnable task = () -> {
+            try {
+                reply.run();
+            } catch (Exception e) {
+                try {
+                    sendErrorResponse(response, e);
+                } catch (IOException sendError) {
+                    LogUtil.debug(getClassName(), "Client disconnected before the error was sent");
+                }
+            } finally {
+                async.complete();
+            }
+        };
+        try {
+            // Admitted later, by when the generation has been failed if no thread is free
+            Runnable onRejected = () -> {
+                try {
+                    sendBusyResponse(response);
+                } catch (IOException e) {
+                    LogUtil.debug(getClassName(), "Client disconnected before the error was sent");
+                } finally {
+                    async.complete();
+                }
+            };
+            if (admission == null || !admission.defer(task, onRejected)) {
+                GenerationExecutor.getInstance().execute(task);
+            }
+            return true;
+        } catch (RejectedExecutionException e) {
+            LogUtil.warn(getClassName(), "Rejecting request, every generation thread is busy");
+            sendBusyResponse(response);
+            async.complete();
+            return false;
+        }
+    }
+
+    /**
+     * Tells the client every generation thread is busy: with 503 when nothing
+     * was sent yet, with an error event once its event stream started
+     * 
+     * @param response The response
+     * @throws IOException If the response cannot be written
+     */
+    private void sendBusyResponse(HttpServletResponse response) throws IOException {
+        if (response.isCommitted()) {
+            sendEvent(response, "error", new JSONObject().put("error", SERVER_BUSY));
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", String.valueOf(GenerationExecutor.RETRY_AFTER_SECONDS));
+        sendJsonResponse(response, "error", SERVER_BUSY);
+    }
+
+    /**
+     * Waits until a job has output beyond an offset or finishes
+     * 
+     * @param job    The job
+     * @param offset The length of the output the client already has
+     * @param wait   The longest time to wait, in milliseconds
+     * @throws IOException If the wait is interrupted
+     */
+    private static void awaitJob(JobStore.Job job, int offset, long wait) throws IOException {
+        long deadline = System.currentTimeMillis() + wait;
+        try {
+            Generation generation = job.getGeneration();
+            if (generation != null && generation.awaitText(offset, wait) != null) {
+                return;
+            }
+            // The generation finished; the job follows once its result is stored
+            job.awaitFinished(Math.max(0, deadline - System.currentTimeMillis()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the job", e);
+        }
+    }
+
+    /**
+     * Sends the status of a job with the output the client does not have yet:
+     * the text past its offset, and while the job runs the code files past its
+     * file offset. A queued job reports its place in the queue, a done one the
+     * ID its response was stored under and a failed one its error.
+     * 
+     * @param response   The response
+     * @param job        The job
+     * @param offset     The length of the text the client already has
+     * @param fileOffset The number of code files the client already has
+     * @throws IOException If the response cannot be written
+     */
+    private void sendJobResponse(HttpServletResponse response, JobStore.Job job, int offset, int fileOffset)
+            throws IOException {
+        // The generation is read before the status, as a job drops it when it finishes
+        Generation generation = job.getGeneration();
+        String status = job.getStatus();
+
+        JSONObject jsonResponse = new JSONObject();
+        jsonResponse.put("jobId", job.getId());
+        jsonResponse.put("status", status);
+        String text = null;
+        if ("done".equals(status)) {
+            String jobText = job.getText();
+            text = jobText.substring(Math.min(offset, jobText.length()));
+        } else if (generation != null) {
+            // Only the part the client does not have is copied
+            text = generation.getText(offset);
+        } else if (!"failed".equals(status)) {
+            text = "";
+        }
+        if (text != null) {
+            jsonResponse.put("text", text);
+            jsonResponse.put("offset", text.isEmpty() ? offset : offset + text.length());
+        }
+        if ("queued".equals(status)) {
+            jsonResponse.put("position", job.getPosition());
+            jsonResponse.put("estimatedWait", job.getEstimatedWait());
+        } else if ("running".equals(status) && generation != null) {
+            JSONArray files = new JSONArray();
+            int index = fileOffset;
+            if (generation.getFileCount() > fileOffset) {
+                for (CodeBlockTokenizer.CodeFile file : generation.getFiles(fileOffset)) {
+                    files.put(toFileEvent(index++, file));
+                }
+            }
+            jsonResponse.put("files", files);
+            jsonResponse.put("fileOffset", index);
+        } else if ("done".equals(status)) {
+            // The files of a done job are listed with listFiles
+            jsonResponse.put("responseId", job.getResponseId());
+        } else if ("failed".equals(status)) {
+            jsonResponse.put("error", job.getError());
+        }
+
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache, no-store, must-revalidate");
+        response.getWriter().write(jsonResponse.toString());
+    }
+
     /**
-     * Utility method to send a JSON response
+     * Records a completed turn: the exchange is added to the conversation
+     * history, and for /api/generate the returned token context is cached for
+     * the next turn
+     * 
+     * @param conversationKey The conversation key
+     * @param conversation    The conversation
+     * @param ollamaRequest   The request that was sent
+     * @param result          The response that came back
+     * @param tokenBudget     The context token budget
+     */
+    private void recordTurn(String conversationKey, ConversationStore.Conversation conversation,
+            OllamaRequest ollamaRequest, OllamaResponse result, int tokenBudget) {
+        conversation.addExchange(ollamaRequest.getMessage(), result.getText(), tokenBudget);
+        if (!ollamaRequest.isChatEndpoint()) {
+            ContextCache.getInstance().put(conversationKey, ollamaRequest.getModel(), result.getContext());
+        }
+    }
+
+    /**
+     * Builds the key of the conversation a request belongs to: the current
+     * user, the HTTP session and the conversation ID generated by the page
+     * 
+     * @param request The HttpServletRequest object
+     * @return The conversation key
+     */
+    private String getConversationKey(HttpServletRequest request) {
+        return ConversationStore.buildKey(WorkflowUtil.getCurrentUsername(), request.getSession(true).getId(),
+                request.getParameter("conversationId"));
+    }
+
+    /**
+     * Sets the headers of a server-sent event stream and commits them so the
+     * browser starts reading straight away
      * 
      * @param response The HttpServletResponse object
-     * @param key      The key for the JSON object
-     * @param value    The value for the JSON object
-     * @throws IOException If there's an error writing to the response
+     * @throws IOException If the headers cannot be sent
      */
-    private void sendJsonResponse(HttpServletResponse response, String key, String value) throws IOException {
-        response.setContentType("application/json;charset=UTF-8");
+    private void startEventStream(HttpServletResponse response) throws IOException {
+        response.setContentType("text/event-stream;charset=UTF-8");
         response.setHeader("Cache-Control", "no-cache, no-store, must-revalidate");
         response.setHeader("Pragma", "no-cache");
         response.setDateHeader("Expires", 0);
+        // Stop reverse proxies from buffering the event stream
+        response.setHeader("X-Accel-Buffering", "no");
+        response.flushBuffer();
+    }
 
-        try {
+    /**
+     * Sends a response served from the response cache, as a single token event
+     * when streaming or as the usual JSON response otherwise
+     * 
+     * @param response The HttpServletResponse object
+     * @param cached     The cached response
+     * @param responseId The ID the response was kept under, see
+     *                   {@link ResponseStore}
+     * @param stream     Whether the page asked for streaming
+     * @throws IOException If the response cannot be written
+     */
+    private void sendCachedResponse(HttpServletResponse response, OllamaResponse cached, String responseId,
+            boolean stream) throws IOException {
+        LogUtil.info(getClassName(), "Serving response from cache: " + cached.getText().length() + " characters");
+
+        if (stream) {
+            startEventStream(response);
+            sendEvent(response, "token", new JSONObject().put("token", cached.getText()));
+            sendEvent(response, "done", new JSONObject().put("cached", true).put("responseId", responseId));
+        } else {
+            response.setContentType("application/json;charset=UTF-8");
             JSONObject jsonResponse = new JSONObject();
-            jsonResponse.put(key, value);
+            jsonResponse.put("response", cached.getText());
+            jsonResponse.put("cached", true);
+            jsonResponse.put("responseId", responseId);
             response.getWriter().write(jsonResponse.toString());
-        } catch (JSONException e) {
-            // Fallback if JSON creation fails
-            response.getWriter().write("{\"" + key + "\":\"" +
-                    StringUtil.escapeString(value, StringUtil.TYPE_JSON, null) + "\"}");
+        }
+    }
+
+    /**
+     * Writes a single server-sent event and flushes it to the client
+     * 
+     * @param response The HttpServletResponse object
+     * @param event    The event name
+     * @param data     The event payload
+     * @throws IOException If the client can no longer be written to
+     */
+    private void sendEvent(HttpServletResponse response, String event, JSONObject data) throws IOException {
+        writeToStream(response, "event: " + event + "\ndata: " + data.toString() + "\n\n");
+    }
+
+    /**
+     * Writes a comment to an event stream, which the page ignores, to find out
+     * whether the client is still connected
+     * 
+     * @param response The HttpServletResponse object
+     * @throws IOException If the client can no longer be written to
+     */
+    private void sendHeartbeat(HttpServletResponse response) throws IOException {
+        writeToStream(response, ": heartbeat\n\n");
+    }
+
+    private static void writeToStream(HttpServletResponse response, String frame) throws IOException {
+        ServletOutputStream sos = response.getOutputStream();
+        sos.write(frame.getBytes(StandardCharsets.UTF_8));
+        sos.flush();
+    }
+
+    /**
+     * Reads a positive integer property, falling back to the default when it is
+     * missing or invalid
+     * 
+     * @param name         The property name
+     * @param defaultValue The value to use when the property is not set
+     * @return The property value
+     */
+    private int getIntProperty(String name, int defaultValue) {
+        String value = getPropertyString(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            return parsed > 0 ? parsed : defaultValue;
+        } catch (NumberFormatException e) {
+            LogUtil.warn(getClassName(), "Invalid " + name + " value, using default " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a non-negative integer request parameter
+     * 
+     * @param request The request
+     * @param name    The parameter name
+     * @return The parameter value, or 0 if it is missing or invalid
+     */
+    private static int getIntParameter(HttpServletRequest request, String name) {
+        try {
+            return Math.max(0, Integer.parseInt(request.getParameter(name)));
+        } catch (NumberFormatException e) {
+            return 0;
         }
     }
 
@@ -74,586 +1272,23 @@ public class LlmChatUserviewMenu extends UserviewMenu implements PluginWebSuppor
 
     @Override
     public String getRenderPage() {
-        // Implement direct HTML rendering as a fallback
-        StringBuilder html = new StringBuilder();
-        html.append("<div class=\"llm-chat-container\" style=\"max-width: 1400px; margin: 0 auto; padding: 20px;\">\n");
-        html.append("    <h2><i class=\"fas fa-comments\"></i> LLM Chat</h2>\n");
-        html.append(
-                "    <div id=\"chatMessages\" style=\"height: 500px; overflow-y: auto; border: 1px solid #ddd; border-radius: 5px; padding: 10px; margin-bottom: 15px; background-color: #f9f9f9;\">\n");
-        html.append(
-                "        <div class=\"message bot-message\"\n");
-        html.append(
-                "            style=\"background-color: #ffffff; margin-right: auto; margin-left: 10px; border: 1px solid #e0e0e0;\">\n");
-        html.append("            Hello! How can I assist you today?\n");
-        html.append("        </div>\n");
-        html.append("    </div>\n");
-        html.append("    <div style=\"display: flex; margin-top: 10px;\">\n");
-        html.append(
-                "        <textarea id=\"messageInput\" placeholder=\"Type your message here...\" style=\"flex-grow: 1; padding: 10px; border: 1px solid #ddd; border-radius: 5px; resize: none; height: 60px;\"></textarea>\n");
-        html.append(
-                "        <button id=\"sendButton\" style=\"margin-left: 10px; padding: 10px 20px; background-color: #4CAF50; color: white; border: none; border-radius: 5px; cursor: pointer;\"><i class=\"fas fa-paper-plane\"></i> Send</button>\n");
-        html.append("    </div>\n");
-        html.append("    <style>\n");
-        html.append("        .loading-animation {\n");
-        html.append("            display: inline-block;\n");
-        html.append("            width: 50px;\n");
-        html.append("            height: 10px;\n");
-        html.append("            position: relative;\n");
-        html.append("            background: linear-gradient(to right, #ccc 30%, #eee 50%, #ccc 70%);\n");
-        html.append("            background-size: 500% 100%;\n");
-        html.append("            animation: loading 1.5s ease-in-out infinite;\n");
-        html.append("        }\n");
-        html.append(
-                "        @keyframes loading { 0% { background-position: 100% 50%; } 100% { background-position: 0% 50%; } }\n");
-        html.append("        \n");
-        html.append("        /* Markdown formatting styles */\n");
-        html.append("        .bot-message pre {\n");
-        html.append("            background-color: #f5f5f5;\n");
-        html.append("            padding: 10px;\n");
-        html.append("            border-radius: 4px;\n");
-        html.append("            overflow-x: auto;\n");
-        html.append("            margin: 10px 0;\n");
-        html.append("            font-family: monospace;\n");
-        html.append("            font-size: 14px;\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        .bot-message code {\n");
-        html.append("            background-color: #f5f5f5;\n");
-        html.append("            padding: 2px 4px;\n");
-        html.append("            border-radius: 3px;\n");
-        html.append("            font-family: monospace;\n");
-        html.append("            font-size: 14px;\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        .bot-message blockquote {\n");
-        html.append("            border-left: 4px solid #ddd;\n");
-        html.append("            padding-left: 10px;\n");
-        html.append("            margin-left: 0;\n");
-        html.append("            color: #666;\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        .bot-message ul, .bot-message ol {\n");
-        html.append("            padding-left: 20px;\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        .bot-message table {\n");
-        html.append("            border-collapse: collapse;\n");
-        html.append("            width: 100%;\n");
-        html.append("            margin: 10px 0;\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        .bot-message th, .bot-message td {\n");
-        html.append("            border: 1px solid #ddd;\n");
-        html.append("            padding: 8px;\n");
-        html.append("            text-align: left;\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        .bot-message th {\n");
-        html.append("            background-color: #f2f2f2;\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        /* Download button styles */\n");
-        html.append("        .response-download-btn {\n");
-        html.append("            display: inline-block;\n");
-        html.append("            padding: 5px 10px;\n");
-        html.append("            background-color: #007bff;\n");
-        html.append("            color: white;\n");
-        html.append("            border: none;\n");
-        html.append("            border-radius: 4px;\n");
-        html.append("            cursor: pointer;\n");
-        html.append("            font-size: 12px;\n");
-        html.append("            float: right;\n");
-        html.append("            margin-top: 15px; /* Add space above the button */\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        /* Remove absolute positioning from bot-message */\n");
-        html.append("        .bot-message {\n");
-        html.append("            position: static;\n");
-        html.append("            padding-bottom: 15px; /* Normal padding */\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        /* Add a clearfix to contain floated elements */\n");
-        html.append("        .bot-message::after {\n");
-        html.append("            content: \"\";\n");
-        html.append("            display: table;\n");
-        html.append("            clear: both;\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        .response-download-btn:hover {\n");
-        html.append("            background-color: #0056b3;\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        .response-download-btn:disabled {\n");
-        html.append("            background-color: #cccccc;\n");
-        html.append("            cursor: not-allowed;\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        .response-actions {\n");
-        html.append("            clear: both;\n");
-        html.append("            padding-top: 5px;\n");
-        html.append("            margin-top: 5px;\n");
-        html.append("            border-top: 1px solid #eee;\n");
-        html.append("        }\n");
-        html.append("    </style>\n");
-        html.append("    <div id=\"errorMessage\" style=\"color: red; margin-top: 10px; display: none;\"></div>\n");
-        html.append("</div>\n");
-
-        // Add JavaScript for chat functionality
-        html.append("<script src=\"https://cdn.jsdelivr.net/npm/marked/marked.min.js\"></script>\n");
-        html.append("<script>\n");
-        html.append("$(document).ready(function() {\n");
-        html.append("    const chatMessages = $('#chatMessages');\n");
-        html.append("    const messageInput = $('#messageInput');\n");
-        html.append("    const sendButton = $('#sendButton');\n");
-        html.append("    const errorMessage = $('#errorMessage');\n");
-        html.append("    \n");
-        html.append("    // Function to format LLM responses with markdown and handle special characters\n");
-        html.append("    function formatLLMResponse(text) {\n");
-        html.append("        // First, temporarily replace <br> tags with a placeholder\n");
-        html.append("        let processedText = text.replace(/<br\\s*\\/?>/gi, '{{BR_PLACEHOLDER}}');\n");
-        html.append("        \n");
-        html.append("        // Escape any HTML to prevent XSS\n");
-        html.append("        processedText = processedText\n");
-        html.append("            .replace(/&/g, '&amp;')\n");
-        html.append("            .replace(/</g, '&lt;')\n");
-        html.append("            .replace(/>/g, '&gt;');\n");
-        html.append("        \n");
-        html.append("        // Restore <br> tags from placeholders\n");
-        html.append("        processedText = processedText.replace(/{{BR_PLACEHOLDER}}/g, '<br>');\n");
-        html.append("        \n");
-        html.append("        try {\n");
-        html.append("            // Use marked.js to convert markdown to HTML\n");
-        html.append("            const formattedText = marked.parse(processedText);\n");
-        html.append("            return formattedText;\n");
-        html.append("        } catch (e) {\n");
-        html.append("            console.error('Error formatting response:', e);\n");
-        html.append("            return '<p>' + processedText + '</p>';\n");
-        html.append("        }\n");
-        html.append("    }\n");
-        html.append("    \n");
-        html.append("    // Function to add a message to the chat\n");
-        html.append("    function addMessage(message, isUser) {\n");
-        html.append(
-                "        const messageDiv = $('<div>').addClass('message').addClass(isUser ? 'user-message' : 'bot-message').css({\n");
-        html.append("            'margin-bottom': '15px',\n");
-        html.append("            'padding': '10px',\n");
-        html.append("            'border-radius': '5px',\n");
-        html.append("            'max-width': '80%',\n");
-        html.append("            'word-wrap': 'break-word'\n");
-        html.append("        });\n");
-        html.append("        \n");
-        html.append("        if (isUser) {\n");
-        html.append("            messageDiv.css({\n");
-        html.append("                'background-color': '#dcf8c6',\n");
-        html.append("                'margin-left': 'auto',\n");
-        html.append("                'margin-right': '10px'\n");
-        html.append("            });\n");
-        html.append("        } else {\n");
-        html.append("            messageDiv.css({\n");
-        html.append("                'background-color': '#ffffff',\n");
-        html.append("                'margin-right': 'auto',\n");
-        html.append("                'margin-left': '10px',\n");
-        html.append("                'border': '1px solid #e0e0e0',\n");
-        html.append("                'padding-bottom': '15px' /* Add extra padding at the bottom */\n");
-        html.append("            });\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        if (!isUser) {\n");
-        html.append("            // Format LLM responses with markdown\n");
-        html.append("            messageDiv.html(formatLLMResponse(message));\n");
-        html.append("            \n");
-        html.append("            // Add download button if the message contains code\n");
-        html.append(
-                "            if (message.includes('```') || message.includes('<pre>') || message.includes('<code>')) {\n");
-        html.append("                const divider = $('<div>').addClass('download-divider');\n");
-        html.append("                messageDiv.append(divider);\n");
-        html.append("                \n");
-        html.append("                const downloadBtn = $('<button>').addClass('response-download-btn')\n");
-        html.append("                    .html('<i class=\"fas fa-download\"></i> Download Code')\n");
-        html.append("                    .attr('title', 'Download code from this response');\n");
-        html.append("                messageDiv.append(downloadBtn);\n");
-        html.append("                \n");
-        html.append("                // Add click handler for the download button\n");
-        html.append("                downloadBtn.on('click', function() {\n");
-        html.append("                    // Disable the button during download\n");
-        html.append("                    downloadBtn.prop('disabled', true);\n");
-        html.append(
-                "                    downloadBtn.html('<i class=\"fas fa-spinner fa-spin\"></i> Preparing...');\n");
-        html.append("                    \n");
-        html.append("                    try {\n");
-        html.append("                        // Get only this response's content\n");
-        html.append("                        const responseContent = messageDiv.html();\n");
-        html.append("                        \n");
-        html.append("                        // Create a form to submit the download request\n");
-        html.append("                        const form = $('<form>');\n");
-        html.append("                        form.attr('method', 'post');\n");
-        html.append(
-                "                        form.attr('action', '/jw/web/json/plugin/org.joget.marketplace.LlmChatUserviewMenu/service');\n");
-        html.append("                        form.attr('target', '_blank');\n");
-        html.append("                        \n");
-        html.append("                        // Add the action parameter\n");
-        html.append("                        const actionInput = $('<input>');\n");
-        html.append("                        actionInput.attr('type', 'hidden');\n");
-        html.append("                        actionInput.attr('name', 'action');\n");
-        html.append("                        actionInput.attr('value', 'downloadCode');\n");
-        html.append("                        form.append(actionInput);\n");
-        html.append("                        \n");
-        html.append("                        // Add the chat content parameter (only this response)\n");
-        html.append("                        const chatContentInput = $('<input>');\n");
-        html.append("                        chatContentInput.attr('type', 'hidden');\n");
-        html.append("                        chatContentInput.attr('name', 'chatContent');\n");
-        html.append("                        chatContentInput.attr('value', responseContent);\n");
-        html.append("                        form.append(chatContentInput);\n");
-        html.append("                        \n");
-        html.append("                        // Add the app ID and version parameters\n");
-        html.append("                        const appIdInput = $('<input>');\n");
-        html.append("                        appIdInput.attr('type', 'hidden');\n");
-        html.append("                        appIdInput.attr('name', 'appId');\n");
-        html.append("                        appIdInput.attr('value', '${appId}');\n");
-        html.append("                        form.append(appIdInput);\n");
-        html.append("                        \n");
-        html.append("                        const appVersionInput = $('<input>');\n");
-        html.append("                        appVersionInput.attr('type', 'hidden');\n");
-        html.append("                        appVersionInput.attr('name', 'appVersion');\n");
-        html.append("                        appVersionInput.attr('value', '${appVersion}');\n");
-        html.append("                        form.append(appVersionInput);\n");
-        html.append("                        \n");
-        html.append("                        // Append the form to the body and submit it\n");
-        html.append("                        $('body').append(form);\n");
-        html.append("                        form.submit();\n");
-        html.append("                        form.remove();\n");
-        html.append("                        \n");
-        html.append("                        // Re-enable the button after a delay\n");
-        html.append("                        setTimeout(function() {\n");
-        html.append("                            downloadBtn.prop('disabled', false);\n");
-        html.append(
-                "                            downloadBtn.html('<i class=\"fas fa-download\"></i> Download Code');\n");
-        html.append("                        }, 2000);\n");
-        html.append("                    } catch (error) {\n");
-        html.append("                        console.error('Error downloading code:', error);\n");
-        html.append("                        alert('Error downloading code: ' + error.message);\n");
-        html.append("                        \n");
-        html.append("                        // Re-enable the button\n");
-        html.append("                        downloadBtn.prop('disabled', false);\n");
-        html.append(
-                "                        downloadBtn.html('<i class=\"fas fa-download\"></i> Download Code');\n");
-        html.append("                    }\n");
-        html.append("                });\n");
-        html.append("                // Append button directly to the message div for bottom-right positioning\n");
-        html.append("                messageDiv.append(downloadBtn);\n");
-        html.append("            }\n");
-        html.append("        } else {\n");
-        html.append("            // User messages are displayed as plain text\n");
-        html.append("            messageDiv.text(message);\n");
-        html.append("        }\n");
-        html.append("        chatMessages.append(messageDiv);\n");
-        html.append("        chatMessages.scrollTop(chatMessages[0].scrollHeight);\n");
-        html.append("    }\n");
-        html.append("    \n");
-        html.append("    // Function to send a message to the LLM API\n");
-        html.append("    function sendMessage() {\n");
-        html.append("        const message = messageInput.val().trim();\n");
-        html.append("        if (!message) return;\n");
-        html.append("        \n");
-        html.append("        // Add user message to chat\n");
-        html.append("        addMessage(message, true);\n");
-        html.append("        \n");
-        html.append("        // Clear input\n");
-        html.append("        messageInput.val('');\n");
-        html.append("        \n");
-        html.append("        // Disable send button and hide error message\n");
-        html.append("        sendButton.prop('disabled', true);\n");
-        html.append("        errorMessage.hide();\n");
-        html.append("        \n");
-        html.append("        // Create a message div for the response with loading animation\n");
-        html.append("        const responseDiv = $('<div>').addClass('message').addClass('bot-message').css({\n");
-        html.append("            'background-color': '#ffffff',\n");
-        html.append("            'margin-right': 'auto',\n");
-        html.append("            'margin-left': '10px',\n");
-        html.append("            'border': '1px solid #e0e0e0',\n");
-        html.append("            'margin-bottom': '15px',\n");
-        html.append("            'padding': '10px',\n");
-        html.append("            'padding-bottom': '15px', /* Add extra padding at the bottom */\n");
-        html.append("            'border-radius': '5px',\n");
-        html.append("            'max-width': '80%',\n");
-        html.append("            'word-wrap': 'break-word'\n");
-        html.append("        });\n");
-        html.append("        \n");
-        html.append("        // Add loading animation to the response div\n");
-        html.append("        const loadingAnimation = $('<div>').addClass('loading-animation');\n");
-        html.append("        responseDiv.append(loadingAnimation);\n");
-        html.append("        chatMessages.append(responseDiv);\n");
-        html.append("        chatMessages.scrollTop(chatMessages[0].scrollHeight);\n");
-        html.append("        \n");
-        html.append("        // Send message to server\n");
-        html.append("        $.ajax({\n");
-        html.append("            url: '/jw/web/json/plugin/org.joget.marketplace.LlmChatUserviewMenu/service',\n");
-        html.append("            type: 'POST',\n");
-        html.append("            data: {\n");
-        html.append("                action: 'sendMessage',\n");
-        html.append("                message: message,\n");
-        html.append("                appId: '${appId}',\n");
-        html.append("                appVersion: '${appVersion}'\n");
-        html.append("            },\n");
-        html.append("            dataType: 'text',\n");
-        html.append("            success: function(data) {\n");
-        html.append("                // Add bot response to chat\n");
-        html.append("                console.log('Raw success response:', data);\n");
-        html.append("                try {\n");
-        html.append("                    // Try to parse as JSON\n");
-        html.append("                    const jsonData = JSON.parse(data);\n");
-        html.append("                    // Replace loading animation with formatted response text\n");
-        html.append("                    responseDiv.empty().html(formatLLMResponse(jsonData.response));\n");
-        html.append("                    \n");
-        html.append("                    // Add download button if the response contains code\n");
-        html.append("                    const responseText = jsonData.response || '';\n");
-        html.append(
-                "                    if (responseText.includes('```') || responseText.includes('<pre>') || responseText.includes('<code>')) {\n");
-        html.append("                        const actionsDiv = $('<div>').addClass('response-actions');\n");
-        html.append("                        const downloadBtn = $('<button>').addClass('response-download-btn')\n");
-        html.append("                            .html('<i class=\"fas fa-download\"></i> Download Code')\n");
-        html.append("                            .attr('title', 'Download code from this response');\n");
-        html.append("                        \n");
-        html.append("                        // Add click handler for the download button\n");
-        html.append("                        downloadBtn.on('click', function() {\n");
-        html.append("                            // Disable the button during download\n");
-        html.append("                            downloadBtn.prop('disabled', true);\n");
-        html.append(
-                "                            downloadBtn.html('<i class=\"fas fa-spinner fa-spin\"></i> Preparing...');\n");
-        html.append("                            \n");
-        html.append("                            try {\n");
-        html.append("                                // Get only this response's content\n");
-        html.append("                                const responseContent = responseDiv.html();\n");
-        html.append("                                \n");
-        html.append("                                // Create a form to submit the download request\n");
-        html.append("                                const form = $('<form>');\n");
-        html.append("                                form.attr('method', 'post');\n");
-        html.append(
-                "                                form.attr('action', '/jw/web/json/plugin/org.joget.marketplace.LlmChatUserviewMenu/service');\n");
-        html.append("                                form.attr('target', '_blank');\n");
-        html.append("                                \n");
-        html.append("                                // Add the action parameter\n");
-        html.append("                                const actionInput = $('<input>');\n");
-        html.append("                                actionInput.attr('type', 'hidden');\n");
-        html.append("                                actionInput.attr('name', 'action');\n");
-        html.append("                                actionInput.attr('value', 'downloadCode');\n");
-        html.append("                                form.append(actionInput);\n");
-        html.append("                                \n");
-        html.append("                                // Add the chat content parameter (only this response)\n");
-        html.append("                                const chatContentInput = $('<input>');\n");
-        html.append("                                chatContentInput.attr('type', 'hidden');\n");
-        html.append("                                chatContentInput.attr('name', 'chatContent');\n");
-        html.append("                                chatContentInput.attr('value', responseContent);\n");
-        html.append("                                form.append(chatContentInput);\n");
-        html.append("                                \n");
-        html.append("                                // Add the app ID and version parameters\n");
-        html.append("                                const appIdInput = $('<input>');\n");
-        html.append("                                appIdInput.attr('type', 'hidden');\n");
-        html.append("                                appIdInput.attr('name', 'appId');\n");
-        html.append("                                appIdInput.attr('value', '${appId}');\n");
-        html.append("                                form.append(appIdInput);\n");
-        html.append("                                \n");
-        html.append("                                const appVersionInput = $('<input>');\n");
-        html.append("                                appVersionInput.attr('type', 'hidden');\n");
-        html.append("                                appVersionInput.attr('name', 'appVersion');\n");
-        html.append("                                appVersionInput.attr('value', '${appVersion}');\n");
-        html.append("                                form.append(appVersionInput);\n");
-        html.append("                                \n");
-        html.append("                                // Append the form to the body and submit it\n");
-        html.append("                                $('body').append(form);\n");
-        html.append("                                form.submit();\n");
-        html.append("                                form.remove();\n");
-        html.append("                                \n");
-        html.append("                                // Re-enable the button after a delay\n");
-        html.append("                                setTimeout(function() {\n");
-        html.append("                                    downloadBtn.prop('disabled', false);\n");
-        html.append(
-                "                                    downloadBtn.html('<i class=\"fas fa-download\"></i> Download Code');\n");
-        html.append("                                }, 2000);\n");
-        html.append("                            } catch (error) {\n");
-        html.append("                                console.error('Error downloading code:', error);\n");
-        html.append("                                alert('Error downloading code: ' + error.message);\n");
-        html.append("                                \n");
-        html.append("                                // Re-enable the button\n");
-        html.append("                                downloadBtn.prop('disabled', false);\n");
-        html.append(
-                "                                downloadBtn.html('<i class=\"fas fa-download\"></i> Download Code');\n");
-        html.append("                            }\n");
-        html.append("                        });\n");
-        html.append("                        actionsDiv.append(downloadBtn);\n");
-        html.append("                        responseDiv.append(actionsDiv);\n");
-        html.append("                    }\n");
-        html.append("                } catch (e) {\n");
-        html.append("                    console.error('Error parsing response:', e);\n");
-        html.append("                    // Just use the raw data but still try to format it\n");
-        html.append("                    responseDiv.empty().html(formatLLMResponse(data));\n");
-        html.append("                    \n");
-        html.append("                    // Check for code in raw data\n");
-        html.append(
-                "                    if (data.includes('```') || data.includes('<pre>') || data.includes('<code>')) {\n");
-        html.append("                        const actionsDiv = $('<div>').addClass('response-actions');\n");
-        html.append("                        const downloadBtn = $('<button>').addClass('response-download-btn')\n");
-        html.append("                            .html('<i class=\"fas fa-download\"></i> Download Code')\n");
-        html.append("                            .attr('title', 'Download code from this response');\n");
-        html.append("                        \n");
-        html.append("                        // Add click handler for the download button (same as above)\n");
-        html.append("                        downloadBtn.on('click', function() {\n");
-        html.append("                            // Disable the button during download\n");
-        html.append("                            downloadBtn.prop('disabled', true);\n");
-        html.append(
-                "                            downloadBtn.html('<i class=\"fas fa-spinner fa-spin\"></i> Preparing...');\n");
-        html.append("                            \n");
-        html.append("                            try {\n");
-        html.append("                                // Get only this response's content\n");
-        html.append("                                const responseContent = responseDiv.html();\n");
-        html.append("                                \n");
-        html.append("                                // Create a form to submit the download request\n");
-        html.append("                                const form = $('<form>');\n");
-        html.append("                                form.attr('method', 'post');\n");
-        html.append(
-                "                                form.attr('action', '/jw/web/json/plugin/org.joget.marketplace.LlmChatUserviewMenu/service');\n");
-        html.append("                                form.attr('target', '_blank');\n");
-        html.append("                                \n");
-        html.append("                                // Add the action parameter\n");
-        html.append("                                const actionInput = $('<input>');\n");
-        html.append("                                actionInput.attr('type', 'hidden');\n");
-        html.append("                                actionInput.attr('name', 'action');\n");
-        html.append("                                actionInput.attr('value', 'downloadCode');\n");
-        html.append("                                form.append(actionInput);\n");
-        html.append("                                \n");
-        html.append("                                // Add the chat content parameter (only this response)\n");
-        html.append("                                const chatContentInput = $('<input>');\n");
-        html.append("                                chatContentInput.attr('type', 'hidden');\n");
-        html.append("                                chatContentInput.attr('name', 'chatContent');\n");
-        html.append("                                chatContentInput.attr('value', responseContent);\n");
-        html.append("                                form.append(chatContentInput);\n");
-        html.append("                                \n");
-        html.append("                                // Add the app ID and version parameters\n");
-        html.append("                                const appIdInput = $('<input>');\n");
-        html.append("                                appIdInput.attr('type', 'hidden');\n");
-        html.append("                                appIdInput.attr('name', 'appId');\n");
-        html.append("                                appIdInput.attr('value', '${appId}');\n");
-        html.append("                                form.append(appIdInput);\n");
-        html.append("                                \n");
-        html.append("                                const appVersionInput = $('<input>');\n");
-        html.append("                                appVersionInput.attr('type', 'hidden');\n");
-        html.append("                                appVersionInput.attr('name', 'appVersion');\n");
-        html.append("                                appVersionInput.attr('value', '${appVersion}');\n");
-        html.append("                                form.append(appVersionInput);\n");
-        html.append("                                \n");
-        html.append("                                // Append the form to the body and submit it\n");
-        html.append("                                $('body').append(form);\n");
-        html.append("                                form.submit();\n");
-        html.append("                                form.remove();\n");
-        html.append("                                \n");
-        html.append("                                // Re-enable the button after a delay\n");
-        html.append("                                setTimeout(function() {\n");
-        html.append("                                    downloadBtn.prop('disabled', false);\n");
-        html.append(
-                "                                    downloadBtn.html('<i class=\"fas fa-download\"></i> Download Code');\n");
-        html.append("                                }, 2000);\n");
-        html.append("                            } catch (error) {\n");
-        html.append("                                console.error('Error downloading code:', error);\n");
-        html.append("                                alert('Error downloading code: ' + error.message);\n");
-        html.append("                                \n");
-        html.append("                                // Re-enable the button\n");
-        html.append("                                downloadBtn.prop('disabled', false);\n");
-        html.append(
-                "                                downloadBtn.html('<i class=\"fas fa-download\"></i> Download Code');\n");
-        html.append("                            }\n");
-        html.append("                        });\n");
-        html.append("                        actionsDiv.append(downloadBtn);\n");
-        html.append("                        responseDiv.append(actionsDiv);\n");
-        html.append("                    }\n");
-        html.append("                }\n");
-        html.append("                chatMessages.scrollTop(chatMessages[0].scrollHeight);\n");
-        html.append("            },\n");
-        html.append("            error: function(xhr, status, error) {\n");
-        html.append("                // Show error message\n");
-        html.append("                let errorText = 'Error communicating with the LLM API';\n");
-        html.append("                try {\n");
-        html.append("                    console.log('  or response:', xhr.responseText);\n");
-        html.append("                    console.log('Status code:', xhr.status);\n");
-        html.append("                    console.log('Error:', error);\n");
-        html.append("                    \n");
-        html.append("                    const debugDiv = $('<div>').css({\n");
-        html.append("                        'background-color': '#ffeeee',\n");
-        html.append("                        'border': '1px solid #ff0000',\n");
-        html.append("                        'padding': '10px',\n");
-        html.append("                        'margin-top': '10px',\n");
-        html.append("                        'white-space': 'pre-wrap',\n");
-        html.append("                        'font-family': 'monospace',\n");
-        html.append("                        'font-size': '12px'\n");
-        html.append("                    });\n");
-        html.append("                    debugDiv.text('Raw Response:\\n' + xhr.responseText);\n");
-        html.append("                    errorMessage.after(debugDiv);\n");
-        html.append("                    \n");
-        html.append("                    try {\n");
-        html.append("                        const response = JSON.parse(xhr.responseText);\n");
-        html.append("                        if (response.error) {\n");
-        html.append("                            errorText = response.error;\n");
-        html.append("                        }\n");
-        html.append("                    } catch (e) {\n");
-        html.append("                        console.error('Error parsing error response:', e);\n");
-        html.append("                        if (xhr.responseText && xhr.responseText.length < 200) {\n");
-        html.append("                            errorText = xhr.responseText;\n");
-        html.append("                        }\n");
-        html.append("                    }\n");
-        html.append("                } catch (e) {\n");
-        html.append("                    console.error('Error parsing error response:', e);\n");
-        html.append("                }\n");
-        html.append("                errorMessage.text(errorText).show();\n");
-        html.append("                \n");
-        html.append("                // Replace loading animation with error message\n");
-        html.append(
-                "                responseDiv.empty().text('Error: Could not get response from Ollama. Please try again.');\n");
-        html.append("            },\n");
-        html.append("            complete: function() {\n");
-        html.append("                // Re-enable send button\n");
-        html.append("                sendButton.prop('disabled', false);\n");
-        html.append("            }\n");
-        html.append("        });\n");
-        html.append("    }\n");
-        html.append("    \n");
-        html.append("    // Send message when button is clicked\n");
-        html.append("    sendButton.click(sendMessage);\n");
-        html.append("    \n");
-        html.append("    // Send message when Enter key is pressed (but allow Shift+Enter for new lines)\n");
-        html.append("    messageInput.keydown(function(event) {\n");
-        html.append("        if (event.keyCode === 13 && !event.shiftKey) {\n");
-        html.append("            event.preventDefault();\n");
-        html.append("            sendMessage();\n");
-        html.append("        }\n");
-        html.append("    });\n");
-        html.append("});\n");
-        html.append("</script>\n");
-
-        // Add CSS to adjust chat message width
-        html.append("<style>\n");
-        html.append("    .message {\n");
-        html.append("        margin-bottom: 15px;\n");
-        html.append("        padding: 10px;\n");
-        html.append("        border-radius: 5px;\n");
-        html.append("        max-width: 90%;\n");
-        html.append("        width: fit-content;\n");
-        html.append("        word-wrap: break-word;\n");
-        html.append("    }\n");
-        html.append("    \n");
-        html.append("    .user-message {\n");
-        html.append("        background-color: #dcf8c6;\n");
-        html.append("        margin-left: auto;\n");
-        html.append("        margin-right: 10px;\n");
-        html.append("    }\n");
-        html.append("    \n");
-        html.append("    .bot-message {\n");
-        html.append("        background-color: #ffffff;\n");
-        html.append("        margin-right: auto;\n");
-        html.append("        margin-left: 10px;\n");
-        html.append("        border: 1px solid #e0e0e0;\n");
-        html.append("    }\n");
-        html.append("</style>\n");
-
-        return html.toString();
+        // Only the values of this menu vary, the rest of the page is prepared once per bundle load
+        AppDefinition appDef = AppUtil.getCurrentAppDefinition();
+        String appId = appDef != null ? appDef.getId() : "";
+        String appVersion = appDef != null && appDef.getVersion() != null ? appDef.getVersion().toString() : "";
+        return PageAssets.getInstance().render(getServiceUrl(), appId, appVersion);
+    }
+
+    /**
+     * Gets the URL of the web service of the plugin, under the context path
+     * of the current request
+     * 
+     * @return The URL
+     */
+    private String getServiceUrl() {
+        HttpServletRequest request = WorkflowUtil.getHttpServletRequest();
+        String contextPath = request != null ? request.getContextPath() : "/jw";
+        return contextPath + "/web/json/plugin/" + getClassName() + "/service";
     }
 
     @Override
@@ -714,6 +1349,12 @@ public class LlmChatUserviewMenu extends UserviewMenu implements PluginWebSuppor
             throws ServletException, IOException {
         String action = request.getParameter("action");
 
+        // Assets are asked for on every page view, so they skip the logging and settings below
+        if ("asset".equals(action)) {
+            sendAsset(request, response);
+            return;
+        }
+
         // Log the request parameters for debugging
         LogUtil.info(getClassName(), "webService called with action: " + action);
         LogUtil.info(getClassName(), "Request URL: " + request.getRequestURL()
@@ -732,20 +1373,29 @@ public class LlmChatUserviewMenu extends UserviewMenu implements PluginWebSuppor
         if ("checkConnection".equals(action)) {
             // Check if Ollama is accessible
             response.setContentType("application/json;charset=UTF-8");
-            String apiEndpoint = getPropertyString("apiEndpoint");
-            if (apiEndpoint == null || apiEndpoint.trim().isEmpty()) {
-                apiEndpoint = "http://localhost:11434/api/generate";
-            }
+            OllamaRequest settings = new OllamaRequest(null, getPropertyString("apiEndpoint"),
+                    getPropertyString("model"), null, 0);
+            OllamaApiClient.applyDefaults(settings);
 
             try {
-                // Try to connect to the Ollama API
-                URL url = new URL(apiEndpoint.replace("/generate", "/tags"));
-                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("GET");
-                connection.setConnectTimeout(5000); // 5 seconds timeout
-
-                // Always return a simple JSON response
-                response.getWriter().write("{\"status\":\"ok\"}");
+                // Probe each node unless the background prober has just done so
+                JSONObject nodes = OllamaNodeBalancer.getInstance().checkNodes(settings.getApiEndpoint(),
+                        settings.getModel(), CONNECTION_CHECK_MAX_AGE);
+                int reachable = 0;
+                for (String node : nodes.keySet()) {
+                    if (nodes.getJSONObject(node).getBoolean("reachable")) {
+                        reachable++;
+                    }
+                }
+
+                JSONObject status = new JSONObject();
+                status.put("status", reachable == nodes.length() ? "ok" : reachable > 0 ? "degraded" : "down");
+                status.put("nodes", nodes);
+                if (reachable == 0) {
+                    response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    status.put("error", "Cannot connect to Ollama server");
+                }
+                response.getWriter().write(status.toString());
             } catch (Exception e) {
                 LogUtil.error(getClassName(), e, "Error checking Ollama connection: " + e.getMessage());
                 response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -754,36 +1404,109 @@ public class LlmChatUserviewMenu extends UserviewMenu implements PluginWebSuppor
                 response.getWriter().write("{\"error\":\"Cannot connect to Ollama server\"}");
             }
         } else if ("downloadCode".equals(action)) {
+            SpillableBuffer chatContent = null;
             try {
                 LogUtil.info(getClassName(), "=== DOWNLOAD CODE ACTION STARTED ===");
 
-                // Get chat content from request
-                String chatContent = request.getParameter("chatContent");
+                // Read the raw text of the response the page refers to, or the content it sent along
+                String archiveKey = null;
+                String responseId = request.getParameter("responseId");
+                if (responseId != null && !responseId.isEmpty()) {
+                    String conversationKey = getConversationKey(request);
+                    String text = ResponseStore.getInstance().get(conversationKey, responseId);
+                    archiveKey = ResponseStore.getInstance().getArchiveKey(conversationKey, responseId);
+                    if (text == null) {
+                        LogUtil.info(getClassName(), "Response " + responseId + " is no longer available");
+                        response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                        sendJsonResponse(response, "error",
+                                "This response is no longer available, please send the message again");
+                        return;
+                    }
+                    chatContent = SpillableBuffer.wrap(text);
+                } else if (request.getParameter("chatContent") != null) {
+                    chatContent = SpillableBuffer.wrap(request.getParameter("chatContent"));
+                } else {
+                    // Sent as the request body, which is read in chunks and kept on disk when large
+                    if (request.getCharacterEncoding() == null) {
+                        request.setCharacterEncoding("UTF-8");
+                    }
+                    try {
+                        chatContent = SpillableBuffer.read(request.getReader(), CodeBlockTokenizer.MAX_INPUT_LENGTH);
+                    } catch (SpillableBuffer.LimitExceededException e) {
+                        response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                        sendJsonResponse(response, "error",
+                                "Chat content is longer than " + CodeBlockTokenizer.MAX_INPUT_LENGTH + " characters");
+                        return;
+                    }
+                }
 
                 // Log chat content size
-                LogUtil.info(getClassName(), "Chat content size: " +
-                        (chatContent != null ? chatContent.length() : "null") + " characters");
+                LogUtil.info(getClassName(), "Chat content size: " + chatContent.length() + " characters"
+                        + (chatContent.isSpilled() ? ", kept on disk" : ""));
 
-                if (chatContent == null || chatContent.trim().isEmpty()) {
+                String sample = chatContent.getPrefix(1000);
+                if (chatContent.length() == sample.length() && sample.trim().isEmpty()) {
                     LogUtil.info(getClassName(), "Chat content is empty or null");
                     response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                     sendJsonResponse(response, "error", "Chat content is required");
                     return;
                 }
 
+                // Refuse content too long to extract the code from
+                if (chatContent.length() > CodeBlockTokenizer.MAX_INPUT_LENGTH) {
+                    response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                    sendJsonResponse(response, "error",
+                            "Chat content is longer than " + CodeBlockTokenizer.MAX_INPUT_LENGTH + " characters");
+                    return;
+                }
+
                 // Log a sample of the chat content
                 LogUtil.info(getClassName(), "Chat content sample (first 500 chars): " +
-                        (chatContent.length() > 500 ? chatContent.substring(0, 500) + "..." : chatContent));
+                        (sample.length() > 500 ? sample.substring(0, 500) + "..." : sample));
 
-                // Create zip file from chat content
-                LogUtil.info(getClassName(), "Calling ZipFileUtil.createZipFromChatContent");
-                byte[] zipData = ZipFileUtil.createZipFromChatContent(chatContent);
+                // Archives are addressed by a hash of the text they come from, which is also their ETag
+                ArchiveCache archiveCache = ArchiveCache.getInstance();
+                String key = archiveKey != null ? archiveKey : buildExtractedKey(chatContent);
+                if (sendNotModified(request, response, key)) {
+                    return;
+                }
+                ArchiveCache.Archive archive = archiveCache.get(key);
+                if (archive == null && archiveKey != null) {
+                    // The zip built with the response is gone, so it is extracted from the text again
+                    String extractedKey = buildExtractedKey(chatContent);
+                    if (!extractedKey.equals(key)) {
+                        key = extractedKey;
+                        if (sendNotModified(request, response, key)) {
+                            return;
+                        }
+                        archive = archiveCache.get(key);
+                    }
+                }
+                if (archive != null) {
+                    LogUtil.info(getClassName(), "Sending cached zip " + key);
+                    try {
+                        response.setContentType("application/zip");
+                        response.setHeader("Content-Disposition", "attachment; filename=code_snippets.zip");
+                        setArchiveCacheHeaders(response, key);
+                        response.setContentLength((int) archive.getLength());
+                        ServletOutputStream sos = response.getOutputStream();
+                        archive.writeTo(sos);
+                        sos.flush();
+                    } finally {
+                        archive.close();
+                    }
+                    return;
+                }
 
-                // Log zip data size
-                LogUtil.info(getClassName(),
-                        "Zip data size: " + (zipData != null ? zipData.length : "null") + " bytes");
+                // Work out the zip entries before anything is sent, so an empty result can still be reported
+                LogUtil.info(getClassName(), "Calling ZipFileUtil.extractZipEntries");
+                Map<String, String> zipEntries;
+                try (Reader reader = chatContent.openReader()) {
+                    zipEntries = ZipFileUtil.extractZipEntries(reader);
+                }
+                LogUtil.info(getClassName(), "Zip entries: " + zipEntries.size());
 
-                if (zipData == null || zipData.length == 0) {
+                if (zipEntries.isEmpty()) {
                     LogUtil.info(getClassName(), "Generated zip data is empty");
                     response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 
@@ -796,7 +1519,7 @@ public class LlmChatUserviewMenu extends UserviewMenu implements PluginWebSuppor
                     writer.write("<h2>Chat Content Sample</h2>");
                     writer.write("<pre>" +
                             StringUtil.escapeString(
-                                    chatContent.length() > 1000 ? chatContent.substring(0, 1000) + "..." : chatContent,
+                                    chatContent.length() > sample.length() ? sample + "..." : sample,
                                     StringUtil.TYPE_HTML, null)
                             +
                             "</pre>");
@@ -814,18 +1537,26 @@ public class LlmChatUserviewMenu extends UserviewMenu implements PluginWebSuppor
                     return;
                 }
 
-                // Set response headers for file download
+                // Set response headers for file download; without a content length the zip is sent chunked
                 response.setContentType("application/zip");
                 response.setHeader("Content-Disposition", "attachment; filename=code_snippets.zip");
-                response.setContentLength(zipData.length);
+                setArchiveCacheHeaders(response, key);
 
                 LogUtil.info(getClassName(), "Writing zip data to response");
 
-                // Write zip data to response
-                ServletOutputStream sos = response.getOutputStream();
-                sos.write(zipData);
-                sos.flush();
-                sos.close();
+                // Write the zip entries straight to the response as they are compressed, keeping a copy to cache
+                ArchiveCache.CapturingOutputStream sos = archiveCache.capture(response.getOutputStream());
+                try {
+                    ZipFileUtil.writeZip(zipEntries, sos);
+                    sos.flush();
+                    archiveCache.put(key, sos);
+                } catch (IOException e) {
+                    // The headers are already sent, so all that can be done is to stop
+                    LogUtil.warn(getClassName(), "Zip download interrupted: " + e.getMessage());
+                    return;
+                } finally {
+                    sos.discard();
+                }
 
                 LogUtil.info(getClassName(), "=== DOWNLOAD CODE ACTION COMPLETED SUCCESSFULLY ===");
 
@@ -835,74 +1566,648 @@ public class LlmChatUserviewMenu extends UserviewMenu implements PluginWebSuppor
 
                 // Send error response
                 sendJsonResponse(response, "error", "Error creating zip file: " + e.getMessage());
+            } finally {
+                if (chatContent != null) {
+                    chatContent.close();
+                }
+            }
+        } else if ("listFiles".equals(action)) {
+            try {
+                String responseId = request.getParameter("responseId");
+                String text = getStoredResponse(request, response, responseId);
+                if (text == null) {
+                    return;
+                }
+
+                // A manifest of the files of the zip, so the page can show them and fetch only some
+                Map<String, String> zipEntries = loadZipEntries(text,
+                        ResponseStore.getInstance().getArchiveKey(getConversationKey(request), responseId));
+                JSONArray files = new JSONArray();
+                long totalSize = 0;
+                for (Map.Entry<String, String> entry : zipEntries.entrySet()) {
+                    byte[] content = entry.getValue().getBytes(StandardCharsets.UTF_8);
+                    JSONObject file = new JSONObject();
+                    file.put("path", entry.getKey());
+                    file.put("size", content.length);
+                    file.put("hash", hashContent(content));
+                    files.put(file);
+                    totalSize += content.length;
+                }
+
+                JSONObject manifest = new JSONObject();
+                manifest.put("responseId", responseId);
+                manifest.put("files", files);
+                manifest.put("totalSize", totalSize);
+                response.setContentType("application/json;charset=UTF-8");
+                response.setHeader("Cache-Control", "no-cache, no-store, must-revalidate");
+                response.getWriter().write(manifest.toString());
+            } catch (Exception e) {
+                LogUtil.error(getClassName(), e, "Error listing files: " + e.getMessage());
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                sendJsonResponse(response, "error", "Error listing files: " + e.getMessage());
+            }
+        } else if ("downloadFile".equals(action)) {
+            try {
+                String responseId = request.getParameter("responseId");
+                String[] paths = request.getParameterValues("path");
+                if (paths == null || paths.length == 0) {
+                    response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                    sendJsonResponse(response, "error", "At least one file path is required");
+                    return;
+                }
+                String text = getStoredResponse(request, response, responseId);
+                if (text == null) {
+                    return;
+                }
+
+                // Pick the requested files, in the order they were asked for
+                Map<String, String> zipEntries = loadZipEntries(text,
+                        ResponseStore.getInstance().getArchiveKey(getConversationKey(request), responseId));
+                Map<String, String> selected = new LinkedHashMap<>();
+                for (String path : paths) {
+                    String content = zipEntries.get(path);
+                    if (content == null) {
+                        response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                        sendJsonResponse(response, "error", "No file " + path + " in this response");
+                        return;
+                    }
+                    selected.put(path, content);
+                }
+
+                if (selected.size() == 1) {
+                    // A single file is sent as is, with its hash as the ETag
+                    String path = selected.keySet().iterator().next();
+                    byte[] content = selected.get(path).getBytes(StandardCharsets.UTF_8);
+                    String hash = hashContent(content);
+                    if (sendNotModified(request, response, hash)) {
+                        return;
+                    }
+                    setArchiveCacheHeaders(response, hash);
+                    response.setContentType("text/plain;charset=UTF-8");
+                    response.setHeader("X-Content-Type-Options", "nosniff");
+                    response.setHeader("Content-Disposition", buildAttachmentHeader(path));
+                    response.setContentLength(content.length);
+                    ServletOutputStream sos = response.getOutputStream();
+                    sos.write(content);
+                    sos.flush();
+                    return;
+                }
+
+                // Several files are sent as a zip of their own
+                LogUtil.info(getClassName(), "Sending zip of " + selected.size() + " of " + zipEntries.size()
+                        + " files");
+                response.setContentType("application/zip");
+                response.setHeader("Content-Disposition", "attachment; filename=code_snippets.zip");
+                response.setHeader("Cache-Control", "no-cache, no-store, must-revalidate");
+                ServletOutputStream sos = response.getOutputStream();
+                ZipFileUtil.writeZip(selected, sos);
+                sos.flush();
+            } catch (Exception e) {
+                LogUtil.error(getClassName(), e, "Error downloading files: " + e.getMessage());
+                if (!response.isCommitted()) {
+                    response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    sendJsonResponse(response, "error", "Error downloading files: " + e.getMessage());
+                }
+            }
+        } else if ("stats".equals(action)) {
+            // Report connection pool statistics, which name the nodes and their errors, to administrators only
+            response.setContentType("application/json;charset=UTF-8");
+            response.setHeader("Cache-Control", "no-cache, no-store, must-revalidate");
+            if (!WorkflowUtil.isCurrentUserInRole(WorkflowUserManager.ROLE_ADMIN)) {
+                response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+                sendJsonResponse(response, "error", "Only administrators may view the statistics");
+                return;
+            }
+
+            JSONObject stats = new JSONObject();
+            stats.put("httpPool", OllamaHttpClient.getInstance().getStatistics());
+            stats.put("nodes", OllamaNodeBalancer.getInstance().getStatistics());
+            stats.put("contextCache", ContextCache.getInstance().getStatistics());
+            stats.put("responseCache", ResponseCache.getInstance().getStatistics());
+            stats.put("responses", ResponseStore.getInstance().getStatistics());
+            stats.put("archives", ArchiveCache.getInstance().getStatistics());
+            stats.put("generations", GenerationRegistry.getInstance().getStatistics());
+            stats.put("generationThreads", GenerationExecutor.getInstance().getStatistics());
+            stats.put("jobs", JobStore.getInstance().getStatistics());
+            stats.put("admission", AdmissionController.getInstance().getStatistics());
+            stats.put("models", ModelCatalog.getInstance().getStatistics());
+            response.getWriter().write(stats.toString());
+        } else if ("models".equals(action)) {
+            // List the models of the nodes as select box options for the property editor
+            response.setContentType("application/json;charset=UTF-8");
+            response.setHeader("Cache-Control", "no-cache, no-store, must-revalidate");
+
+            // Only administrators may point the list at endpoints other than the saved one
+            String apiEndpoint = getPropertyString("apiEndpoint");
+            String requested = request.getParameter("apiEndpoint");
+            if (requested != null && !requested.isEmpty()
+                    && WorkflowUtil.isCurrentUserInRole(WorkflowUserManager.ROLE_ADMIN)) {
+                apiEndpoint = requested;
             }
+            OllamaRequest settings = new OllamaRequest(null, apiEndpoint, getPropertyString("model"), null, 0);
+            OllamaApiClient.applyDefaults(settings);
+
+            JSONArray options = ModelCatalog.toOptions(
+                    ModelCatalog.getInstance().getModels(settings.getApiEndpoint(), true), settings.getModel());
+            response.getWriter().write(options.toString());
+        } else if ("clearConversation".equals(action)) {
+            // Forget the history of the conversation the page is leaving
+            String conversationKey = getConversationKey(request);
+            ConversationStore.getInstance().removeConversation(conversationKey);
+            ContextCache.getInstance().remove(conversationKey);
+            sendJsonResponse(response, "status", "ok");
         } else if ("sendMessage".equals(action)) {
             try {
-                // Get message from request
-                String message = request.getParameter("message");
-                String apiEndpoint = getPropertyString("apiEndpoint");
-                String model = getPropertyString("model");
-                String systemPrompt = getPropertyString("systemPrompt");
+                PreparedMessage prepared = prepareMessage(request, response);
+                if (prepared == null) {
+                    return;
+                }
+                OllamaRequest ollamaRequest = prepared.ollamaRequest;
+                boolean stream = "true".equals(request.getParameter("stream"));
+
+                // Answer identical requests from the response cache when it is enabled
+                OllamaResponse cached = getCachedResponse(prepared);
+                if (cached != null) {
+                    String responseId = ResponseStore.getInstance().put(prepared.conversationKey, cached.getText());
+                    sendCachedResponse(response, cached, responseId, stream);
+                    return;
+                }
 
-                // Get temperature with default value
-                double temperature = 0.7;
+                // Share one upstream call between retries of this message and identical requests in flight
+                String requestKey = getRequestKey(request, prepared.conversationKey);
+                GenerationRegistry.Attachment attachment = GenerationRegistry.getInstance().attach(requestKey,
+                        prepared.requestHash);
+                Generation generation = attachment.getGeneration();
 
-                try {
-                    String tempStr = getPropertyString("temperature");
-                    if (tempStr != null && !tempStr.isEmpty()) {
-                        temperature = Double.parseDouble(tempStr);
+                // Only the request that runs the generation needs a slot on the endpoint
+                AdmissionController.Ticket ticket = null;
+                if (attachment.isOwner()) {
+                    ticket = enqueue(request, response, prepared, generation);
+                    if (ticket == null) {
+                        return;
                     }
-                } catch (NumberFormatException e) {
-                    LogUtil.warn(getClassName(), "Invalid temperature value, using default 0.7");
                 }
 
-                // Call Ollama API
-                String result;
-                try {
-                    result = OllamaApiClient.callOllamaApi(
-                            message,
-                            apiEndpoint,
-                            model,
-                            systemPrompt,
-                            temperature);
+                // Waiting for the generation and relaying it is done on the generation executor when the
+                // container can complete the request asynchronously, releasing its thread meanwhile
+                final AdmissionController.Ticket admissionTicket = ticket;
+                ReplyTask reply = () -> {
+                    // Relay tokens to the page as they are generated when it asks for streaming
+                    if (stream) {
+                        startEventStream(response);
+                    }
+                    if (attachment.isOwner()) {
+                        runGeneration(generation, ollamaRequest, admissionTicket, stream ? response : null,
+                                attachment.getReaderToken());
+                    } else {
+                        LogUtil.info(getClassName(), "Attaching request to the generation already in progress");
+                        if (stream) {
+                            if (!followGeneration(generation, response, attachment.getReaderToken(),
+                                    prepared.deadline)) {
+                                return;
+                            }
+                        } else {
+                            awaitGeneration(generation, attachment.getReaderToken(), prepared.deadline);
+                        }
+                    }
+
+                    // A message the client cancelled is not kept, even when others carried its generation on
+                    boolean cancelled = generation.isDetached(attachment.getReaderToken());
+                    OllamaResponse result = cancelled ? null : generation.getResult();
+                    String responseId = cancelled ? null : storeTurn(prepared, generation, attachment.isOwner());
 
-                    // Log the response for debugging
-                    LogUtil.info(getClassName(), "Sending response to client: " + result);
+                    Exception error = generation.getError();
+                    String errorMessage = cancelled ? "The message was cancelled" : getErrorMessage(error);
+                    if (stream) {
+                        try {
+                            if (result != null) {
+                                sendEvent(response, "done", new JSONObject().put("shared", !attachment.isOwner())
+                                        .put("responseId", responseId));
+                            } else {
+                                sendEvent(response, "error", new JSONObject().put("error", errorMessage));
+                            }
+                        } catch (IOException e) {
+                            LogUtil.debug(getClassName(), "Client disconnected before the end of the stream");
+                        }
+                        return;
+                    }
 
-                    // Return a proper JSON response
                     response.setContentType("application/json;charset=UTF-8");
                     JSONObject jsonResponse = new JSONObject();
-                    jsonResponse.put("response", result);
+                    if (result != null) {
+                        // Log the response for debugging
+                        LogUtil.info(getClassName(), "Sending response to client: " + result.getText().length()
+                                + " characters");
+
+                        // Return a proper JSON response
+                        jsonResponse.put("response", result.getText());
+                        jsonResponse.put("responseId", responseId);
+                    } else if (error instanceof OllamaNodeBalancer.NodeUnavailableException) {
+                        // Every node is failing, tell the client when it is worth trying again
+                        long retryAfter = ((OllamaNodeBalancer.NodeUnavailableException) error).getRetryAfter();
+                        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                        response.setHeader("Retry-After", String.valueOf(Math.max(1, (retryAfter + 999) / 1000)));
+                        jsonResponse.put("error", errorMessage);
+                    } else {
+                        response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+
+                        // Send a proper JSON error response
+                        jsonResponse.put("error", errorMessage);
+                    }
                     response.getWriter().write(jsonResponse.toString());
-                } catch (Exception e) {
-                    LogUtil.error(getClassName(), e, "Error calling Ollama API: " + e.getMessage());
-                    response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                };
 
-                    // Send a proper JSON error response
-                    response.setContentType("application/json;charset=UTF-8");
-                    String errorMessage = e.getMessage() != null ? e.getMessage()
-                            : "Error connecting to Ollama API";
-                    JSONObject jsonError = new JSONObject();
-                    jsonError.put("error", errorMessage);
-                    response.getWriter().write(jsonError.toString());
+                AdmissionWait admission = ticket != null ? new AdmissionWait(ticket, generation,
+                        ollamaRequest.getTimeouts().getRequestTimeout(), stream ? response : null,
+                        attachment.getReaderToken()) : null;
+                long asyncTimeout = prepared.deadline - System.currentTimeMillis() + ASYNC_TIMEOUT_MARGIN;
+                if (!runReply(request, response, asyncTimeout, admission, reply)) {
+                    releaseAttachment(attachment, ticket,
+                            new IOException("Every generation thread is busy"));
+                }
+            } catch (Exception e) {
+                sendErrorResponse(response, e);
+            }
+        } else if ("submitJob".equals(action)) {
+            // Start a generation that carries on without the client, which polls for it with pollJob
+            JobStore.Job pending = null;
+            try {
+                PreparedMessage prepared = prepareMessage(request, response);
+                if (prepared == null) {
+                    return;
+                }
+                String conversationKey = prepared.conversationKey;
+                String requestKey = getRequestKey(request, conversationKey);
+
+                // Submitting the same message again resumes its job, even once it is done
+                JobStore.Job created = new JobStore.Job(conversationKey, requestKey);
+                JobStore.Job job;
+                try {
+                    job = JobStore.getInstance().findOrAdd(created);
+                } catch (JobStore.StoreFullException e) {
+                    LogUtil.warn(getClassName(), "Rejecting job: " + e.getMessage());
+                    response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    response.setHeader("Retry-After", String.valueOf(GenerationExecutor.RETRY_AFTER_SECONDS));
+                    sendJsonResponse(response, "error", e.getMessage());
+                    return;
+                }
+                if (job != created) {
+                    LogUtil.info(getClassName(), "Resuming job " + job.getId());
+                    sendJobResponse(response, job, 0, 0);
+                    return;
+                }
+                pending = job;
+
+                OllamaResponse cached = getCachedResponse(prepared);
+                if (cached != null) {
+                    String responseId = ResponseStore.getInstance().put(conversationKey, cached.getText());
+                    job.complete(cached.getText(), responseId);
+                    sendJobResponse(response, job, 0, 0);
+                    return;
+                }
+
+                GenerationRegistry.Attachment attachment = GenerationRegistry.getInstance().attach(requestKey,
+                        prepared.requestHash);
+                Generation generation = attachment.getGeneration();
+                AdmissionController.Ticket ticket = null;
+                if (attachment.isOwner()) {
+                    ticket = enqueue(request, response, prepared, generation);
+                    if (ticket == null) {
+                        job.fail("The job was not admitted");
+                        return;
+                    }
+                }
+
+                if (!job.start(generation, attachment.getReaderToken())) {
+                    // Cancelled while it was pending
+                    releaseAttachment(attachment, ticket, new IOException("The job was cancelled"));
+                    sendJobResponse(response, job, 0, 0);
+                    return;
                 }
+                job.setTicket(ticket);
 
+                // The job is the reader of the generation, so it runs to the end whoever polls it
+                final JobStore.Job submitted = job;
+                final AdmissionController.Ticket admissionTicket = ticket;
+                try {
+                    Runnable task = () -> {
+                        try {
+                            if (attachment.isOwner()) {
+                                runGeneration(generation, prepared.ollamaRequest, admissionTicket, null,
+                                        attachment.getReaderToken());
+                            } else {
+                                awaitGeneration(generation, attachment.getReaderToken(), prepared.deadline);
+                            }
+                            if (submitted.isFinished()) {
+                                // The job was cancelled, so its result is not kept
+                                return;
+                            }
+                            String responseId = storeTurn(prepared, generation, attachment.isOwner());
+                            if (responseId != null) {
+                                submitted.complete(generation.getResult().getText(), responseId);
+                            } else {
+                                submitted.fail(getErrorMessage(generation.getError()));
+                            }
+                        } catch (Exception e) {
+                            LogUtil.error(getClassName(), e, "Error running job " + submitted.getId());
+                            submitted.fail(getErrorMessage(e));
+                        } finally {
+                            // Never leaves a poller waiting, whatever happened above
+                            submitted.fail("The job ended unexpectedly");
+                        }
+                    };
+
+                    // A queued job takes a generation thread only once admitted
+                    AdmissionWait admission = ticket != null ? new AdmissionWait(ticket, generation,
+                            prepared.ollamaRequest.getTimeouts().getRequestTimeout(), null,
+                            attachment.getReaderToken()) : null;
+                    if (admission == null || !admission.defer(task, () -> submitted.fail(SERVER_BUSY))) {
+                        GenerationExecutor.getInstance().execute(task);
+                    }
+                } catch (RejectedExecutionException e) {
+                    LogUtil.warn(getClassName(), "Rejecting job, every generation thread is busy");
+                    releaseAttachment(attachment, ticket,
+                            new IOException("Every generation thread is busy"));
+                    job.fail(SERVER_BUSY);
+                    response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    response.setHeader("Retry-After", String.valueOf(GenerationExecutor.RETRY_AFTER_SECONDS));
+                    sendJsonResponse(response, "error", SERVER_BUSY);
+                    return;
+                }
+                pending = null;
+                LogUtil.info(getClassName(), "Submitted job " + job.getId());
+                sendJobResponse(response, job, 0, 0);
             } catch (Exception e) {
-                LogUtil.error(getClassName(), e, "Error in webService: " + e.getMessage());
-                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                if (pending != null) {
+                    // A job left pending would be resumed by every retry of the message
+                    pending.fail(getErrorMessage(e));
+                }
+                sendErrorResponse(response, e);
+            }
+        } else if ("cancel".equals(action)) {
+            // Stop a message or job for this client; its generation stops once no other request follows it
+            try {
+                String conversationKey = getConversationKey(request);
+                String jobId = request.getParameter("jobId");
+                // The number of readers left, or -1 if the client no longer followed the generation
+                int left = -1;
+                if (jobId != null && !jobId.isEmpty()) {
+                    JobStore.Job job = JobStore.getInstance().get(conversationKey, jobId);
+                    if (job == null) {
+                        response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                        sendJsonResponse(response, "error", "This job is no longer available");
+                        return;
+                    }
+                    // Read before failing the job, which drops its generation
+                    Generation generation = job.getGeneration();
+                    String readerToken = job.getReaderToken();
+                    job.fail("The job was cancelled");
+                    if (generation != null && !generation.isFinished() && !generation.isDetached(readerToken)) {
+                        left = generation.detachReader(readerToken);
+                    }
+                } else {
+                    String requestKey = getRequestKey(request, conversationKey);
+                    if (requestKey == null) {
+                        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                        sendJsonResponse(response, "error", "A request ID or job ID is required");
+                        return;
+                    }
+                    // Every connection of the message stops, such as a retry still following it
+                    Generation generation = GenerationRegistry.getInstance().find(requestKey);
+                    if (generation != null && !generation.isFinished()) {
+                        left = generation.detachRequest(requestKey);
+                    }
+                }
+
+                boolean stopped = left == 0;
+                if (left >= 0) {
+                    LogUtil.info(getClassName(), stopped ? "Cancelled the generation of a message"
+                            : "Cancelled a message, its generation continues for other requests");
+                }
+                response.setContentType("application/json;charset=UTF-8");
+                response.getWriter().write(new JSONObject().put("status", "cancelled").put("stopped", stopped)
+                        .toString());
+            } catch (Exception e) {
+                sendErrorResponse(response, e);
+            }
+        } else if ("pollJob".equals(action)) {
+            // Report the status and the new output of a job, waiting for either when asked to
+            try {
+                JobStore.Job job = JobStore.getInstance().get(getConversationKey(request),
+                        request.getParameter("jobId"));
+                if (job == null) {
+                    response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                    sendJsonResponse(response, "error",
+                            "This job is no longer available, please send the message again");
+                    return;
+                }
+                int offset = getIntParameter(request, "offset");
+                int fileOffset = getIntParameter(request, "fileOffset");
+                long wait = Math.min(getIntParameter(request, "wait"), MAX_POLL_WAIT);
 
-                // Use the utility method to ensure valid JSON
-                String errorMessage = e.getMessage();
-                if (errorMessage == null || errorMessage.trim().isEmpty()) {
-                    errorMessage = "Unknown error occurred";
+                ReplyTask reply = () -> {
+                    awaitJob(job, offset, wait);
+                    sendJobResponse(response, job, offset, fileOffset);
+                };
+                if (wait <= 0 || job.isFinished()) {
+                    reply.run();
+                } else {
+                    runReply(request, response, wait + ASYNC_TIMEOUT_MARGIN, null, reply);
                 }
+            } catch (Exception e) {
+                sendErrorResponse(response, e);
+            }
+        }
+    }
+
+    /**
+     * Sends the error that ended a chat request
+     * 
+     * @param response The response
+     * @param e        The error
+     * @throws IOException If the error cannot be sent
+     */
+    private void sendErrorResponse(HttpServletResponse response, Exception e) throws IOException {
+        LogUtil.error(getClassName(), e, "Error in webService: " + e.getMessage());
+        if (response.isCommitted()) {
+            // An event stream has started, so the status can no longer be changed
+            try {
+                sendEvent(response, "error", new JSONObject().put("error", e.getMessage()));
+            } catch (IOException | JSONException ignored) {
+                LogUtil.debug(getClassName(), "Client disconnected before the error was sent");
+            }
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+
+        // Use the utility method to ensure valid JSON
+        String errorMessage = e.getMessage();
+        if (errorMessage == null || errorMessage.trim().isEmpty()) {
+            errorMessage = "Unknown error occurred";
+        }
+
+        // Log the response we're sending for debugging
+        LogUtil.debug(getClassName(), "Sending error response: " + errorMessage);
+
+        // Send the error response
+        sendJsonResponse(response, "error", errorMessage);
+    }
+
+    /**
+     * The part of a chat request that waits for its generation and sends the
+     * reply, run on the container thread or on the generation executor
+     */
+    private interface ReplyTask {
+        void run() throws Exception;
+    }
+
+    /**
+     * The wait of the request that owns a generation for a slot on its
+     * endpoint, done without holding a thread. The admission controller calls
+     * back once the request is admitted, and only then does its task take a
+     * generation thread.
+     * 
+     * Meanwhile a timer task sends a streaming client its place in the queue,
+     * which also finds out whether it left. The timer gives up the place once
+     * the generation is cancelled, its deadline passes or it waited longer
+     * than the queue timeout; the task then runs straight away and fails with
+     * the reason.
+     */
+    private class AdmissionWait implements Runnable {
+
+        private final AdmissionController.Ticket ticket;
+        private final Generation generation;
+        private final long queueTimeout;
+        private final HttpServletResponse response;
+        private final String readerToken;
+
+        // Held while a queue event is written, so the task does not write over it
+        private final ReentrantLock streamLock = new ReentrantLock();
+        private final AtomicBoolean started = new AtomicBoolean(false);
+        private volatile ScheduledFuture<?> timer;
+        private Runnable task;
+        private Runnable onRejected;
+
+        AdmissionWait(AdmissionController.Ticket ticket, Generation generation, long queueTimeout,
+                HttpServletResponse response, String readerToken) {
+            this.ticket = ticket;
+            this.generation = generation;
+            this.queueTimeout = queueTimeout;
+            this.response = response;
+            this.readerToken = readerToken;
+        }
+
+        /**
+         * Runs a task on the generation executor once the request is admitted
+         * 
+         * @param task       The task
+         * @param onRejected Run in place of the task when every generation
+         *                   thread is busy by then, after the ticket was
+         *                   released and the generation failed
+         * @return false if the request is already admitted, in which case the
+         *         caller runs the task itself
+         * @throws IOException If the event stream cannot be started
+         */
+        boolean defer(Runnable task, Runnable onRejected) throws IOException {
+            if (ticket.isAdmitted()) {
+                return false;
+            }
+            this.task = task;
+            this.onRejected = onRejected;
+            if (response != null) {
+                startEventStream(response);
+            }
+            timer = GenerationExecutor.getInstance().schedule(this, QUEUE_UPDATE_INTERVAL);
+            run();
+            ticket.onAdmitted(this::start);
+            return true;
+        }
+
+        /**
+         * Checks on the request while it waits, run on the timer thread
+         */
+        @Override
+        public void run() {
+            if (started.get()) {
+                return;
+            }
+            Cancellation cancellation = generation.getCancellation();
+            if (cancellation.isCancelled() || cancellation.getRemaining() <= 0
+                    || ticket.getWaited() > queueTimeout) {
+                // Giving up the place starts the task, which reports why
+                ticket.release();
+                return;
+            }
 
-                // Log the response we're sending for debugging
-                LogUtil.debug(getClassName(), "Sending error response: " + errorMessage);
+            // Skipped rather than waited for, as the timer thread is shared by every stream
+            if (response == null || generation.isDetached(readerToken) || !streamLock.tryLock()) {
+                return;
+            }
+            try {
+                if (!started.get()) {
+                    JSONObject status = new JSONObject();
+                    status.put("position", ticket.getPosition());
+                    status.put("waited", ticket.getWaited());
+                    status.put("estimatedWait", ticket.getEstimatedWait());
+                    sendEvent(response, "queue", status);
+                }
+            } catch (IOException e) {
+                if (generation.detachReader(readerToken) == 0) {
+                    LogUtil.info(getClassName(), "Client left the queue, cancelling the generation");
+                }
+            } finally {
+                streamLock.unlock();
+            }
+        }
 
-                // Send the error response
-                sendJsonResponse(response, "error", errorMessage);
+        private void start() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            timer.cancel(false);
+            try {
+                GenerationExecutor.getInstance().execute(() -> {
+                    // Waits out a queue event being written
+                    streamLock.lock();
+                    streamLock.unlock();
+                    task.run();
+                });
+            } catch (RejectedExecutionException e) {
+                LogUtil.warn(getClassName(), "Rejecting admitted request, every generation thread is busy");
+                ticket.release();
+                generation.fail(new IOException("Every generation thread is busy"));
+                GenerationRegistry.getInstance().finish(generation);
+                onRejected.run();
             }
         }
     }
+
+    /**
+     * A chat message with the Ollama request built for it and the
+     * conversation it belongs to
+     */
+    private static class PreparedMessage {
+
+        private final OllamaRequest ollamaRequest;
+        private final String conversationKey;
+        private final ConversationStore.Conversation conversation;
+        private final int tokenBudget;
+        private final String requestHash;
+        private final boolean cacheEnabled;
+
+        // The time by which the request must end
+        private final long deadline;
+
+        PreparedMessage(OllamaRequest ollamaRequest, String conversationKey,
+                ConversationStore.Conversation conversation, int tokenBudget, String requestHash,
+                boolean cacheEnabled, long deadline) {
+            this.ollamaRequest = ollamaRequest;
+            this.conversationKey = conversationKey;
+            this.conversation = conversation;
+            this.tokenBudget = tokenBudget;
+            this.requestHash = requestHash;
+            this.cacheEnabled = cacheEnabled;
+            this.deadline = deadline;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,264 @@
+package org.joget.marketplace;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.joget.commons.util.LogUtil;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Cached catalogue of the models each Ollama node offers, read from its
+ * /api/tags.
+ * 
+ * Lookups never wait on the network once a node has been read: a list older
+ * than its time to live is still returned while a background refresh fetches
+ * a new one. The health prober keeps the lists of the nodes in use fresh as a
+ * side effect, so request routing can check model names without extra calls.
+ */
+public class ModelCatalog {
+
+    public static final long TTL = 5 * 60 * 1000L;
+
+    // Minimum time between two attempts to read a node that could not be reached
+    private static final long RETRY_INTERVAL = 30000L;
+
+    private static final ModelCatalog INSTANCE = new ModelCatalog();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ExecutorService refresher;
+
+    private ModelCatalog() {
+        refresher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ollama-model-catalog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the catalogue shared by all instances of the plugin
+     * 
+     * @return The shared catalogue
+     */
+    public static ModelCatalog getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the models offered by the nodes of an endpoint setting. Nodes that
+     * have never been read are read now when asked to wait; otherwise only the
+     * cached lists are used and stale ones are refreshed in the background.
+     * 
+     * @param apiEndpoint   The API endpoint setting
+     * @param waitIfMissing Whether to read nodes that have no list yet
+     * @return The model names and descriptions, sorted by name
+     */
+    public Map<String, String> getModels(String apiEndpoint, boolean waitIfMissing) {
+        Map<String, String> models = new TreeMap<>();
+        for (String endpoint : OllamaNodeBalancer.parseEndpoints(apiEndpoint)) {
+            Entry entry = getEntry(endpoint);
+            if (entry.models == null && waitIfMissing) {
+                refreshQuietly(entry);
+            } else {
+                refreshIfStale(entry);
+            }
+            if (entry.models != null) {
+                models.putAll(entry.models);
+            }
+        }
+        return models;
+    }
+
+    /**
+     * Checks a model name against the cached lists, without network calls
+     * 
+     * @param apiEndpoint The API endpoint setting
+     * @param model       The model name
+     * @return TRUE if a node offers the model, FALSE if every node has been
+     *         read and none offers it, or null if that is not known yet
+     */
+    public Boolean isModelAvailable(String apiEndpoint, String model) {
+        String normalized = OllamaNodeBalancer.normalizeModel(model);
+        boolean allKnown = true;
+        for (String endpoint : OllamaNodeBalancer.parseEndpoints(apiEndpoint)) {
+            Entry entry = getEntry(endpoint);
+            refreshIfStale(entry);
+
+            Map<String, String> models = entry.models;
+            if (models == null) {
+                allKnown = false;
+            } else if (models.containsKey(normalized)) {
+                return Boolean.TRUE;
+            }
+        }
+        return allKnown ? Boolean.FALSE : null;
+    }
+
+    /**
+     * Checks whether the list of at least one node of an endpoint setting is
+     * cached
+     * 
+     * @param apiEndpoint The API endpoint setting
+     * @return true if a node has been read
+     */
+    public boolean isKnown(String apiEndpoint) {
+        for (String endpoint : OllamaNodeBalancer.parseEndpoints(apiEndpoint)) {
+            if (getEntry(endpoint).models != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the models of a node now and caches them
+     * 
+     * @param endpoint An endpoint URL of the node
+     * @return The model names, normalized with an explicit tag
+     * @throws IOException   If the node cannot be reached
+     * @throws JSONException If the response cannot be parsed
+     */
+    public Map<String, String> refresh(String endpoint) throws IOException, JSONException {
+        Entry entry = getEntry(endpoint);
+        entry.attemptedAt = System.currentTimeMillis();
+        Map<String, String> models = fetchModels(entry.baseUrl + "/api/tags");
+        entry.models = Collections.unmodifiableMap(models);
+        entry.fetchedAt = System.currentTimeMillis();
+        return entry.models;
+    }
+
+    private Entry getEntry(String endpoint) {
+        return entries.computeIfAbsent(OllamaNodeBalancer.getBaseUrl(endpoint), Entry::new);
+    }
+
+    private void refreshIfStale(Entry entry) {
+        long now = System.currentTimeMillis();
+        if (now - entry.fetchedAt < TTL || now - entry.attemptedAt < RETRY_INTERVAL
+                || !entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            refresher.execute(() -> {
+                try {
+                    refreshQuietly(entry);
+                } finally {
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    private void refreshQuietly(Entry entry) {
+        try {
+            refresh(entry.baseUrl);
+        } catch (Exception e) {
+            LogUtil.warn(ModelCatalog.class.getName(),
+                    "Could not read the models of " + entry.baseUrl + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the models listed by /api/tags with their parameter sizes
+     * 
+     * @param url The /api/tags URL
+     * @return The model names, normalized with an explicit tag, and their
+     *         descriptions
+     * @throws IOException   If the node cannot be reached
+     * @throws JSONException If the response cannot be parsed
+     */
+    private static Map<String, String> fetchModels(String url) throws IOException, JSONException {
+        Map<String, String> models = new TreeMap<>();
+        JSONArray modelsArray = OllamaHttpClient.getInstance().readJson(url, OllamaHttpClient.Timeouts.PROBE)
+                .optJSONArray("models");
+        if (modelsArray != null) {
+            for (int i = 0; i < modelsArray.length(); i++) {
+                JSONObject model = modelsArray.getJSONObject(i);
+                String name = OllamaNodeBalancer.normalizeModel(model.optString("name", model.optString("model")));
+                String description = name;
+                JSONObject details = model.optJSONObject("details");
+                if (details != null && details.has("parameter_size")) {
+                    description += " (" + details.getString("parameter_size") + ")";
+                }
+                models.put(name, description);
+            }
+        }
+        return models;
+    }
+
+    /**
+     * Gets the state of the catalogue
+     * 
+     * @return A JSON object keyed by node base URL
+     * @throws JSONException If the statistics cannot be built
+     */
+    public JSONObject getStatistics() throws JSONException {
+        JSONObject stats = new JSONObject();
+        for (Entry entry : entries.values()) {
+            JSONObject json = new JSONObject();
+            Map<String, String> models = entry.models;
+            json.put("models", models != null ? models.size() : -1);
+            json.put("age", entry.fetchedAt > 0 ? System.currentTimeMillis() - entry.fetchedAt : -1);
+            stats.put(entry.baseUrl, json);
+        }
+        return stats;
+    }
+
+    /**
+     * Stops the refresh thread. Called when the plugin bundle is stopped.
+     */
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Gets the model names of a list of endpoints as select box options
+     * 
+     * @param models       The models, as returned by getModels
+     * @param defaultModel A model always offered, even if no node lists it
+     * @return The options as a JSON array of value/label objects
+     * @throws JSONException If the options cannot be built
+     */
+    public static JSONArray toOptions(Map<String, String> models, String defaultModel) throws JSONException {
+        Map<String, String> options = new TreeMap<>(models);
+        if (defaultModel != null && !options.containsKey(OllamaNodeBalancer.normalizeModel(defaultModel))) {
+            options.put(defaultModel, defaultModel);
+        }
+
+        JSONArray array = new JSONArray();
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            JSONObject json = new JSONObject();
+            json.put("value", option.getKey());
+            json.put("label", option.getValue());
+            array.put(json);
+        }
+        return array;
+    }
+
+    /**
+     * The cached model list of a single node
+     */
+    private static class Entry {
+
+        private final String baseUrl;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile Map<String, String> models;
+        private volatile long fetchedAt = 0;
+        private volatile long attemptedAt = 0;
+
+        Entry(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+    }
+}
@@ -3,12 +3,17 @@ package org.joget.marketplace;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.joget.commons.util.LogUtil;
 import org.json.JSONArray;
@@ -19,41 +24,354 @@ public class OllamaApiClient {
 
     private static final String DEFAULT_OLLAMA_ENDPOINT = "http://localhost:11434/api/generate";
 
+    // Attempts made when a node cannot be connected to, and the backoff before the second
+    private static final int MAX_CONNECT_ATTEMPTS = 3;
+    private static final long RETRY_BASE_DELAY = 250L;
+
+    // Largest response accepted from a node, in characters, the memory cap of a generation
+    public static final int MAX_RESPONSE_LENGTH = 4 * CodeBlockTokenizer.MAX_INPUT_LENGTH;
+
+    // Characters of a response quoted in log and error messages
+    private static final int LOG_SAMPLE_LENGTH = 2000;
+
     /**
-     * Calls the Ollama API with the given parameters
+     * Calls the Ollama API in streaming mode, relaying each generated token to
+     * the listener as soon as its NDJSON chunk arrives. The text is not kept
+     * here: the listener holds the only copy, so a long answer is not held
+     * twice while it is generated.
      * 
-     * @param message      User message to send to the API
-     * @param apiEndpoint  API endpoint URL (defaults to Ollama local endpoint if
-     *                     null)
-     * @param model        Model name to use (e.g., "llama2")
-     * @param systemPrompt System prompt to set context
-     * @param temperature  Temperature parameter (0.0 to 1.0)
-     * @return The response from the LLM
-     * @throws IOException   If there's an error communicating with the API
-     * @throws JSONException If there's an error parsing the JSON response
+     * @param request  The request parameters
+     * @param listener Receives each token in the order it was generated
+     * @return The metadata of the response, with an empty text
+     * @throws IOException   If there's an error communicating with the API or
+     *                       relaying a token
+     * @throws JSONException If there's an error parsing a streamed chunk
      */
-    public static String callOllamaApi(String message, String apiEndpoint,
-            String model, String systemPrompt, double temperature)
+    public static OllamaResponse streamOllamaApi(OllamaRequest request, TokenListener listener)
             throws IOException, JSONException {
+        applyDefaults(request);
+
+        // A failure to relay a token is the client's, not the node's
+        final boolean[] listenerFailed = { false };
+        TokenListener guardedListener = token -> {
+            try {
+                listener.onToken(token);
+            } catch (IOException | RuntimeException e) {
+                listenerFailed[0] = true;
+                throw e;
+            }
+        };
+        return callWithRetries(request, lease -> streamNode(request, lease, guardedListener), listenerFailed);
+    }
+
+    /**
+     * Makes a call on the node the balancer picks. Failures caused by the node
+     * count towards its circuit breaker, and when the node cannot even be
+     * connected to the call is retried after a jittered backoff, on another
+     * node if there is one. Nothing has been sent or generated at that point,
+     * so the retry is safe.
+     * 
+     * @param request        The request parameters
+     * @param call           Makes the call on a given endpoint
+     * @param listenerFailed Set when relaying a token failed, or null
+     * @return The response of the call
+     * @throws IOException   If the call fails, or no node can take it
+     * @throws JSONException If the response cannot be parsed
+     */
+    private static OllamaResponse callWithRetries(OllamaRequest request, NodeCall call, boolean[] listenerFailed)
+            throws IOException, JSONException {
+        Set<String> tried = new HashSet<>();
+        for (int attempt = 1;; attempt++) {
+            try (OllamaNodeBalancer.Lease lease = OllamaNodeBalancer.getInstance().acquire(request.getApiEndpoint(),
+                    request.getModel(), tried)) {
+                try {
+                    OllamaResponse result = call.call(lease);
+                    lease.recordResult(result);
+                    return result;
+                } catch (IOException e) {
+                    // A cancelled call or a failure to relay a token is the client's, not the node's
+                    boolean clientFailure = (listenerFailed != null && listenerFailed[0])
+                            || e instanceof Cancellation.CancelledException;
+                    if (!clientFailure && isNodeFailure(e)) {
+                        lease.recordFailure();
+                    }
+                    if (clientFailure || !isConnectFailure(e) || attempt >= MAX_CONNECT_ATTEMPTS) {
+                        throw e;
+                    }
+
+                    tried.add(lease.getEndpoint());
+                    LogUtil.warn(OllamaApiClient.class.getName(), "Could not connect to " + lease.getEndpoint()
+                            + " (attempt " + attempt + "), retrying: " + e.getMessage());
+                }
+            }
+            sleepBeforeRetry(attempt);
+            if (request.getCancellation() != null) {
+                request.getCancellation().check();
+            }
+        }
+    }
+
+    private static boolean isConnectFailure(IOException e) {
+        return e instanceof ConnectException || e instanceof NoRouteToHostException
+                || (e instanceof SocketTimeoutException && !(e instanceof OllamaHttpClient.PoolExhaustedException)
+                        && String.valueOf(e.getMessage()).contains("connect timed out"));
+    }
+
+    private static boolean isNodeFailure(IOException e) {
+        // A rejected request or a busy local pool says nothing about the node's health
+        if (e instanceof OllamaHttpClient.PoolExhaustedException) {
+            return false;
+        }
+        return !(e instanceof ApiErrorException) || ((ApiErrorException) e).getStatusCode() >= 500;
+    }
+
+    private static void sleepBeforeRetry(int attempt) throws IOException {
+        // Exponential backoff with jitter so retries from many requests do not arrive together
+        long delay = RETRY_BASE_DELAY << (attempt - 1);
+        long sleep = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        try {
+            Thread.sleep(sleep);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry the Ollama API");
+        }
+    }
+
+    /**
+     * A call on a single endpoint
+     */
+    private interface NodeCall {
+        OllamaResponse call(OllamaNodeBalancer.Lease lease) throws IOException, JSONException;
+    }
+
+    /**
+     * Logs a call without its payload, which carries the conversation and can
+     * hold a long token context; the payload itself is only logged at debug
+     * level
+     * 
+     * @param kind        The kind of call
+     * @param apiEndpoint The endpoint called
+     * @param request     The request
+     * @param payload     The JSON payload sent
+     */
+    private static void logRequest(String kind, String apiEndpoint, OllamaRequest request, String payload) {
+        LogUtil.info(OllamaApiClient.class.getName(), kind + " request to " + apiEndpoint + " with model "
+                + request.getModel() + ", " + payload.length() + " characters");
+        LogUtil.debug(OllamaApiClient.class.getName(), kind + " request payload: " + payload);
+    }
+
+    private static OllamaResponse streamNode(OllamaRequest request, OllamaNodeBalancer.Lease lease,
+            TokenListener listener) throws IOException, JSONException {
+        String apiEndpoint = lease.getEndpoint();
+        JSONObject requestBody = buildRequestBody(request, true);
+        String requestPayload = requestBody.toString();
+        logRequest("Streaming", apiEndpoint, request, requestPayload);
+
+        OllamaHttpClient.Exchange exchange = sendRequest(apiEndpoint, requestPayload, request);
+        lease.recordResponding();
+
+        // Ollama writes one JSON object per line; each carries the next token(s)
+        long length = 0;
+        JSONObject finalChunk = null;
+        try {
+            BufferedReader br = new BufferedReader(
+                    new InputStreamReader(exchange.getInputStream(), StandardCharsets.UTF_8));
+            String chunkLine;
+            while ((chunkLine = br.readLine()) != null) {
+                if (chunkLine.trim().isEmpty()) {
+                    continue;
+                }
+
+                JSONObject chunk;
+                try {
+                    chunk = new JSONObject(chunkLine);
+                } catch (JSONException e) {
+                    String errorMsg = "Failed to parse Ollama stream chunk: " + e.getMessage() + ". Raw chunk: "
+                            + chunkLine;
+                    LogUtil.error(OllamaApiClient.class.getName(), e, errorMsg);
+                    throw new JSONException(errorMsg);
+                }
 
-        if (apiEndpoint == null || apiEndpoint.trim().isEmpty()) {
-            apiEndpoint = DEFAULT_OLLAMA_ENDPOINT;
+                if (chunk.has("error")) {
+                    String errorMsg = "Ollama API error: " + chunk.getString("error");
+                    LogUtil.error(OllamaApiClient.class.getName(), null, errorMsg);
+                    throw new IOException(errorMsg);
+                }
+
+                String token = extractToken(chunk);
+                if (!token.isEmpty()) {
+                    if (length + token.length() > MAX_RESPONSE_LENGTH) {
+                        LogUtil.warn(OllamaApiClient.class.getName(), "Streamed response is longer than "
+                                + MAX_RESPONSE_LENGTH + " characters, stopping");
+                        throw new SpillableBuffer.LimitExceededException(MAX_RESPONSE_LENGTH);
+                    }
+                    length += token.length();
+                    listener.onToken(token);
+                }
+
+                if (chunk.optBoolean("done", false)) {
+                    finalChunk = chunk;
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Drop the connection rather than wait for the rest of an abandoned stream
+            exchange.abort();
+            throw e;
+        } finally {
+            exchange.close();
         }
 
-        if (model == null || model.trim().isEmpty()) {
-            model = "gpt-oss:120b-cloud";
+        if (length == 0) {
+            String errorMsg = "Empty response from Ollama API";
+            LogUtil.error(OllamaApiClient.class.getName(), null, errorMsg);
+            throw new IOException(errorMsg);
         }
 
-        URL url = new URL(apiEndpoint);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setDoOutput(true);
+        OllamaResponse result = new OllamaResponse("");
+        if (finalChunk != null) {
+            readMetadata(finalChunk, result);
+        }
+        return result;
+    }
+
+    /**
+     * Copies the metadata Ollama sends with a completed response
+     * 
+     * @param json   The complete response, or the final chunk of a stream
+     * @param result The response to fill in
+     * @throws JSONException If the metadata is malformed
+     */
+    private static void readMetadata(JSONObject json, OllamaResponse result) throws JSONException {
+        JSONArray context = json.optJSONArray("context");
+        if (context != null) {
+            result.setContext(ContextCache.toTokens(context));
+        }
+        result.setEvalCount(json.optLong("eval_count"));
+        result.setEvalDuration(json.optLong("eval_duration"));
+    }
 
-        // Create the request body
+    /**
+     * Receives tokens from a streaming Ollama call
+     */
+    public interface TokenListener {
+        /**
+         * Called for every non-empty token in generation order
+         * 
+         * @param token The generated text fragment
+         * @throws IOException If the token cannot be relayed to the client
+         */
+        void onToken(String token) throws IOException;
+    }
+
+    /**
+     * Extracts the generated text from a streamed chunk. /api/generate chunks
+     * carry it in "response", /api/chat chunks in "message.content".
+     * 
+     * @param chunk A single NDJSON chunk from Ollama
+     * @return The token text, or an empty string if the chunk has none
+     */
+    private static String extractToken(JSONObject chunk) {
+        if (chunk.has("response")) {
+            return chunk.optString("response", "");
+        }
+        JSONObject chatMessage = chunk.optJSONObject("message");
+        if (chatMessage != null) {
+            return chatMessage.optString("content", "");
+        }
+        return "";
+    }
+
+    /**
+     * Fills in the default endpoint and model when the request leaves them
+     * empty
+     * 
+     * @param request The request to complete
+     */
+    public static void applyDefaults(OllamaRequest request) {
+        if (request.getApiEndpoint() == null || request.getApiEndpoint().trim().isEmpty()) {
+            request.setApiEndpoint(DEFAULT_OLLAMA_ENDPOINT);
+        }
+
+        if (request.getModel() == null || request.getModel().trim().isEmpty()) {
+            request.setModel("gpt-oss:120b-cloud");
+        }
+    }
+
+    /**
+     * Builds the request body shared by the streaming and non-streaming calls.
+     * Requests to /api/chat carry the system prompt, history and message as
+     * messages[]; requests to /api/generate carry a prompt/system pair.
+     * 
+     * @param request The request parameters
+     * @param stream  Whether Ollama should stream the response
+     * @return The JSON request body
+     * @throws JSONException If the body cannot be built
+     */
+    private static JSONObject buildRequestBody(OllamaRequest request, boolean stream) throws JSONException {
         JSONObject requestBody = new JSONObject();
-        requestBody.put("model", model);
-        requestBody.put("prompt", message);
+        requestBody.put("model", request.getModel());
+
+        String enhancedSystemPrompt = buildSystemPrompt(request.getSystemPrompt(), request.isProjectOutput());
+        if (request.isChatEndpoint()) {
+            JSONArray messages = new JSONArray();
+            messages.put(new JSONObject().put("role", "system").put("content", enhancedSystemPrompt));
+
+            JSONArray history = request.getHistory();
+            if (history != null) {
+                for (int i = 0; i < history.length(); i++) {
+                    messages.put(history.getJSONObject(i));
+                }
+            }
+
+            messages.put(new JSONObject().put("role", "user").put("content", request.getMessage()));
+            requestBody.put("messages", messages);
+        } else {
+            requestBody.put("prompt", request.getMessage());
+            requestBody.put("system", enhancedSystemPrompt);
+
+            // Continue from the previous turn's context so it isn't processed again
+            if (request.getContext() != null) {
+                requestBody.put("context", new JSONArray(request.getContext()));
+            }
+        }
+
+        // Add temperature; Ollama reads sampling parameters from options
+        requestBody.put("temperature", request.getTemperature());
+        requestBody.put("options", new JSONObject().put("temperature", request.getTemperature()));
+
+        // Streaming requests receive the response as newline-delimited JSON chunks
+        requestBody.put("stream", stream);
+
+        // Constrain the answer to the JSON project in project output mode
+        if (request.isProjectOutput()) {
+            requestBody.put("format", new JSONObject(ProjectJsonParser.SCHEMA));
+        }
+
+        return requestBody;
+    }
+
+    /**
+     * Builds the effective system prompt: the configured prompt followed by
+     * the code layout instructions the zip extraction relies on. In project
+     * output mode the prompt describes the JSON project instead of the code
+     * layout of a markdown answer.
+     * 
+     * @param systemPrompt  The configured system prompt
+     * @param projectOutput Whether the answer is a JSON project
+     * @return The system prompt sent to the model
+     */
+    public static String buildSystemPrompt(String systemPrompt, boolean projectOutput) {
+        if (projectOutput) {
+            return systemPrompt +
+                    "\n\nIMPORTANT INSTRUCTION FOR RESPONSES:\n" +
+                    "Answer with a single JSON object and nothing else. Put your explanation, in markdown, in \"" +
+                    ProjectJsonParser.SUMMARY + "\". Put every file of the project in \"" + ProjectJsonParser.FILES +
+                    "\", each as an object with its \"" + ProjectJsonParser.PATH +
+                    "\" relative to the project root directory, using forward slashes, and its complete \"" +
+                    ProjectJsonParser.CONTENT + "\". Leave \"" + ProjectJsonParser.FILES +
+                    "\" empty when the answer has no code.";
+        }
 
         // Enhance system prompt to request project structure in JSON format for code-related prompts
         String enhancedSystemPrompt = systemPrompt + 
@@ -69,184 +387,110 @@ public class OllamaApiClient {
                 "This hierarchical structure should represent the complete project directory layout with all files. " +
                 "Files are represented as keys with null values, and directories are represented as nested objects. " +
                 "This is REQUIRED for ALL code-related responses without exception.";
-        requestBody.put("system", enhancedSystemPrompt);
-
-        // Add temperature
-        requestBody.put("temperature", temperature);
-
-        // Set stream to false to get the complete response at once
-        requestBody.put("stream", false);
+        return enhancedSystemPrompt;
+    }
 
-        // Log the request payload
-        String requestPayload = requestBody.toString();
-        LogUtil.info(OllamaApiClient.class.getName(), "Non-streaming request payload: " + requestPayload);
+    /**
+     * Sends a POST request to the API through the shared connection pool and
+     * fails on error status codes
+     * 
+     * @param apiEndpoint    API endpoint URL
+     * @param requestPayload JSON payload to send
+     * @param request        The request, giving the cancellation and the
+     *                       timeouts of the call
+     * @return The open exchange, ready for reading the response body
+     * @throws IOException If the request fails or the API returns an error
+     */
+    private static OllamaHttpClient.Exchange sendRequest(String apiEndpoint, String requestPayload,
+            OllamaRequest request) throws IOException {
+        OllamaHttpClient.Exchange exchange = OllamaHttpClient.getInstance().open(apiEndpoint, "POST",
+                "application/json", requestPayload.getBytes(StandardCharsets.UTF_8), request.getCancellation(),
+                request.getTimeouts());
+        checkResponse(exchange, "Ollama API error");
+        return exchange;
+    }
 
-        // Send the request
-        try (OutputStream os = connection.getOutputStream()) {
-            byte[] input = requestPayload.getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
+    /**
+     * Checks the status code of an exchange. Error responses are read, the
+     * exchange is released and an IOException carrying the error body is
+     * thrown.
+     * 
+     * @param exchange    The exchange to check
+     * @param errorPrefix Prefix for the error message
+     * @throws IOException If the API returned an error status
+     */
+    private static void checkResponse(OllamaHttpClient.Exchange exchange, String errorPrefix) throws IOException {
+        int responseCode;
+        try {
+            responseCode = exchange.getResponseCode();
+        } catch (IOException e) {
+            exchange.abort();
+            throw e;
         }
 
-        // Check if the request was successful
-        int responseCode = connection.getResponseCode();
         if (responseCode >= 400) {
             StringBuilder errorResponse = new StringBuilder();
             try (BufferedReader br = new BufferedReader(
                     new InputStreamReader(
-                            connection.getErrorStream() != null ? connection.getErrorStream()
+                            exchange.getErrorStream() != null ? exchange.getErrorStream()
                                     : new java.io.ByteArrayInputStream(new byte[0]),
                             StandardCharsets.UTF_8))) {
                 String responseLine;
                 while ((responseLine = br.readLine()) != null) {
                     errorResponse.append(responseLine.trim());
                 }
+            } finally {
+                exchange.close();
             }
 
-            String errorMessage = "Ollama API error (code " + responseCode + ")";
+            String errorMessage = errorPrefix + " (code " + responseCode + ")";
             if (errorResponse.length() > 0) {
                 errorMessage += ": " + errorResponse.toString();
             }
 
             LogUtil.error(OllamaApiClient.class.getName(), null, errorMessage);
-            throw new IOException(errorMessage);
-        }
-
-        // Read the response
-        StringBuilder response = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(
-                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
-            String responseLine;
-            while ((responseLine = br.readLine()) != null) {
-                response.append(responseLine.trim());
-            }
-        }
-
-        // Parse the response
-        try {
-            String responseStr = response.toString();
-            LogUtil.debug(OllamaApiClient.class.getName(), "Raw Ollama response: " + responseStr);
-
-            // Check if the response is empty
-            if (responseStr == null || responseStr.trim().isEmpty()) {
-                String errorMsg = "Empty response from Ollama API";
-                LogUtil.error(OllamaApiClient.class.getName(), null, errorMsg);
-                throw new IOException(errorMsg);
-            }
-
-            try {
-                JSONObject jsonResponse = new JSONObject(responseStr);
-                if (jsonResponse.has("response")) {
-                    return jsonResponse.getString("response");
-                } else if (jsonResponse.has("error")) {
-                    String errorMsg = "Ollama API error: " + jsonResponse.getString("error");
-                    LogUtil.error(OllamaApiClient.class.getName(), null, errorMsg);
-                    throw new IOException(errorMsg);
-                } else {
-                    String errorMsg = "Unexpected response format from Ollama API: " + responseStr;
-                    LogUtil.error(OllamaApiClient.class.getName(), null, errorMsg);
-                    throw new IOException(errorMsg);
-                }
-            } catch (JSONException e) {
-                String errorMsg = "Failed to parse Ollama API response: " + e.getMessage() + ". Raw response: "
-                        + responseStr;
-                LogUtil.error(OllamaApiClient.class.getName(), e, errorMsg);
-                throw new JSONException(errorMsg);
-            }
-        } catch (Exception e) {
-            if (!(e instanceof JSONException) && !(e instanceof IOException)) {
-                String errorMsg = "Unexpected error processing Ollama API response: " + e.getMessage();
-                LogUtil.error(OllamaApiClient.class.getName(), e, errorMsg);
-                throw new IOException(errorMsg);
-            } else {
-                throw e;
-            }
+            throw new ApiErrorException(errorMessage, responseCode);
         }
     }
 
-    // Streaming functionality has been removed
-
     /**
-     * Gets a list of available models from the Ollama API
+     * Gets the models offered by the nodes of an endpoint setting. The lists
+     * come from the shared {@link ModelCatalog}; only nodes that have not been
+     * read yet are called.
      * 
      * @param apiEndpoint API endpoint URL (defaults to Ollama local endpoint if
      *                    null)
      * @return A map of model names and their descriptions
-     * @throws IOException   If there's an error communicating with the API
-     * @throws JSONException If there's an error parsing the JSON response
+     * @throws IOException If none of the nodes could be read
      */
-    public static Map<String, String> getAvailableModels(String apiEndpoint)
-            throws IOException, JSONException {
-
-        if (apiEndpoint == null || apiEndpoint.trim().isEmpty()) {
-            apiEndpoint = "http://localhost:11434/api/tags";
-        } else {
-            // Convert generate endpoint to tags endpoint if needed
-            if (apiEndpoint.endsWith("/generate")) {
-                apiEndpoint = apiEndpoint.substring(0, apiEndpoint.lastIndexOf("/")) + "/tags";
-            } else if (!apiEndpoint.endsWith("/tags")) {
-                // Ensure the endpoint ends with /tags
-                if (apiEndpoint.endsWith("/")) {
-                    apiEndpoint += "tags";
-                } else {
-                    apiEndpoint += "/tags";
-                }
-            }
+    public static Map<String, String> getAvailableModels(String apiEndpoint) throws IOException {
+        if (OllamaNodeBalancer.parseEndpoints(apiEndpoint).isEmpty()) {
+            apiEndpoint = "http://localhost:11434/api/generate";
         }
 
-        URL url = new URL(apiEndpoint);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("GET");
+        Map<String, String> models = ModelCatalog.getInstance().getModels(apiEndpoint, true);
+        if (models.isEmpty() && !ModelCatalog.getInstance().isKnown(apiEndpoint)) {
+            throw new IOException("Could not read the models of " + apiEndpoint);
+        }
+        return models;
+    }
 
-        // Check if the request was successful
-        int responseCode = connection.getResponseCode();
-        if (responseCode >= 400) {
-            StringBuilder errorResponse = new StringBuilder();
-            try (BufferedReader br = new BufferedReader(
-                    new InputStreamReader(
-                            connection.getErrorStream() != null ? connection.getErrorStream()
-                                    : new java.io.ByteArrayInputStream(new byte[0]),
-                            StandardCharsets.UTF_8))) {
-                String responseLine;
-                while ((responseLine = br.readLine()) != null) {
-                    errorResponse.append(responseLine.trim());
-                }
-            }
+    /**
+     * Thrown when Ollama answers with an HTTP error status
+     */
+    public static class ApiErrorException extends IOException {
 
-            String errorMessage = "Ollama models API error (code " + responseCode + ")";
-            if (errorResponse.length() > 0) {
-                errorMessage += ": " + errorResponse.toString();
-            }
+        private static final long serialVersionUID = 1L;
 
-            LogUtil.error(OllamaApiClient.class.getName(), null, errorMessage);
-            throw new IOException(errorMessage);
-        }
+        private final int statusCode;
 
-        // Read the response
-        StringBuilder response = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(
-                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
-            String responseLine;
-            while ((responseLine = br.readLine()) != null) {
-                response.append(responseLine.trim());
-            }
+        public ApiErrorException(String message, int statusCode) {
+            super(message);
+            this.statusCode = statusCode;
         }
 
-        // Parse the response
-        Map<String, String> models = new HashMap<>();
-        JSONObject jsonResponse = new JSONObject(response.toString());
-        if (jsonResponse.has("models")) {
-            JSONArray modelsArray = jsonResponse.getJSONArray("models");
-            for (int i = 0; i < modelsArray.length(); i++) {
-                JSONObject model = modelsArray.getJSONObject(i);
-                String name = model.getString("name");
-                String description = name;
-                if (model.has("details") && model.getJSONObject("details").has("parameter_size")) {
-                    description += " (" + model.getJSONObject("details").getString("parameter_size") + ")";
-                }
-                models.put(name, description);
-            }
+        public int getStatusCode() {
+            return statusCode;
         }
-
-        return models;
     }
-}
\ No newline at end of file
+}
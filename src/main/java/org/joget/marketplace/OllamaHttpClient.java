@@ -0,0 +1,625 @@
+package org.joget.marketplace;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joget.commons.util.LogUtil;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Shared HTTP client for talking to Ollama nodes.
+ * 
+ * Each endpoint (scheme, host and port) gets a bounded number of concurrent
+ * connections, the lowest number any menu calling the endpoint asked for.
+ * Responses are always drained and closed so the JDK keep-alive cache can hand
+ * the socket to the next request for the same endpoint instead of opening a
+ * new one. Every exchange is bounded by a connect timeout, a read timeout and
+ * a total request deadline, which the caller passes with the request, after
+ * which the connection is torn down. An exchange opened with a
+ * {@link Cancellation} is torn down the same way when its work is cancelled,
+ * and its deadline is brought forward to the deadline of the work.
+ */
+public class OllamaHttpClient {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    public static final int DEFAULT_READ_TIMEOUT = 300000;
+    public static final int DEFAULT_REQUEST_TIMEOUT = 600000;
+    public static final int DEFAULT_MAX_CONNECTIONS = 8;
+
+    // Bytes read from an unconsumed body before giving up on reusing its socket
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static final OllamaHttpClient INSTANCE = new OllamaHttpClient();
+
+    private final Map<String, EndpointPool> pools = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService deadlineTimer;
+
+    private OllamaHttpClient() {
+        deadlineTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ollama-http-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the client shared by all instances of the plugin
+     * 
+     * @return The shared client
+     */
+    public static OllamaHttpClient getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets the number of concurrent connections a menu allows to an endpoint.
+     * The pool of the endpoint is resized in place when the lowest number any
+     * menu allows changes.
+     * 
+     * @param endpointUrl    A URL of the endpoint
+     * @param menuKey        The key of the menu
+     * @param maxConnections Concurrent connections allowed, or 0 or less for
+     *                       the default
+     * @throws IOException If the URL is malformed
+     */
+    public void configure(String endpointUrl, String menuKey, int maxConnections) throws IOException {
+        EndpointPool pool = getPool(new URL(endpointUrl));
+        if (pool.maxConnections.set(menuKey, maxConnections)) {
+            pool.resize(pool.maxConnections.get());
+        }
+    }
+
+    /**
+     * Opens an exchange with the given URL, sending the body if one is given.
+     * The caller must close the returned exchange to release the connection.
+     * 
+     * @param urlString   The URL to call
+     * @param method      The HTTP method
+     * @param contentType The request content type, or null when there is no
+     *                    body
+     * @param body        The request body, or null
+     * @return The open exchange
+     * @throws IOException If no connection can be leased in time or the
+     *                     request cannot be sent
+     */
+    public Exchange open(String urlString, String method, String contentType, byte[] body) throws IOException {
+        return open(urlString, method, contentType, body, null, Timeouts.DEFAULT);
+    }
+
+    /**
+     * Opens an exchange that can be cancelled and that ends by the deadline of
+     * the work it belongs to, when that comes before the request deadline
+     * 
+     * @param urlString    The URL to call
+     * @param method       The HTTP method
+     * @param contentType  The request content type, or null when there is no
+     *                     body
+     * @param body         The request body, or null
+     * @param cancellation The cancellation of the work, or null
+     * @param timeouts     The timeouts of the exchange
+     * @return The open exchange
+     * @throws IOException If the work is cancelled or past its deadline, no
+     *                     connection can be leased in time or the request
+     *                     cannot be sent
+     */
+    public Exchange open(String urlString, String method, String contentType, byte[] body,
+            Cancellation cancellation, Timeouts timeouts) throws IOException {
+        int leaseTimeout = timeouts.getConnectTimeout();
+        int timeout = timeouts.getRequestTimeout();
+        if (cancellation != null) {
+            cancellation.check();
+            long remaining = cancellation.getRemaining();
+            leaseTimeout = (int) Math.min(leaseTimeout, remaining);
+            timeout = (int) Math.min(timeout, remaining);
+        }
+
+        URL url = new URL(urlString);
+        EndpointPool pool = getPool(url);
+        pool.acquire(leaseTimeout);
+
+        Exchange exchange = null;
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod(method);
+            connection.setConnectTimeout(timeouts.getConnectTimeout());
+            connection.setReadTimeout(timeouts.getReadTimeout());
+            connection.setUseCaches(false);
+
+            exchange = new Exchange(connection, pool, cancellation);
+            exchange.scheduleDeadline(timeout);
+            if (cancellation != null && !cancellation.register(exchange)) {
+                throw new Cancellation.CancelledException(cancellation.getReason());
+            }
+
+            if (body != null) {
+                connection.setDoOutput(true);
+                if (contentType != null) {
+                    connection.setRequestProperty("Content-Type", contentType);
+                }
+                connection.setFixedLengthStreamingMode(body.length);
+                try (OutputStream os = connection.getOutputStream()) {
+                    os.write(body, 0, body.length);
+                }
+            }
+            return exchange;
+        } catch (IOException e) {
+            if (exchange == null) {
+                pool.release(false);
+                throw e;
+            }
+            IOException failure = exchange.translate(e);
+            exchange.abort();
+            throw failure;
+        } catch (RuntimeException e) {
+            if (exchange == null) {
+                pool.release(false);
+            } else {
+                exchange.abort();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a JSON object with a GET request
+     * 
+     * @param url      The URL to read
+     * @param timeouts The timeouts of the exchange
+     * @return The object read
+     * @throws IOException   If the node cannot be reached or does not answer
+     *                       with HTTP 200
+     * @throws JSONException If the response cannot be parsed
+     */
+    JSONObject readJson(String url, Timeouts timeouts) throws IOException, JSONException {
+        Exchange exchange = open(url, "GET", null, null, null, timeouts);
+        StringBuilder response = new StringBuilder();
+        try {
+            if (exchange.getResponseCode() != 200) {
+                throw new IOException("HTTP " + exchange.getResponseCode() + " from " + url);
+            }
+            BufferedReader br = new BufferedReader(
+                    new InputStreamReader(exchange.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = br.readLine()) != null) {
+                response.append(line);
+            }
+        } catch (IOException | RuntimeException e) {
+            exchange.abort();
+            throw e;
+        } finally {
+            exchange.close();
+        }
+        return new JSONObject(response.toString());
+    }
+
+    /**
+     * Gets pool statistics for every endpoint used so far
+     * 
+     * @return A JSON object keyed by endpoint
+     * @throws JSONException If the statistics cannot be built
+     */
+    public JSONObject getStatistics() throws JSONException {
+        JSONObject stats = new JSONObject();
+        JSONObject endpoints = new JSONObject();
+        for (Map.Entry<String, EndpointPool> entry : pools.entrySet()) {
+            endpoints.put(entry.getKey(), entry.getValue().toJson());
+        }
+        stats.put("endpoints", endpoints);
+        return stats;
+    }
+
+    /**
+     * Stops the deadline timer. Called when the plugin bundle is stopped.
+     */
+    public void shutdown() {
+        deadlineTimer.shutdownNow();
+        pools.clear();
+    }
+
+    private EndpointPool getPool(URL url) {
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        String key = url.getProtocol() + "://" + url.getHost() + ":" + port;
+        return pools.computeIfAbsent(key, k -> new EndpointPool(DEFAULT_MAX_CONNECTIONS));
+    }
+
+    /**
+     * The timeouts of an exchange, which come from the settings of the menu
+     * sending the request
+     */
+    public static class Timeouts {
+
+        public static final Timeouts DEFAULT = new Timeouts(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT,
+                DEFAULT_REQUEST_TIMEOUT);
+
+        // Health and model list reads, short so a node that never answers cannot hold the caller for long
+        public static final Timeouts PROBE = new Timeouts(2000, 5000, 5000);
+
+        private final int connectTimeout;
+        private final int readTimeout;
+        private final int requestTimeout;
+
+        /**
+         * Creates timeouts, using the default for any that is 0 or less
+         * 
+         * @param connectTimeout Milliseconds allowed to establish a connection
+         *                       or lease one from the pool
+         * @param readTimeout    Milliseconds allowed between two reads
+         * @param requestTimeout Milliseconds allowed for the whole exchange
+         */
+        public Timeouts(int connectTimeout, int readTimeout, int requestTimeout) {
+            this.connectTimeout = connectTimeout > 0 ? connectTimeout : DEFAULT_CONNECT_TIMEOUT;
+            this.readTimeout = readTimeout > 0 ? readTimeout : DEFAULT_READ_TIMEOUT;
+            this.requestTimeout = requestTimeout > 0 ? requestTimeout : DEFAULT_REQUEST_TIMEOUT;
+        }
+
+        public int getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public int getReadTimeout() {
+            return readTimeout;
+        }
+
+        public int getRequestTimeout() {
+            return requestTimeout;
+        }
+    }
+
+    /**
+     * A single request/response exchange holding one leased connection
+     */
+    public class Exchange implements AutoCloseable {
+
+        private final HttpURLConnection connection;
+        private final EndpointPool pool;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private final Cancellation cancellation;
+        private volatile boolean deadlineExceeded = false;
+        private volatile boolean cancelled = false;
+        private ScheduledFuture<?> deadline;
+        private InputStream inputStream;
+        private InputStream errorStream;
+
+        private Exchange(HttpURLConnection connection, EndpointPool pool, Cancellation cancellation) {
+            this.connection = connection;
+            this.pool = pool;
+            this.cancellation = cancellation;
+        }
+
+        private void scheduleDeadline(int timeout) {
+            deadline = deadlineTimer.schedule(() -> {
+                deadlineExceeded = true;
+                pool.timeouts.incrementAndGet();
+                LogUtil.warn(OllamaHttpClient.class.getName(),
+                        "Request deadline of " + timeout + " ms exceeded for " + connection.getURL());
+                connection.disconnect();
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Gets the HTTP status code, waiting for the response headers if needed
+         * 
+         * @return The status code
+         * @throws IOException If the response cannot be read
+         */
+        public int getResponseCode() throws IOException {
+            try {
+                return connection.getResponseCode();
+            } catch (IOException e) {
+                throw translate(e);
+            }
+        }
+
+        /**
+         * Gets the response body. Reads past the request deadline fail with a
+         * SocketTimeoutException.
+         * 
+         * @return The response body stream
+         * @throws IOException If the body cannot be opened
+         */
+        public InputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                try {
+                    inputStream = new BodyInputStream(connection.getInputStream());
+                } catch (IOException e) {
+                    throw translate(e);
+                }
+            }
+            return inputStream;
+        }
+
+        /**
+         * Gets the error body of a failed response
+         * 
+         * @return The error stream, or null if the server sent none
+         */
+        public InputStream getErrorStream() {
+            if (errorStream == null && connection.getErrorStream() != null) {
+                errorStream = new BodyInputStream(connection.getErrorStream());
+            }
+            return errorStream;
+        }
+
+        /**
+         * Gets the underlying connection
+         * 
+         * @return The connection
+         */
+        public HttpURLConnection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Tears the connection down without trying to reuse it
+         */
+        public void abort() {
+            connection.disconnect();
+            finish(false);
+        }
+
+        /**
+         * Tears the connection down from another thread, so the thread using
+         * the exchange fails at once and Ollama sees the client go away. The
+         * thread using the exchange still closes it.
+         */
+        void cancel() {
+            cancelled = true;
+            pool.cancellations.incrementAndGet();
+            LogUtil.info(OllamaHttpClient.class.getName(), "Cancelling request to " + connection.getURL());
+            connection.disconnect();
+        }
+
+        /**
+         * Drains what is left of the response so the socket can go back to the
+         * keep-alive cache, then releases the pool slot
+         */
+        @Override
+        public void close() {
+            if (released.get()) {
+                return;
+            }
+
+            BodyInputStream body = (BodyInputStream) inputStream;
+            if (body == null && errorStream == null) {
+                try {
+                    body = (BodyInputStream) getInputStream();
+                } catch (IOException e) {
+                    body = (BodyInputStream) getErrorStream();
+                }
+            } else if (body == null) {
+                body = (BodyInputStream) errorStream;
+            }
+
+            boolean reusable = !deadlineExceeded && !cancelled && body != null && body.closeForReuse();
+            if (!reusable) {
+                connection.disconnect();
+            }
+            finish(reusable);
+        }
+
+        private void finish(boolean reusable) {
+            if (released.compareAndSet(false, true)) {
+                if (deadline != null) {
+                    deadline.cancel(false);
+                }
+                if (cancellation != null) {
+                    cancellation.unregister(this);
+                }
+                pool.release(reusable);
+            }
+        }
+
+        private IOException translate(Exception e) {
+            if (cancelled) {
+                IOException cancel = new Cancellation.CancelledException(cancellation.getReason());
+                cancel.initCause(e);
+                return cancel;
+            }
+            if (deadlineExceeded) {
+                SocketTimeoutException timeout = new SocketTimeoutException(
+                        "Ollama request deadline exceeded for " + connection.getURL());
+                timeout.initCause(e);
+                return timeout;
+            }
+            return e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+        }
+
+        /**
+         * Response body that reports reads failing because the deadline closed
+         * the socket as timeouts, and that drains itself on close so the
+         * socket stays reusable
+         */
+        private class BodyInputStream extends FilterInputStream {
+
+            private boolean closed = false;
+            private boolean reusable = false;
+
+            BodyInputStream(InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                try {
+                    return super.read();
+                } catch (IOException e) {
+                    throw translate(e);
+                }
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                try {
+                    return super.read(b, off, len);
+                } catch (IOException e) {
+                    throw translate(e);
+                }
+            }
+
+            @Override
+            public void close() {
+                closeForReuse();
+            }
+
+            /**
+             * Reads whatever is left of the body, within a small limit, and
+             * closes it
+             * 
+             * @return true if the body was read to the end, leaving the socket
+             *         fit for reuse
+             */
+            boolean closeForReuse() {
+                if (closed) {
+                    return reusable;
+                }
+                closed = true;
+
+                try {
+                    byte[] buffer = new byte[4096];
+                    int total = 0;
+                    int read;
+                    reusable = true;
+                    while ((read = in.read(buffer)) != -1) {
+                        total += read;
+                        if (total > MAX_DRAIN_BYTES) {
+                            reusable = false;
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                    reusable = false;
+                }
+
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    reusable = false;
+                }
+                return reusable;
+            }
+        }
+    }
+
+    /**
+     * Connection slots and counters for a single endpoint
+     */
+    private static class EndpointPool {
+
+        private final ResizableSemaphore permits;
+        private final EndpointLimit maxConnections = new EndpointLimit(DEFAULT_MAX_CONNECTIONS);
+        private volatile int capacity;
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger peakActive = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong keptAlive = new AtomicLong();
+        private final AtomicLong discarded = new AtomicLong();
+        private final AtomicLong leaseTimeouts = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong cancellations = new AtomicLong();
+
+        EndpointPool(int capacity) {
+            this.capacity = capacity;
+            this.permits = new ResizableSemaphore(capacity);
+        }
+
+        void acquire(int timeout) throws IOException {
+            try {
+                if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    leaseTimeouts.incrementAndGet();
+                    throw new PoolExhaustedException(
+                            "Timed out waiting for a free Ollama connection (" + capacity + " in use)");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a free Ollama connection", e);
+            }
+
+            requests.incrementAndGet();
+            int now = active.incrementAndGet();
+            peakActive.accumulateAndGet(now, Math::max);
+        }
+
+        void release(boolean reusable) {
+            if (reusable) {
+                keptAlive.incrementAndGet();
+            } else {
+                discarded.incrementAndGet();
+            }
+            active.decrementAndGet();
+            permits.release();
+        }
+
+        synchronized void resize(int newCapacity) {
+            int delta = newCapacity - capacity;
+            if (delta > 0) {
+                permits.release(delta);
+            } else if (delta < 0) {
+                permits.reducePermits(-delta);
+            }
+            capacity = newCapacity;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("capacity", capacity);
+            json.put("active", active.get());
+            json.put("peakActive", peakActive.get());
+            json.put("requests", requests.get());
+            json.put("keptAlive", keptAlive.get());
+            json.put("discarded", discarded.get());
+            json.put("leaseTimeouts", leaseTimeouts.get());
+            json.put("deadlineTimeouts", timeouts.get());
+            json.put("cancellations", cancellations.get());
+            return json;
+        }
+    }
+
+    /**
+     * Thrown when every pooled connection to an endpoint stays busy for longer
+     * than the connect timeout
+     */
+    public static class PoolExhaustedException extends SocketTimeoutException {
+
+        private static final long serialVersionUID = 1L;
+
+        public PoolExhaustedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Semaphore that exposes reducePermits so pools can shrink in place
+     */
+    private static class ResizableSemaphore extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
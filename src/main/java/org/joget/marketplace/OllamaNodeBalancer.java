@@ -0,0 +1,534 @@
+package org.joget.marketplace;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joget.commons.util.LogUtil;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Spreads requests over a pool of Ollama nodes.
+ * 
+ * The API endpoint setting may list several endpoint URLs separated by commas
+ * or new lines. Each call goes to the node expected to finish it first: the
+ * requests already outstanding on the node, times the typical response
+ * length, divided by the tokens per second the node has been measured at.
+ * Nodes that have the model loaded (from /api/ps) are favoured over nodes that
+ * would have to load it first, and nodes whose /api/tags show they do not
+ * have the model are only used when no other node is left.
+ * 
+ * A background prober checks every node in use at a fixed interval and keeps
+ * its reachability, latency and model lists. Each node has a circuit breaker:
+ * nodes that keep failing, or that the prober cannot reach, are skipped, and
+ * when no node is left calls fail straight away.
+ */
+public class OllamaNodeBalancer {
+
+    // How often the nodes in use are probed, and for how long after their last use
+    private static final long PROBE_INTERVAL = 15000L;
+    private static final long PROBE_IDLE_CUTOFF = 10 * 60 * 1000L;
+
+    // Seconds added to the estimate of a node that has to load the model first
+    private static final double MODEL_LOAD_PENALTY = 10.0;
+
+    // Assumed speed and response length until measurements come in
+    private static final double DEFAULT_TOKENS_PER_SECOND = 20.0;
+    private static final double DEFAULT_RESPONSE_TOKENS = 500.0;
+
+    private static final double SMOOTHING = 0.3;
+
+    private static final OllamaNodeBalancer INSTANCE = new OllamaNodeBalancer();
+
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+    private final AtomicInteger rotation = new AtomicInteger();
+    private final ScheduledExecutorService prober;
+
+    private OllamaNodeBalancer() {
+        prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ollama-health-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        prober.scheduleWithFixedDelay(this::probeNodesInUse, PROBE_INTERVAL, PROBE_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the balancer shared by all instances of the plugin
+     * 
+     * @return The shared balancer
+     */
+    public static OllamaNodeBalancer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Splits the API endpoint setting into the endpoint URLs it lists
+     * 
+     * @param apiEndpoint One or more endpoint URLs separated by commas or
+     *                    whitespace
+     * @return The endpoint URLs, empty if none is set
+     */
+    public static List<String> parseEndpoints(String apiEndpoint) {
+        List<String> endpoints = new ArrayList<>();
+        if (apiEndpoint != null) {
+            for (String endpoint : apiEndpoint.split("[,\\s]+")) {
+                if (!endpoint.isEmpty()) {
+                    endpoints.add(endpoint);
+                }
+            }
+        }
+        return endpoints;
+    }
+
+    /**
+     * Gets the base URL of an endpoint, the part before /api/
+     * 
+     * @param endpoint The endpoint URL
+     * @return The base URL of the Ollama node
+     */
+    public static String getBaseUrl(String endpoint) {
+        String trimmed = endpoint.trim().replaceAll("/+$", "");
+        int apiIndex = trimmed.indexOf("/api/");
+        if (apiIndex >= 0) {
+            return trimmed.substring(0, apiIndex);
+        }
+        return trimmed.endsWith("/api") ? trimmed.substring(0, trimmed.length() - 4) : trimmed;
+    }
+
+    /**
+     * Picks the node for a call and counts the call as outstanding on it until
+     * the lease is closed
+     * 
+     * @param apiEndpoint The API endpoint setting
+     * @param model       The model the call uses
+     * @return The lease of the chosen node
+     * @throws NodeUnavailableException If the circuit breakers of all nodes
+     *                                  are open
+     */
+    public Lease acquire(String apiEndpoint, String model) throws NodeUnavailableException {
+        return acquire(apiEndpoint, model, Collections.<String>emptySet());
+    }
+
+    /**
+     * Picks the node for a call, avoiding nodes that already failed it unless
+     * no other node is left
+     * 
+     * @param apiEndpoint The API endpoint setting
+     * @param model       The model the call uses
+     * @param tried       The endpoints already tried for this call
+     * @return The lease of the chosen node
+     * @throws NodeUnavailableException If the circuit breakers of all nodes
+     *                                  are open
+     */
+    public Lease acquire(String apiEndpoint, String model, Set<String> tried) throws NodeUnavailableException {
+        List<String> endpoints = parseEndpoints(apiEndpoint);
+        List<Node> candidates = new ArrayList<>(endpoints.size());
+        for (String endpoint : endpoints) {
+            Node node = getNode(endpoint);
+            node.lastUsedAt = System.currentTimeMillis();
+            candidates.add(node);
+            if (endpoints.size() > 1 && node.probedAt == 0) {
+                // Learn the models of a node the first time it is used
+                scheduleProbe(node);
+            }
+        }
+
+        // A claim can lose a race for a half-open breaker's trial call, so pick again
+        while (true) {
+            int chosen = choose(endpoints, candidates, model, tried);
+            if (chosen < 0) {
+                chosen = choose(endpoints, candidates, model, Collections.<String>emptySet());
+            }
+            if (chosen < 0) {
+                throw new NodeUnavailableException(endpoints.size(), getRetryAfter(candidates));
+            }
+            if (candidates.get(chosen).breaker.tryAcquire()) {
+                return new Lease(candidates.get(chosen), endpoints.get(chosen), model);
+            }
+        }
+    }
+
+    private int choose(List<String> endpoints, List<Node> candidates, String model, Set<String> tried) {
+        // Start from a rotating offset so equally good nodes take turns
+        int offset = Math.floorMod(rotation.getAndIncrement(), endpoints.size());
+        double fallbackSpeed = getAverageSpeed(candidates);
+        int chosen = -1;
+        double bestCost = Double.MAX_VALUE;
+        boolean bestHasModel = false;
+        for (int i = 0; i < endpoints.size(); i++) {
+            int index = (offset + i) % endpoints.size();
+            Node node = candidates.get(index);
+            if (tried.contains(endpoints.get(index)) || !node.breaker.isAvailable()) {
+                continue;
+            }
+            boolean hasModel = node.mayHaveModel(model);
+            double cost = node.estimateCompletion(model, fallbackSpeed);
+            if (chosen < 0 || (hasModel && !bestHasModel) || (hasModel == bestHasModel && cost < bestCost)) {
+                chosen = index;
+                bestCost = cost;
+                bestHasModel = hasModel;
+            }
+        }
+        return chosen;
+    }
+
+    private long getRetryAfter(List<Node> candidates) {
+        long retryAfter = CircuitBreaker.OPEN_DURATION;
+        for (Node node : candidates) {
+            retryAfter = Math.min(retryAfter, node.breaker.getRemainingOpenTime());
+        }
+        return retryAfter;
+    }
+
+    private Node getNode(String endpoint) {
+        return nodes.computeIfAbsent(getBaseUrl(endpoint), Node::new);
+    }
+
+    private double getAverageSpeed(List<Node> candidates) {
+        double total = 0;
+        int measured = 0;
+        for (Node node : candidates) {
+            if (node.tokensPerSecond > 0) {
+                total += node.tokensPerSecond;
+                measured++;
+            }
+        }
+        return measured > 0 ? total / measured : DEFAULT_TOKENS_PER_SECOND;
+    }
+
+    private void scheduleProbe(Node node) {
+        if (!node.probing.compareAndSet(0, 1)) {
+            return;
+        }
+        try {
+            prober.execute(() -> probe(node));
+        } catch (RejectedExecutionException e) {
+            node.probing.set(0);
+        }
+    }
+
+    private void probeNodesInUse() {
+        long cutoff = System.currentTimeMillis() - PROBE_IDLE_CUTOFF;
+        for (Node node : nodes.values()) {
+            if (node.lastUsedAt >= cutoff && node.probing.compareAndSet(0, 1)) {
+                probe(node);
+            }
+        }
+    }
+
+    /**
+     * Probes a node: /api/tags tells whether it is reachable, how quickly it
+     * answers and which models it has, /api/ps which models are loaded
+     */
+    private void probe(Node node) {
+        try {
+            long start = System.nanoTime();
+            // Reading the tags through the catalogue also keeps its model lists fresh
+            Map<String, String> available = ModelCatalog.getInstance().refresh(node.baseUrl);
+            node.latency = (System.nanoTime() - start) / 1000000L;
+            node.availableModels = available.keySet();
+            node.loadedModels = fetchModelNames(node.baseUrl + "/api/ps");
+            node.reachable = Boolean.TRUE;
+            node.probeError = null;
+            node.breaker.recordProbeSuccess();
+        } catch (OllamaHttpClient.PoolExhaustedException e) {
+            // Every connection to the node is busy, which says nothing about its health
+            LogUtil.debug(OllamaNodeBalancer.class.getName(), "Skipped probing busy node " + node.baseUrl);
+        } catch (Exception e) {
+            if (!Boolean.FALSE.equals(node.reachable)) {
+                LogUtil.warn(OllamaNodeBalancer.class.getName(),
+                        "Ollama node " + node.baseUrl + " is unreachable: " + e.getMessage());
+            }
+            node.reachable = Boolean.FALSE;
+            node.probeError = e.getMessage();
+            node.breaker.recordProbeFailure();
+        } finally {
+            node.probedAt = System.currentTimeMillis();
+            node.probing.set(0);
+        }
+    }
+
+    /**
+     * Checks the health of every node an endpoint setting lists, probing the
+     * nodes whose last probe is older than the given age
+     * 
+     * @param apiEndpoint The API endpoint setting
+     * @param model       The model to look for
+     * @param maxAge      The age in milliseconds up to which a probe result is
+     *                    reused
+     * @return The health of each node keyed by base URL
+     * @throws JSONException If the result cannot be built
+     */
+    public JSONObject checkNodes(String apiEndpoint, String model, long maxAge) throws JSONException {
+        JSONObject result = new JSONObject();
+        for (String endpoint : parseEndpoints(apiEndpoint)) {
+            Node node = getNode(endpoint);
+            node.lastUsedAt = System.currentTimeMillis();
+            if (System.currentTimeMillis() - node.probedAt > maxAge && node.probing.compareAndSet(0, 1)) {
+                probe(node);
+            }
+
+            JSONObject health = new JSONObject();
+            health.put("reachable", Boolean.TRUE.equals(node.reachable));
+            health.put("latency", node.latency);
+            health.put("modelAvailable", node.availableModels != null
+                    && node.availableModels.contains(normalizeModel(model)));
+            health.put("modelLoaded", node.loadedModels.contains(normalizeModel(model)));
+            health.put("breaker", node.breaker.getState().name());
+            if (node.probeError != null) {
+                health.put("error", node.probeError);
+            }
+            result.put(node.baseUrl, health);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the model names listed by /api/ps
+     * 
+     * @param url The URL to read
+     * @return The normalized model names
+     * @throws IOException   If the node cannot be reached
+     * @throws JSONException If the response cannot be parsed
+     */
+    static Set<String> fetchModelNames(String url) throws IOException, JSONException {
+        Set<String> names = new HashSet<>();
+        JSONArray models = OllamaHttpClient.getInstance().readJson(url, OllamaHttpClient.Timeouts.PROBE)
+                .optJSONArray("models");
+        if (models != null) {
+            for (int i = 0; i < models.length(); i++) {
+                JSONObject model = models.getJSONObject(i);
+                names.add(normalizeModel(model.optString("name", model.optString("model"))));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Normalizes a model name so that "llama3" and "llama3:latest" match
+     * 
+     * @param model The model name
+     * @return The name with an explicit tag
+     */
+    public static String normalizeModel(String model) {
+        if (model == null) {
+            return "";
+        }
+        String trimmed = model.trim();
+        return trimmed.indexOf(':') < 0 ? trimmed + ":latest" : trimmed;
+    }
+
+    /**
+     * Gets the state of every node used so far
+     * 
+     * @return A JSON object keyed by node base URL
+     * @throws JSONException If the statistics cannot be built
+     */
+    public JSONObject getStatistics() throws JSONException {
+        JSONObject stats = new JSONObject();
+        for (Node node : nodes.values()) {
+            stats.put(node.baseUrl, node.toJson());
+        }
+        return stats;
+    }
+
+    /**
+     * Stops the health probe thread. Called when the plugin bundle is stopped.
+     */
+    public void shutdown() {
+        prober.shutdownNow();
+    }
+
+    /**
+     * A call in progress on a node
+     */
+    public static class Lease implements AutoCloseable {
+
+        private final Node node;
+        private final String endpoint;
+        private final String model;
+        private boolean closed = false;
+        private boolean judged = false;
+
+        Lease(Node node, String endpoint, String model) {
+            this.node = node;
+            this.endpoint = endpoint;
+            this.model = model;
+            node.outstanding.incrementAndGet();
+            node.requests.incrementAndGet();
+        }
+
+        /**
+         * Gets the endpoint URL to call
+         * 
+         * @return The endpoint URL on the chosen node
+         */
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        /**
+         * Records a completed call: the measured generation speed and the fact
+         * that the node now has the model loaded
+         * 
+         * @param result The response of the call
+         */
+        public synchronized void recordResult(OllamaResponse result) {
+            judged = true;
+            node.breaker.recordSuccess();
+            node.recordResult(model, result);
+        }
+
+        /**
+         * Records that the node answered the call with a successful status,
+         * closing its circuit breaker before the generation is over. A trial
+         * call would otherwise hold every other call off for as long as the
+         * model writes.
+         */
+        public synchronized void recordResponding() {
+            judged = true;
+            node.breaker.recordSuccess();
+        }
+
+        /**
+         * Records a call that failed because of the node, counting towards
+         * opening its circuit breaker
+         */
+        public synchronized void recordFailure() {
+            judged = true;
+            node.failures.incrementAndGet();
+            node.breaker.recordFailure();
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                node.outstanding.decrementAndGet();
+                if (!judged) {
+                    node.breaker.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * What is known about a single Ollama node
+     */
+    private static class Node {
+
+        private final String baseUrl;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicInteger probing = new AtomicInteger();
+        private final CircuitBreaker breaker = new CircuitBreaker();
+
+        private volatile double tokensPerSecond = 0;
+        private volatile double responseTokens = DEFAULT_RESPONSE_TOKENS;
+        private volatile Set<String> loadedModels = Collections.emptySet();
+        private volatile Set<String> availableModels = null;
+        private volatile Boolean reachable = null;
+        private volatile long latency = -1;
+        private volatile String probeError = null;
+        private volatile long probedAt = 0;
+        private volatile long lastUsedAt = 0;
+
+        Node(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        boolean mayHaveModel(String model) {
+            Set<String> available = availableModels;
+            return available == null || available.contains(normalizeModel(model))
+                    || loadedModels.contains(normalizeModel(model));
+        }
+
+        /**
+         * Estimates in seconds when a new call on this node would finish
+         */
+        double estimateCompletion(String model, double fallbackSpeed) {
+            double speed = tokensPerSecond > 0 ? tokensPerSecond : fallbackSpeed;
+            double estimate = (outstanding.get() + 1) * responseTokens / speed;
+            if (!loadedModels.contains(normalizeModel(model))) {
+                estimate += MODEL_LOAD_PENALTY;
+            }
+            return estimate;
+        }
+
+        synchronized void recordResult(String model, OllamaResponse result) {
+            if (result.getEvalCount() > 0 && result.getEvalDuration() > 0) {
+                double speed = result.getEvalCount() / (result.getEvalDuration() / 1e9);
+                tokensPerSecond = tokensPerSecond > 0 ? (1 - SMOOTHING) * tokensPerSecond + SMOOTHING * speed
+                        : speed;
+                responseTokens = (1 - SMOOTHING) * responseTokens + SMOOTHING * result.getEvalCount();
+            }
+
+            // Ollama keeps a model in memory for a while after using it
+            String normalized = normalizeModel(model);
+            if (!loadedModels.contains(normalized)) {
+                Set<String> loaded = new HashSet<>(loadedModels);
+                loaded.add(normalized);
+                loadedModels = loaded;
+            }
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("reachable", reachable != null ? reachable.toString() : "unknown");
+            json.put("latency", latency);
+            json.put("breaker", breaker.getState().name());
+            json.put("breakerOpened", breaker.getOpenedCount());
+            json.put("outstanding", outstanding.get());
+            json.put("requests", requests.get());
+            json.put("failures", failures.get());
+            json.put("tokensPerSecond", Math.round(tokensPerSecond * 10) / 10.0);
+            json.put("loadedModels", new JSONArray(loadedModels));
+            if (availableModels != null) {
+                json.put("availableModels", new JSONArray(availableModels));
+            }
+            return json;
+        }
+    }
+
+    /**
+     * Thrown when no node of an endpoint setting can take calls because their
+     * circuit breakers are open
+     */
+    public static class NodeUnavailableException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long retryAfter;
+
+        public NodeUnavailableException(int nodes, long retryAfter) {
+            super((nodes > 1 ? "All Ollama nodes are" : "Ollama is") + " unavailable, please try again in "
+                    + Math.max(1, (retryAfter + 999) / 1000) + " seconds");
+            this.retryAfter = retryAfter;
+        }
+
+        /**
+         * Gets the time until a node will be tried again
+         * 
+         * @return The time in milliseconds
+         */
+        public long getRetryAfter() {
+            return retryAfter;
+        }
+    }
+}
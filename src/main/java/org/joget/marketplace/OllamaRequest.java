@@ -0,0 +1,169 @@
+package org.joget.marketplace;
+
+import java.util.List;
+
+import org.json.JSONArray;
+
+/**
+ * Parameters of a single call to the Ollama API
+ */
+public class OllamaRequest {
+
+    private String message;
+    private JSONArray history;
+    private String apiEndpoint;
+    private String model;
+    private String systemPrompt;
+    private double temperature = 0.7;
+    private int[] context;
+    private boolean projectOutput;
+    private Cancellation cancellation;
+    private OllamaHttpClient.Timeouts timeouts = OllamaHttpClient.Timeouts.DEFAULT;
+
+    public OllamaRequest() {
+    }
+
+    public OllamaRequest(String message, String apiEndpoint, String model, String systemPrompt, double temperature) {
+        this.message = message;
+        this.apiEndpoint = apiEndpoint;
+        this.model = model;
+        this.systemPrompt = systemPrompt;
+        this.temperature = temperature;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    /**
+     * Gets the earlier turns of the conversation, sent before the message when
+     * calling /api/chat
+     * 
+     * @return The history as /api/chat messages, or null for a single turn
+     */
+    public JSONArray getHistory() {
+        return history;
+    }
+
+    public void setHistory(JSONArray history) {
+        this.history = history;
+    }
+
+    /**
+     * Gets the API endpoint setting, which may list several endpoint URLs
+     * separated by commas or new lines
+     * 
+     * @return The API endpoint setting
+     */
+    public String getApiEndpoint() {
+        return apiEndpoint;
+    }
+
+    /**
+     * Gets the endpoint URLs listed in the API endpoint setting
+     * 
+     * @return The endpoint URLs
+     */
+    public List<String> getEndpoints() {
+        return OllamaNodeBalancer.parseEndpoints(apiEndpoint);
+    }
+
+    public void setApiEndpoint(String apiEndpoint) {
+        this.apiEndpoint = apiEndpoint;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public String getSystemPrompt() {
+        return systemPrompt;
+    }
+
+    public void setSystemPrompt(String systemPrompt) {
+        this.systemPrompt = systemPrompt;
+    }
+
+    public double getTemperature() {
+        return temperature;
+    }
+
+    public void setTemperature(double temperature) {
+        this.temperature = temperature;
+    }
+
+    /**
+     * Gets the token context of the previous /api/generate turn
+     * 
+     * @return The context tokens, or null to start fresh
+     */
+    public int[] getContext() {
+        return context;
+    }
+
+    public void setContext(int[] context) {
+        this.context = context;
+    }
+
+    /**
+     * Checks whether the model is asked to answer with the JSON project of
+     * {@link ProjectJsonParser#SCHEMA} instead of markdown
+     * 
+     * @return true in project output mode
+     */
+    public boolean isProjectOutput() {
+        return projectOutput;
+    }
+
+    public void setProjectOutput(boolean projectOutput) {
+        this.projectOutput = projectOutput;
+    }
+
+    /**
+     * Gets the cancellation the upstream call observes, which also brings its
+     * deadline forward
+     * 
+     * @return The cancellation, or null if the call cannot be cancelled
+     */
+    public Cancellation getCancellation() {
+        return cancellation;
+    }
+
+    public void setCancellation(Cancellation cancellation) {
+        this.cancellation = cancellation;
+    }
+
+    /**
+     * Gets the timeouts of the upstream call, from the settings of the menu
+     * sending it
+     * 
+     * @return The timeouts
+     */
+    public OllamaHttpClient.Timeouts getTimeouts() {
+        return timeouts;
+    }
+
+    public void setTimeouts(OllamaHttpClient.Timeouts timeouts) {
+        this.timeouts = timeouts;
+    }
+
+    /**
+     * Checks whether the endpoint is Ollama's /api/chat, which takes a
+     * messages[] array instead of a prompt/system pair. When several endpoints
+     * are listed they are expected to share the path of the first.
+     * 
+     * @return true if the request targets /api/chat
+     */
+    public boolean isChatEndpoint() {
+        List<String> endpoints = getEndpoints();
+        return !endpoints.isEmpty() && endpoints.get(0).replaceAll("/+$", "").endsWith("/api/chat");
+    }
+}
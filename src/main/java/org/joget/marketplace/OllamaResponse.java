@@ -0,0 +1,62 @@
+package org.joget.marketplace;
+
+/**
+ * Result of a single call to the Ollama API: the generated text plus the
+ * metadata Ollama reports with its final chunk
+ */
+public class OllamaResponse {
+
+    private final String text;
+    private int[] context;
+    private long evalCount;
+    private long evalDuration;
+
+    public OllamaResponse(String text) {
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Gets the token context returned by /api/generate, which can be passed to
+     * the next request so the model continues from it without re-processing
+     * the earlier conversation
+     * 
+     * @return The context tokens, or null if Ollama returned none
+     */
+    public int[] getContext() {
+        return context;
+    }
+
+    public void setContext(int[] context) {
+        this.context = context;
+    }
+
+    /**
+     * Gets the number of tokens Ollama generated
+     * 
+     * @return The token count, or 0 if not reported
+     */
+    public long getEvalCount() {
+        return evalCount;
+    }
+
+    public void setEvalCount(long evalCount) {
+        this.evalCount = evalCount;
+    }
+
+    /**
+     * Gets the time Ollama spent generating the tokens
+     * 
+     * @return The duration in nanoseconds, or 0 if not reported
+     */
+    public long getEvalDuration() {
+        return evalDuration;
+    }
+
+    public void setEvalDuration(long evalDuration) {
+        this.evalDuration = evalDuration;
+    }
+}
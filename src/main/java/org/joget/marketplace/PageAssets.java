@@ -0,0 +1,244 @@
+package org.joget.marketplace;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.joget.commons.util.LogUtil;
+import org.joget.commons.util.StringUtil;
+
+/**
+ * Holds the page of the chat menu: its HTML template and the scripts and
+ * styles it loads, all bundled with the plugin so the page works without
+ * access to a CDN.
+ * 
+ * Everything is read once when the bundle loads, as each load of the bundle
+ * gets a new class loader. The template is split around its placeholders so
+ * rendering only joins the literal parts with the values of the menu. Each
+ * asset is kept with its gzipped form and a version taken from its content,
+ * which the page puts in the asset URLs; a new plugin build changes the
+ * URLs, so browsers can keep an asset for good.
+ * 
+ * Placeholders are written {{name}} for a value of the menu and
+ * {{asset:file}} for the URL of a bundled asset.
+ */
+public class PageAssets {
+
+    private static final String TEMPLATE = "/templates/llmChatPage.html";
+    private static final String ASSET_FOLDER = "/static/";
+    private static final String ASSET_PLACEHOLDER = "asset:";
+
+    private static final PageAssets INSTANCE = new PageAssets();
+
+    private final Map<String, Asset> assets = new LinkedHashMap<>();
+
+    // The literal parts of the template at even indexes, the placeholder names between them
+    private final List<String> templateParts;
+
+    private PageAssets() {
+        load("llmChat.css", "text/css;charset=UTF-8");
+        load("llmChat.js", "application/javascript;charset=UTF-8");
+        load("marked.min.js", "application/javascript;charset=UTF-8");
+        templateParts = parseTemplate();
+    }
+
+    /**
+     * Gets the assets shared by all instances of the plugin
+     * 
+     * @return The shared assets
+     */
+    public static PageAssets getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets a bundled asset
+     * 
+     * @param name The file name of the asset
+     * @return The asset, or null if there is no such asset
+     */
+    public Asset getAsset(String name) {
+        return name != null ? assets.get(name) : null;
+    }
+
+    /**
+     * Renders the page of a menu
+     * 
+     * @param serviceUrl The URL of the plugin web service, which also serves
+     *                   the assets
+     * @param appId      The ID of the app of the menu
+     * @param appVersion The version of the app of the menu
+     * @return The page HTML
+     */
+    public String render(String serviceUrl, String appId, String appVersion) {
+        if (templateParts.isEmpty()) {
+            return "<div class=\"llm-chat-container\">The chat page could not be loaded.</div>";
+        }
+        StringBuilder html = new StringBuilder(4096);
+        for (int i = 0; i < templateParts.size(); i++) {
+            String part = templateParts.get(i);
+            if (i % 2 == 0) {
+                html.append(part);
+            } else if (part.startsWith(ASSET_PLACEHOLDER)) {
+                html.append(escape(getAssetUrl(serviceUrl, part.substring(ASSET_PLACEHOLDER.length()))));
+            } else if ("serviceUrl".equals(part)) {
+                html.append(escape(serviceUrl));
+            } else if ("appId".equals(part)) {
+                html.append(escape(appId));
+            } else if ("appVersion".equals(part)) {
+                html.append(escape(appVersion));
+            }
+        }
+        return html.toString();
+    }
+
+    /**
+     * Builds the URL of a bundled asset, carrying the version of its content
+     * 
+     * @param serviceUrl The URL of the plugin web service
+     * @param name       The file name of the asset
+     * @return The URL
+     */
+    public String getAssetUrl(String serviceUrl, String name) {
+        Asset asset = assets.get(name);
+        return serviceUrl + "?action=asset&name=" + name + (asset != null ? "&v=" + asset.version : "");
+    }
+
+    private static String escape(String value) {
+        return value != null ? StringUtil.escapeString(value, StringUtil.TYPE_HTML, null) : "";
+    }
+
+    private void load(String name, String contentType) {
+        try {
+            byte[] content = readResource(ASSET_FOLDER + name);
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream(content.length / 3);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+                gzip.write(content);
+            }
+            String version = ResponseCache.toHex(MessageDigest.getInstance("SHA-256").digest(content))
+                    .substring(0, 16);
+            assets.put(name, new Asset(contentType, content, gzipped.toByteArray(), version));
+        } catch (IOException e) {
+            LogUtil.error(PageAssets.class.getName(), e, "Error loading the page asset " + name);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Splits the template around its placeholders
+     * 
+     * @return The parts, or an empty list if the template cannot be read
+     */
+    private static List<String> parseTemplate() {
+        String template;
+        try {
+            template = new String(readResource(TEMPLATE), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LogUtil.error(PageAssets.class.getName(), e, "Error loading the page template");
+            return Collections.emptyList();
+        }
+        List<String> parts = new ArrayList<>();
+        int position = 0;
+        int start;
+        while ((start = template.indexOf("{{", position)) >= 0) {
+            int end = template.indexOf("}}", start);
+            if (end < 0) {
+                break;
+            }
+            parts.add(template.substring(position, start));
+            parts.add(template.substring(start + 2, end).trim());
+            position = end + 2;
+        }
+        parts.add(template.substring(position));
+        return Collections.unmodifiableList(parts);
+    }
+
+    private static byte[] readResource(String path) throws IOException {
+        try (InputStream in = PageAssets.class.getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IOException("Resource " + path + " is missing from the plugin");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * A script or style sheet of the page
+     */
+    public static class Asset {
+
+        private final String contentType;
+        private final byte[] content;
+        private final byte[] gzipped;
+        private final String version;
+
+        Asset(String contentType, byte[] content, byte[] gzipped, String version) {
+            this.contentType = contentType;
+            this.content = content;
+            this.gzipped = gzipped;
+            this.version = version;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Gets the content to send
+         * 
+         * @param gzip Whether the client accepts gzip
+         * @return The gzipped content when accepted and smaller, the content
+         *         as is otherwise. The array must not be modified.
+         */
+        public byte[] getContent(boolean gzip) {
+            return isGzipped(gzip) ? gzipped : content;
+        }
+
+        /**
+         * Tells whether the content sent is gzipped
+         * 
+         * @param gzip Whether the client accepts gzip
+         * @return true if the gzipped content is sent
+         */
+        public boolean isGzipped(boolean gzip) {
+            return gzip && gzipped.length < content.length;
+        }
+
+        /**
+         * Gets the version of the asset, the start of the SHA-256 hex digest
+         * of its content
+         * 
+         * @return The version
+         */
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * Gets the entity tag of the content sent, which differs between the
+         * gzipped and plain forms
+         * 
+         * @param gzip Whether the client accepts gzip
+         * @return The unquoted entity tag
+         */
+        public String getETag(boolean gzip) {
+            return isGzipped(gzip) ? version + "-gzip" : version;
+        }
+    }
+}
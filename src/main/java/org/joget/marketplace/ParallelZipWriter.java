@@ -0,0 +1,270 @@
+package org.joget.marketplace;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a zip whose entries are compressed concurrently.
+ * 
+ * Each entry is encoded and deflated into a buffer of its own on a bounded
+ * fork-join pool. The entries are then written in their original order, each
+ * as soon as it and the ones before it are ready, followed by the central
+ * directory. Since the sizes and checksums are known when an entry is
+ * written, the local headers carry them and no data descriptors are needed.
+ * 
+ * Small entries are stored, as deflating them saves little or nothing, and
+ * large ones are deflated at a faster level. An entry that does not shrink is
+ * stored as well. Entry times are fixed, so the same files always give the
+ * same bytes.
+ */
+public class ParallelZipWriter {
+
+    // Below either of these the entries are compressed on the calling thread
+    public static final int MIN_PARALLEL_ENTRIES = 8;
+    public static final long MIN_PARALLEL_BYTES = 256 * 1024L;
+
+    // Entries up to this size are stored, and from the next one deflated at the fastest level
+    private static final int MAX_STORED_SIZE = 128;
+    private static final int MIN_FAST_SIZE = 1024 * 1024;
+
+    // Limits of a zip without the zip64 extensions
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    // Names are UTF-8
+    private static final int FLAGS = 0x0800;
+
+    // 1980-01-01 00:00 in MS-DOS format, the earliest time a zip entry can have
+    private static final int DOS_TIME = 0;
+    private static final int DOS_DATE = (1 << 5) | 1;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)), pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("zip-deflate-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+
+    private ParallelZipWriter() {
+    }
+
+    /**
+     * Checks whether a set of files is large enough to be worth compressing in
+     * parallel, and small enough for a zip without zip64
+     * 
+     * @param files A map of zip entry paths to content
+     * @return true if {@link #write} should be used
+     */
+    public static boolean accepts(Map<String, String> files) {
+        if (files.size() < MIN_PARALLEL_ENTRIES || files.size() > MAX_ENTRIES) {
+            return false;
+        }
+        long chars = 0;
+        for (String content : files.values()) {
+            chars += content.length();
+        }
+        // Three bytes per char at most in UTF-8, and a stored entry is no larger than that
+        return chars >= MIN_PARALLEL_BYTES && chars * 3 < MAX_SIZE / 2;
+    }
+
+    /**
+     * Writes a zip of files, compressing them concurrently
+     * 
+     * @param files A map of zip entry paths to content
+     * @param out   The stream to write to, left open
+     * @throws IOException If the zip cannot be written
+     */
+    public static void write(Map<String, String> files, OutputStream out) throws IOException {
+        // Compress every entry concurrently
+        List<Future<Entry>> pending = new ArrayList<>(files.size());
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            final String name = file.getKey();
+            final String content = file.getValue();
+            pending.add(POOL.submit(() -> compress(name, content)));
+        }
+
+        // Write the entries in order, each as soon as it is ready
+        List<Entry> written = new ArrayList<>(files.size());
+        long offset = 0;
+        try {
+            for (Future<Entry> future : pending) {
+                Entry entry = future.get();
+                entry.offset = offset;
+                entry.compressedSize = entry.data.length;
+                offset += writeLocalHeader(out, entry);
+                out.write(entry.data, 0, entry.data.length);
+                offset += entry.data.length;
+                entry.data = null;
+                written.add(entry);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing zip entries");
+        } catch (ExecutionException e) {
+            throw new IOException("Could not compress zip entry: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            for (Future<Entry> future : pending) {
+                future.cancel(false);
+            }
+        }
+
+        // The central directory lists the entries with their offsets
+        long centralDirectoryOffset = offset;
+        ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+        for (Entry entry : written) {
+            writeCentralHeader(centralDirectory, entry);
+        }
+        centralDirectory.writeTo(out);
+
+        ByteArrayOutputStream end = new ByteArrayOutputStream();
+        writeInt(end, END_OF_CENTRAL_DIRECTORY);
+        writeShort(end, 0);
+        writeShort(end, 0);
+        writeShort(end, written.size());
+        writeShort(end, written.size());
+        writeInt(end, centralDirectory.size());
+        writeInt(end, centralDirectoryOffset);
+        writeShort(end, 0);
+        end.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Encodes and compresses an entry, choosing its method by size
+     */
+    private static Entry compress(String name, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+
+        Entry entry = new Entry(name.replace('\\', '/').getBytes(StandardCharsets.UTF_8), crc.getValue(),
+                bytes.length);
+        if (bytes.length > MAX_STORED_SIZE) {
+            int level = bytes.length >= MIN_FAST_SIZE ? Deflater.BEST_SPEED : Deflater.DEFAULT_COMPRESSION;
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream(bytes.length / 2 + 64);
+            Deflater deflater = new Deflater(level, true);
+            try {
+                deflater.setInput(bytes);
+                deflater.finish();
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished() && deflated.size() < bytes.length) {
+                    int length = deflater.deflate(buffer);
+                    deflated.write(buffer, 0, length);
+                }
+            } finally {
+                deflater.end();
+            }
+
+            if (deflated.size() < bytes.length) {
+                entry.method = DEFLATED;
+                entry.data = deflated.toByteArray();
+                return entry;
+            }
+        }
+
+        // Stored as is: too small to gain from deflating, or it did not shrink
+        entry.method = STORED;
+        entry.data = bytes;
+        return entry;
+    }
+
+    private static int writeLocalHeader(OutputStream out, Entry entry) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(30 + entry.name.length);
+        writeInt(header, LOCAL_HEADER);
+        writeShort(header, entry.getVersionNeeded());
+        writeShort(header, FLAGS);
+        writeShort(header, entry.method);
+        writeShort(header, DOS_TIME);
+        writeShort(header, DOS_DATE);
+        writeInt(header, entry.crc);
+        writeInt(header, entry.data.length);
+        writeInt(header, entry.size);
+        writeShort(header, entry.name.length);
+        writeShort(header, 0);
+        header.write(entry.name, 0, entry.name.length);
+        header.writeTo(out);
+        return header.size();
+    }
+
+    private static void writeCentralHeader(ByteArrayOutputStream out, Entry entry) {
+        writeInt(out, CENTRAL_HEADER);
+        writeShort(out, 20);
+        writeShort(out, entry.getVersionNeeded());
+        writeShort(out, FLAGS);
+        writeShort(out, entry.method);
+        writeShort(out, DOS_TIME);
+        writeShort(out, DOS_DATE);
+        writeInt(out, entry.crc);
+        writeInt(out, entry.compressedSize);
+        writeInt(out, entry.size);
+        writeShort(out, entry.name.length);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeInt(out, 0);
+        writeInt(out, entry.offset);
+        out.write(entry.name, 0, entry.name.length);
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value) {
+        writeShort(out, (int) (value & 0xFFFF));
+        writeShort(out, (int) ((value >>> 16) & 0xFFFF));
+    }
+
+    /**
+     * Stops the compression threads. Called when the plugin bundle is stopped.
+     */
+    public static void shutdown() {
+        POOL.shutdownNow();
+    }
+
+    /**
+     * A compressed entry waiting to be written
+     */
+    private static class Entry {
+
+        private final byte[] name;
+        private final long crc;
+        private final long size;
+        private int method;
+        private long compressedSize;
+        private long offset;
+
+        // The compressed data, dropped once written
+        private byte[] data;
+
+        Entry(byte[] name, long crc, long size) {
+            this.name = name;
+            this.crc = crc;
+            this.size = size;
+        }
+
+        int getVersionNeeded() {
+            return method == DEFLATED ? 20 : 10;
+        }
+    }
+}
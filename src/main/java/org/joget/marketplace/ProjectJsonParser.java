@@ -0,0 +1,369 @@
+package org.joget.marketplace;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.json.JSONException;
+
+/**
+ * Streaming parser of the JSON project the model answers with in project
+ * output mode, shaped as {"summary": "...", "files": [{"path": "...",
+ * "content": "..."}]}.
+ * 
+ * The JSON may be fed in chunks as it is generated. The summary is handed on
+ * as it is decoded, and each file as soon as its object closes, so the files
+ * are ready while the rest of the project is still being generated. Members
+ * with other names and values of other types are skipped without being kept.
+ * Each character is read once.
+ */
+public class ProjectJsonParser {
+
+    public static final String SUMMARY = "summary";
+    public static final String FILES = "files";
+    public static final String PATH = "path";
+    public static final String CONTENT = "content";
+
+    /**
+     * JSON schema of the answer, sent to Ollama as the format of the response
+     */
+    public static final String SCHEMA = "{\"type\":\"object\",\"properties\":{"
+            + "\"summary\":{\"type\":\"string\"},"
+            + "\"files\":{\"type\":\"array\",\"items\":{\"type\":\"object\",\"properties\":{"
+            + "\"path\":{\"type\":\"string\"},\"content\":{\"type\":\"string\"}},"
+            + "\"required\":[\"path\",\"content\"]}}},"
+            + "\"required\":[\"summary\",\"files\"]}";
+
+    private enum Mode {
+        VALUE, KEY_OR_END, KEY, COLON, COMMA_OR_END, STRING, LITERAL, DONE
+    }
+
+    private enum Role {
+        ROOT, FILES, FILE, OTHER
+    }
+
+    private final Listener listener;
+    private final Deque<Frame> stack = new ArrayDeque<>();
+    private final StringBuilder string = new StringBuilder();
+
+    private Mode mode = Mode.VALUE;
+    private long length = 0;
+    private int files = 0;
+
+    // What the string being read is: a member name, the summary, a file field or a skipped value
+    private boolean readingKey;
+    private boolean readingSummary;
+    private boolean keepingString;
+
+    // 0 outside an escape, 1 after a backslash, 2 to 5 while reading the four hex digits of a unicode escape
+    private int escape = 0;
+    private int unicode = 0;
+
+    public ProjectJsonParser(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Parses the next chunk of the answer
+     * 
+     * @param chunk The chunk
+     * @throws IOException   If the listener fails, or the answer grows longer
+     *                       than {@link CodeBlockTokenizer#MAX_INPUT_LENGTH}
+     * @throws JSONException If the answer is not valid JSON
+     */
+    public void feed(CharSequence chunk) throws IOException, JSONException {
+        length += chunk.length();
+        if (length > CodeBlockTokenizer.MAX_INPUT_LENGTH) {
+            throw new CodeBlockTokenizer.InputTooLargeException(CodeBlockTokenizer.MAX_INPUT_LENGTH);
+        }
+
+        for (int i = 0; i < chunk.length(); i++) {
+            char c = chunk.charAt(i);
+            if (mode == Mode.STRING) {
+                readStringChar(c);
+            } else {
+                readStructureChar(c);
+            }
+        }
+
+        // Hand on the part of the summary decoded so far
+        if (readingSummary && string.length() > 0) {
+            listener.onSummary(string.toString());
+            string.setLength(0);
+        }
+    }
+
+    /**
+     * Checks whether the whole project has been read
+     * 
+     * @return true once the top-level object has closed
+     */
+    public boolean isComplete() {
+        return mode == Mode.DONE;
+    }
+
+    /**
+     * Gets the number of files read so far
+     * 
+     * @return The number of files
+     */
+    public int getFileCount() {
+        return files;
+    }
+
+    private void readStringChar(char c) throws IOException {
+        if (escape == 1) {
+            escape = 0;
+            switch (c) {
+                case 'n':
+                    keep('\n');
+                    break;
+                case 't':
+                    keep('\t');
+                    break;
+                case 'r':
+                    keep('\r');
+                    break;
+                case 'b':
+                    keep('\b');
+                    break;
+                case 'f':
+                    keep('\f');
+                    break;
+                case 'u':
+                    escape = 2;
+                    unicode = 0;
+                    break;
+                default:
+                    keep(c);
+            }
+        } else if (escape > 1) {
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                throw error("Invalid unicode escape");
+            }
+            unicode = unicode * 16 + digit;
+            if (++escape == 6) {
+                escape = 0;
+                keep((char) unicode);
+            }
+        } else if (c == '\\') {
+            escape = 1;
+        } else if (c == '"') {
+            endString();
+        } else {
+            keep(c);
+        }
+    }
+
+    private void keep(char c) {
+        if (keepingString) {
+            string.append(c);
+        }
+    }
+
+    private void endString() throws IOException {
+        Frame frame = stack.peek();
+        String value = string.toString();
+        string.setLength(0);
+        if (readingKey) {
+            frame.key = value;
+            mode = Mode.COLON;
+            return;
+        }
+
+        if (readingSummary) {
+            if (!value.isEmpty()) {
+                listener.onSummary(value);
+            }
+            readingSummary = false;
+        } else if (frame != null && frame.role == Role.FILE) {
+            if (PATH.equals(frame.key)) {
+                frame.path = value;
+            } else if (CONTENT.equals(frame.key)) {
+                frame.content = value;
+            }
+        }
+        endValue();
+    }
+
+    private void readStructureChar(char c) throws IOException {
+        if (mode == Mode.LITERAL) {
+            if (Character.isLetterOrDigit(c) || c == '-' || c == '+' || c == '.') {
+                return;
+            }
+            endValue();
+        }
+        if (Character.isWhitespace(c)) {
+            return;
+        }
+
+        Frame frame = stack.peek();
+        switch (mode) {
+            case VALUE:
+                startValue(c, frame);
+                break;
+            case KEY_OR_END:
+            case KEY:
+                if (c == '"') {
+                    startString(true, false, true);
+                } else if (c == '}' && mode == Mode.KEY_OR_END) {
+                    endContainer();
+                } else {
+                    throw error("Expected a member name");
+                }
+                break;
+            case COLON:
+                if (c != ':') {
+                    throw error("Expected ':'");
+                }
+                mode = Mode.VALUE;
+                break;
+            case COMMA_OR_END:
+                if (c == ',') {
+                    mode = frame.object ? Mode.KEY : Mode.VALUE;
+                } else if (c == (frame.object ? '}' : ']')) {
+                    endContainer();
+                } else {
+                    throw error("Expected ',' or the end of the " + (frame.object ? "object" : "array"));
+                }
+                break;
+            case DONE:
+                // Trailing text after the project is ignored
+                break;
+            default:
+                throw error("Unexpected character");
+        }
+    }
+
+    private void startValue(char c, Frame parent) throws IOException {
+        String key = parent != null && parent.object ? parent.key : null;
+        if (c == '{') {
+            Role role = parent == null ? Role.ROOT : parent.role == Role.FILES ? Role.FILE : Role.OTHER;
+            stack.push(new Frame(true, role));
+            mode = Mode.KEY_OR_END;
+        } else if (c == '[') {
+            Role role = parent != null && parent.role == Role.ROOT && FILES.equals(key) ? Role.FILES : Role.OTHER;
+            stack.push(new Frame(false, role));
+            mode = Mode.VALUE;
+        } else if (c == ']' && parent != null && !parent.object && parent.empty) {
+            endContainer();
+        } else if (c == '"') {
+            boolean summary = parent != null && parent.role == Role.ROOT && SUMMARY.equals(key);
+            boolean fileField = parent != null && parent.role == Role.FILE
+                    && (PATH.equals(key) || CONTENT.equals(key));
+            startString(false, summary, summary || fileField);
+        } else if (Character.isLetterOrDigit(c) || c == '-') {
+            mode = Mode.LITERAL;
+        } else {
+            throw error("Expected a value");
+        }
+        if (parent != null) {
+            parent.empty = false;
+        }
+    }
+
+    private void startString(boolean key, boolean summary, boolean keep) {
+        readingKey = key;
+        readingSummary = summary;
+        keepingString = keep;
+        mode = Mode.STRING;
+    }
+
+    private void endContainer() throws IOException {
+        Frame frame = stack.pop();
+        if (frame.role == Role.FILE && frame.path != null) {
+            files++;
+            listener.onFile(frame.path, frame.content != null ? frame.content : "");
+        }
+        endValue();
+    }
+
+    private void endValue() {
+        mode = stack.isEmpty() ? Mode.DONE : Mode.COMMA_OR_END;
+    }
+
+    private JSONException error(String message) {
+        return new JSONException(message + " in the JSON project after " + length + " characters");
+    }
+
+    /**
+     * Renders a file of the project as a markdown section, in the same shape
+     * as the code files of a markdown answer. The fence is longer than any
+     * run of backticks in the content, so the content cannot close it.
+     * 
+     * @param number  The number of the file, starting from 1
+     * @param path    The path of the file
+     * @param content The content of the file
+     * @return The markdown section
+     */
+    public static String renderFile(int number, String path, String content) {
+        int longestRun = 0;
+        int run = 0;
+        for (int i = 0; i < content.length(); i++) {
+            run = content.charAt(i) == '`' ? run + 1 : 0;
+            longestRun = Math.max(longestRun, run);
+        }
+        StringBuilder fence = new StringBuilder("```");
+        while (fence.length() <= longestRun) {
+            fence.append('`');
+        }
+
+        // The extension names the language when it is a plain word
+        String language = "";
+        int dot = path.lastIndexOf('.');
+        if (dot >= 0 && dot > path.lastIndexOf('/') && path.substring(dot + 1).matches("[A-Za-z0-9]{1,16}")) {
+            language = path.substring(dot + 1);
+        }
+
+        StringBuilder markdown = new StringBuilder();
+        markdown.append("\n\n**File ").append(number).append(": ").append(path).append("**\n\n");
+        markdown.append(fence).append(language).append('\n');
+        markdown.append(content);
+        if (!content.endsWith("\n")) {
+            markdown.append('\n');
+        }
+        markdown.append(fence).append('\n');
+        return markdown.toString();
+    }
+
+    /**
+     * Receives the parts of the project as they are read
+     */
+    public interface Listener {
+        /**
+         * Called with each decoded part of the summary, in order
+         * 
+         * @param text The part of the summary
+         * @throws IOException If the text cannot be relayed
+         */
+        void onSummary(String text) throws IOException;
+
+        /**
+         * Called as soon as the object of a file closes
+         * 
+         * @param path    The path of the file, as the model gave it
+         * @param content The content of the file
+         * @throws IOException If the file cannot be relayed
+         */
+        void onFile(String path, String content) throws IOException;
+    }
+
+    /**
+     * An object or array being read
+     */
+    private static class Frame {
+
+        private final boolean object;
+        private final Role role;
+        private boolean empty = true;
+        private String key;
+        private String path;
+        private String content;
+
+        Frame(boolean object, Role role) {
+            this.object = object;
+            this.role = role;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package org.joget.marketplace;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Index of the file paths of a JSON project layout, used to place the code
+ * files extracted from an answer at their path in the project.
+ * 
+ * Paths are held in a trie of their segments in reverse order, so the layout
+ * paths ending with the segments of a file name are found in as many steps as
+ * the name has segments. A multimap from lower-cased basenames to paths backs
+ * it up for names that differ only in case. Every layout path is given to at
+ * most one file; when several paths share a name, for example the pom.xml of
+ * each module, files take them shallowest first, then in alphabetical order.
+ */
+public class ProjectPathIndex {
+
+    // Orders candidate paths: shallowest first, then alphabetically
+    private static final Comparator<String> PATH_ORDER = Comparator
+            .comparingInt((String path) -> segments(path).size()).thenComparing(Comparator.naturalOrder());
+
+    private final String rootDir;
+    private final List<String> paths = new ArrayList<>();
+    private final Set<String> known = new HashSet<>();
+    private final Node trie = new Node();
+    private final Map<String, List<String>> byBasename = new HashMap<>();
+    private final Set<String> claimed = new HashSet<>();
+
+    private ProjectPathIndex(String rootDir) {
+        this.rootDir = rootDir;
+    }
+
+    /**
+     * Indexes a JSON project layout, in which directories are objects and files
+     * are keys with null values. A directory may also be an array of file
+     * names and nested objects. The layout is walked without recursion, so
+     * deeply nested layouts cannot exhaust the stack.
+     * 
+     * @param layout The project layout
+     * @return The index
+     */
+    public static ProjectPathIndex fromLayout(JSONObject layout) {
+        // A single top-level directory is the root of the project
+        String rootDir = "";
+        if (layout.length() == 1) {
+            String key = layout.keys().next();
+            if (layout.opt(key) instanceof JSONObject || layout.opt(key) instanceof JSONArray) {
+                rootDir = normalizePath(key);
+            }
+        }
+        ProjectPathIndex index = new ProjectPathIndex(rootDir);
+
+        Deque<Object[]> pending = new ArrayDeque<>();
+        pending.push(new Object[] { layout, "" });
+        while (!pending.isEmpty()) {
+            Object[] directory = pending.pop();
+            Object value = directory[0];
+            String prefix = (String) directory[1];
+
+            if (value instanceof JSONArray) {
+                JSONArray array = (JSONArray) value;
+                for (int i = array.length() - 1; i >= 0; i--) {
+                    Object item = array.opt(i);
+                    if (item instanceof JSONObject) {
+                        pending.push(new Object[] { item, prefix });
+                    } else if (item instanceof String) {
+                        index.addPath(join(prefix, (String) item));
+                    }
+                }
+                continue;
+            }
+
+            // Sorted so that the same layout always gives the same paths
+            JSONObject object = (JSONObject) value;
+            for (String key : new TreeSet<>(object.keySet()).descendingSet()) {
+                Object child = object.opt(key);
+                if (normalizePath(key).isEmpty()) {
+                    continue;
+                }
+                String path = join(prefix, key);
+                if (child instanceof JSONObject || child instanceof JSONArray) {
+                    pending.push(new Object[] { child, path });
+                } else {
+                    index.addPath(path);
+                }
+            }
+        }
+
+        index.sortCandidates();
+        return index;
+    }
+
+    private void addPath(String path) {
+        if (path.isEmpty() || !known.add(path)) {
+            return;
+        }
+        paths.add(path);
+
+        // Walk the segments from the basename up to the root
+        List<String> segments = segments(path);
+        Node node = trie;
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            node = node.children.computeIfAbsent(segments.get(i), segment -> new Node());
+            node.paths.add(path);
+        }
+
+        String basename = segments.get(segments.size() - 1).toLowerCase(Locale.ROOT);
+        byBasename.computeIfAbsent(basename, name -> new ArrayList<>()).add(path);
+    }
+
+    private void sortCandidates() {
+        Deque<Node> nodes = new ArrayDeque<>();
+        nodes.push(trie);
+        while (!nodes.isEmpty()) {
+            Node node = nodes.pop();
+            Collections.sort(node.paths, PATH_ORDER);
+            nodes.addAll(node.children.values());
+        }
+        for (List<String> candidates : byBasename.values()) {
+            Collections.sort(candidates, PATH_ORDER);
+        }
+    }
+
+    /**
+     * Gets the directory holding the whole project
+     * 
+     * @return The root directory, empty if the layout has several top-level
+     *         entries
+     */
+    public String getRootDir() {
+        return rootDir;
+    }
+
+    /**
+     * Gets the file paths of the layout
+     * 
+     * @return The paths, in the order they were found
+     */
+    public List<String> getPaths() {
+        return Collections.unmodifiableList(paths);
+    }
+
+    /**
+     * Finds the layout path of a file and claims it, so that no other file is
+     * given the same path. The longest matching path suffix wins; names that
+     * only match ignoring case come last.
+     * 
+     * @param fileName The file name, possibly with directories
+     * @return The layout path, or null if no unclaimed path matches
+     */
+    public String resolve(String fileName) {
+        List<String> segments = segments(normalizePath(fileName));
+        if (segments.isEmpty()) {
+            return null;
+        }
+
+        // Follow the segments from the basename up as far as the layout has them
+        Deque<Node> matched = new ArrayDeque<>();
+        Node node = trie;
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            node = node.children.get(segments.get(i));
+            if (node == null) {
+                break;
+            }
+            matched.push(node);
+        }
+
+        // Prefer the paths sharing the most segments with the name
+        for (Node candidates : matched) {
+            String path = claim(candidates.paths);
+            if (path != null) {
+                return path;
+            }
+        }
+        return claim(byBasename.get(segments.get(segments.size() - 1).toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * Finds the layout paths of several files. Names with more directories are
+     * resolved first, so that a bare name does not take the path another file
+     * names exactly.
+     * 
+     * @param fileNames The file names, possibly with directories
+     * @return The layout path of each file, in the same order, null where no
+     *         unclaimed path matches
+     */
+    public List<String> resolveAll(List<String> fileNames) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < fileNames.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingInt((Integer i) -> -segments(normalizePath(fileNames.get(i))).size()));
+
+        List<String> resolved = new ArrayList<>(Collections.nCopies(fileNames.size(), (String) null));
+        for (int i : order) {
+            resolved.set(i, resolve(fileNames.get(i)));
+        }
+        return resolved;
+    }
+
+    /**
+     * Gets the path of a file the layout does not list: the file is placed in
+     * the root directory
+     * 
+     * @param fileName The file name, possibly with directories
+     * @return The path
+     */
+    public String placeUnlisted(String fileName) {
+        return join(rootDir, fileName);
+    }
+
+    private String claim(List<String> candidates) {
+        if (candidates != null) {
+            for (String path : candidates) {
+                if (claimed.add(path)) {
+                    return path;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Normalizes a path for a zip entry: forward slashes only, and no empty,
+     * current or parent directory segments, so an entry cannot point outside
+     * the directory the zip is extracted to
+     * 
+     * @param path The path
+     * @return The normalized path
+     */
+    public static String normalizePath(String path) {
+        StringBuilder normalized = new StringBuilder();
+        for (String segment : segments(path.replace('\\', '/'))) {
+            if (normalized.length() > 0) {
+                normalized.append('/');
+            }
+            normalized.append(segment);
+        }
+        return normalized.toString();
+    }
+
+    private static String join(String prefix, String name) {
+        String normalized = normalizePath(name);
+        if (prefix.isEmpty()) {
+            return normalized;
+        }
+        return normalized.isEmpty() ? "" : prefix + "/" + normalized;
+    }
+
+    private static List<String> segments(String path) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            String trimmed = segment.trim();
+            if (!trimmed.isEmpty() && !".".equals(trimmed) && !"..".equals(trimmed)) {
+                segments.add(trimmed);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * A node of the reverse-segment trie: the layout paths ending with the
+     * segments on the way to it
+     */
+    private static class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        private final List<String> paths = new ArrayList<>();
+    }
+}
@@ -0,0 +1,191 @@
+package org.joget.marketplace;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Opt-in cache of complete LLM responses for requests that are exactly the
+ * same: same model, effective system prompt (including the code layout
+ * instructions), temperature, conversation history, token context and
+ * message.
+ * 
+ * Entries expire after their time to live, and the least recently used ones
+ * are evicted once the cache exceeds its entry count or its approximate size
+ * in bytes.
+ */
+public class ResponseCache {
+
+    public static final int DEFAULT_TTL_MINUTES = 60;
+
+    private static final int MAX_ENTRIES = 500;
+    private static final long MAX_BYTES = 32L * 1024 * 1024;
+
+    private static final ResponseCache INSTANCE = new ResponseCache();
+
+    // Access-ordered so iteration starts from the least recently used response
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long expirations = 0;
+
+    private ResponseCache() {
+    }
+
+    /**
+     * Gets the cache shared by all instances of the plugin
+     * 
+     * @return The shared cache
+     */
+    public static ResponseCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Builds the cache key of a request. Defaults must already be applied so
+     * that equivalent requests produce the same key.
+     * 
+     * @param request The request
+     * @return A SHA-256 hex digest identifying the request
+     */
+    public static String buildKey(OllamaRequest request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, request.getApiEndpoint());
+            update(digest, request.getModel());
+            update(digest, OllamaApiClient.buildSystemPrompt(request.getSystemPrompt(), request.isProjectOutput()));
+            update(digest, Double.toString(request.getTemperature()));
+            update(digest, request.getHistory() != null ? request.getHistory().toString() : "");
+            update(digest, request.getContext() != null ? Arrays.toString(request.getContext()) : "");
+            update(digest, request.getMessage());
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String part) {
+        if (part != null) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+        }
+        // Separate the parts so that moving text between them changes the key
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Converts bytes to a lowercase hex string
+     * 
+     * @param bytes The bytes to convert
+     * @return The hex string
+     */
+    public static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Gets a cached response
+     * 
+     * @param key The request key
+     * @return The cached response, or null if there is none or it expired
+     */
+    public synchronized OllamaResponse get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            removeEntry(key);
+            expirations++;
+            entry = null;
+        }
+
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.response;
+    }
+
+    /**
+     * Caches a response
+     * 
+     * @param key        The request key
+     * @param response   The complete response
+     * @param ttlMinutes How long the response stays valid
+     */
+    public synchronized void put(String key, OllamaResponse response, int ttlMinutes) {
+        removeEntry(key);
+
+        Entry entry = new Entry(response, System.currentTimeMillis() + ttlMinutes * 60000L);
+        if (entry.bytes > MAX_BYTES) {
+            return;
+        }
+        entries.put(key, entry);
+        totalBytes += entry.bytes;
+
+        long now = System.currentTimeMillis();
+        Iterator<Entry> leastRecentFirst = entries.values().iterator();
+        while ((entries.size() > MAX_ENTRIES || totalBytes > MAX_BYTES) && leastRecentFirst.hasNext()) {
+            Entry eldest = leastRecentFirst.next();
+            totalBytes -= eldest.bytes;
+            leastRecentFirst.remove();
+            if (eldest.expiresAt <= now) {
+                expirations++;
+            } else {
+                evictions++;
+            }
+        }
+    }
+
+    private void removeEntry(String key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            totalBytes -= previous.bytes;
+        }
+    }
+
+    /**
+     * Gets the cache statistics, including the hit ratio
+     * 
+     * @return The statistics as JSON
+     * @throws JSONException If the statistics cannot be built
+     */
+    public synchronized JSONObject getStatistics() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("entries", entries.size());
+        stats.put("bytes", totalBytes);
+        stats.put("maxBytes", MAX_BYTES);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRatio", hits + misses > 0 ? (double) hits / (hits + misses) : 0d);
+        stats.put("evictions", evictions);
+        stats.put("expirations", expirations);
+        return stats;
+    }
+
+    private static class Entry {
+
+        private final OllamaResponse response;
+        private final long expiresAt;
+        private final long bytes;
+
+        Entry(OllamaResponse response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+            // Two bytes per char plus four per context token
+            this.bytes = response.getText().length() * 2L
+                    + (response.getContext() != null ? response.getContext().length * 4L : 0);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.joget.marketplace;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Keeps the raw text of recent LLM responses so that the page can refer to a
+ * response by its ID, for example to download its code, instead of sending
+ * the rendered response back.
+ * 
+ * The {@link ArchiveCache} key of the zip of the code of a response is kept
+ * with it when the zip was built while the response was generated.
+ * 
+ * A response can only be read back by the conversation it was generated for.
+ * Responses are kept for a limited time, and the least recently used ones are
+ * dropped once the store exceeds its entry count or its approximate size in
+ * bytes.
+ */
+public class ResponseStore {
+
+    public static final long RETENTION = 2 * 60 * 60 * 1000L;
+
+    private static final int MAX_ENTRIES = 1000;
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final ResponseStore INSTANCE = new ResponseStore();
+
+    // Access-ordered so iteration starts from the least recently used response
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private long stored = 0;
+    private long evictions = 0;
+
+    private ResponseStore() {
+    }
+
+    /**
+     * Gets the store shared by all instances of the plugin
+     * 
+     * @return The shared store
+     */
+    public static ResponseStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Keeps a response
+     * 
+     * @param conversationKey The key of the conversation the response belongs
+     *                        to
+     * @param text            The raw response text
+     * @return The ID of the response
+     */
+    public String put(String conversationKey, String text) {
+        return put(conversationKey, text, null);
+    }
+
+    /**
+     * Keeps a response with the key of the zip of its code
+     * 
+     * @param conversationKey The key of the conversation the response belongs
+     *                        to
+     * @param text            The raw response text
+     * @param archiveKey      The archive cache key of the zip of the code of
+     *                        the response, or null
+     * @return The ID of the response
+     */
+    public synchronized String put(String conversationKey, String text, String archiveKey) {
+        String responseId = UUID.randomUUID().toString();
+        Entry entry = new Entry(conversationKey, text, archiveKey, System.currentTimeMillis() + RETENTION);
+        entries.put(responseId, entry);
+        totalBytes += entry.bytes;
+        stored++;
+
+        // Drop the least recently used responses while over the limits or expired
+        long now = System.currentTimeMillis();
+        Iterator<Entry> leastRecentFirst = entries.values().iterator();
+        while (leastRecentFirst.hasNext()) {
+            Entry eldest = leastRecentFirst.next();
+            boolean overLimit = entries.size() > MAX_ENTRIES || totalBytes > MAX_BYTES;
+            if (!overLimit && eldest.expiresAt > now) {
+                break;
+            }
+            totalBytes -= eldest.bytes;
+            leastRecentFirst.remove();
+            if (overLimit) {
+                evictions++;
+            }
+        }
+        return responseId;
+    }
+
+    /**
+     * Gets a response
+     * 
+     * @param conversationKey The key of the conversation asking for it
+     * @param responseId      The ID of the response
+     * @return The raw response text, or null if there is no such response in
+     *         this conversation or it expired
+     */
+    public synchronized String get(String conversationKey, String responseId) {
+        Entry entry = lookup(conversationKey, responseId);
+        return entry != null ? entry.text : null;
+    }
+
+    /**
+     * Gets the key of the zip of the code of a response, when it was kept with
+     * it
+     * 
+     * @param conversationKey The key of the conversation asking for it
+     * @param responseId      The ID of the response
+     * @return The archive cache key, or null if there is no such response in
+     *         this conversation, it expired or it was kept without a key
+     */
+    public synchronized String getArchiveKey(String conversationKey, String responseId) {
+        Entry entry = lookup(conversationKey, responseId);
+        return entry != null ? entry.archiveKey : null;
+    }
+
+    private Entry lookup(String conversationKey, String responseId) {
+        Entry entry = entries.get(responseId);
+        if (entry == null || !entry.conversationKey.equals(conversationKey)) {
+            return null;
+        }
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(responseId);
+            totalBytes -= entry.bytes;
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the store statistics
+     * 
+     * @return The statistics as JSON
+     * @throws JSONException If the statistics cannot be built
+     */
+    public synchronized JSONObject getStatistics() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("entries", entries.size());
+        stats.put("bytes", totalBytes);
+        stats.put("maxBytes", MAX_BYTES);
+        stats.put("stored", stored);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+
+    private static class Entry {
+
+        private final String conversationKey;
+        private final String text;
+        private final String archiveKey;
+        private final long expiresAt;
+        private final long bytes;
+
+        Entry(String conversationKey, String text, String archiveKey, long expiresAt) {
+            this.conversationKey = conversationKey;
+            this.text = text;
+            this.archiveKey = archiveKey;
+            this.expiresAt = expiresAt;
+            // Two bytes per char
+            this.bytes = text.length() * 2L;
+        }
+    }
+}
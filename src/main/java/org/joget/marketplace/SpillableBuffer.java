@@ -0,0 +1,237 @@
+package org.joget.marketplace;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Text buffer that stays in memory up to a threshold and moves to a temporary
+ * file beyond it, so that a very large response or request body costs a
+ * bounded amount of heap. Its content is read back as a stream.
+ * 
+ * Each buffer has a maximum length, the memory cap of the request it belongs
+ * to; appending beyond it fails with {@link LimitExceededException}. A buffer
+ * must be closed to delete its file.
+ */
+public class SpillableBuffer implements AutoCloseable {
+
+    // Characters kept in memory before the content moves to a file
+    public static final int DEFAULT_MEMORY_THRESHOLD = 256 * 1024;
+
+    private final int memoryThreshold;
+    private final long maxLength;
+
+    // The content while in memory: appended text, or a string the buffer was made from
+    private CharSequence memory;
+    private File file;
+    private Writer fileWriter;
+    private long length = 0;
+
+    /**
+     * Creates an empty buffer with the default memory threshold
+     * 
+     * @param maxLength The largest number of characters the buffer accepts
+     */
+    public SpillableBuffer(long maxLength) {
+        this(DEFAULT_MEMORY_THRESHOLD, maxLength);
+    }
+
+    public SpillableBuffer(int memoryThreshold, long maxLength) {
+        this.memoryThreshold = memoryThreshold;
+        this.maxLength = maxLength;
+        this.memory = new StringBuilder();
+    }
+
+    /**
+     * Makes a buffer holding a string already in memory, without copying it
+     * 
+     * @param text The text
+     * @return The buffer
+     */
+    public static SpillableBuffer wrap(String text) {
+        SpillableBuffer buffer = new SpillableBuffer(Integer.MAX_VALUE, Long.MAX_VALUE);
+        buffer.memory = text;
+        buffer.length = text.length();
+        return buffer;
+    }
+
+    /**
+     * Reads a stream to its end into a new buffer
+     * 
+     * @param reader    The stream, left open
+     * @param maxLength The largest number of characters to accept
+     * @return The buffer
+     * @throws IOException If the stream cannot be read, it is longer than
+     *                     allowed or the temporary file cannot be written
+     */
+    public static SpillableBuffer read(Reader reader, long maxLength) throws IOException {
+        SpillableBuffer buffer = new SpillableBuffer(maxLength);
+        try {
+            char[] chunk = new char[8192];
+            int read;
+            while ((read = reader.read(chunk)) != -1) {
+                buffer.append(chunk, 0, read);
+            }
+            return buffer;
+        } catch (IOException | RuntimeException e) {
+            buffer.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends text
+     * 
+     * @param text The text
+     * @throws IOException If the buffer would grow longer than allowed or the
+     *                     temporary file cannot be written
+     */
+    public void append(CharSequence text) throws IOException {
+        reserve(text.length());
+        if (fileWriter != null) {
+            fileWriter.append(text);
+        } else {
+            ((StringBuilder) memory).append(text);
+        }
+    }
+
+    public void append(char[] chars, int offset, int count) throws IOException {
+        reserve(count);
+        if (fileWriter != null) {
+            fileWriter.write(chars, offset, count);
+        } else {
+            ((StringBuilder) memory).append(chars, offset, count);
+        }
+    }
+
+    private void reserve(int count) throws IOException {
+        if (length + count > maxLength) {
+            throw new LimitExceededException(maxLength);
+        }
+        if (!(memory instanceof StringBuilder) && fileWriter == null) {
+            // A wrapped string is copied before it is changed
+            memory = new StringBuilder(memory);
+        }
+        length += count;
+
+        // Move the content to a file once it outgrows the memory threshold
+        if (fileWriter == null && length > memoryThreshold) {
+            file = File.createTempFile("ollama-chat-", ".buf");
+            fileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+            fileWriter.append(memory);
+            memory = null;
+        }
+    }
+
+    /**
+     * Gets the number of characters in the buffer
+     * 
+     * @return The length
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Checks whether the content has moved to a file
+     * 
+     * @return true if the content is on disk
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Opens a stream over the content. Text appended afterwards may not be
+     * seen by it.
+     * 
+     * @return A reader, which the caller must close
+     * @throws IOException If the temporary file cannot be read
+     */
+    public Reader openReader() throws IOException {
+        if (fileWriter != null) {
+            fileWriter.flush();
+            return new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+        }
+        return new StringReader(memory.toString());
+    }
+
+    /**
+     * Gets the start of the content, for logging
+     * 
+     * @param maxChars The most characters to return
+     * @return The start of the content
+     * @throws IOException If the temporary file cannot be read
+     */
+    public String getPrefix(int maxChars) throws IOException {
+        if (memory != null) {
+            return memory.subSequence(0, (int) Math.min(maxChars, length)).toString();
+        }
+        StringBuilder prefix = new StringBuilder();
+        try (Reader reader = openReader()) {
+            char[] chunk = new char[Math.min(maxChars, 8192)];
+            int read;
+            while (prefix.length() < maxChars
+                    && (read = reader.read(chunk, 0, Math.min(chunk.length, maxChars - prefix.length()))) != -1) {
+                prefix.append(chunk, 0, read);
+            }
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Gets the whole content as a string. Only meant for content known to be
+     * small enough, as it brings a spilled buffer back into memory.
+     * 
+     * @return The content
+     * @throws IOException If the temporary file cannot be read
+     */
+    public String toText() throws IOException {
+        return memory != null ? memory.toString() : getPrefix((int) length);
+    }
+
+    /**
+     * Deletes the temporary file, if any
+     */
+    @Override
+    public void close() {
+        if (fileWriter != null) {
+            try {
+                fileWriter.close();
+            } catch (IOException e) {
+                // The file is deleted regardless
+            }
+            fileWriter = null;
+        }
+        if (file != null && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Thrown when content grows beyond the memory cap of its request
+     */
+    public static class LimitExceededException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long maxLength;
+
+        public LimitExceededException(long maxLength) {
+            super("The content is longer than " + maxLength + " characters");
+            this.maxLength = maxLength;
+        }
+
+        public long getMaxLength() {
+            return maxLength;
+        }
+    }
+}
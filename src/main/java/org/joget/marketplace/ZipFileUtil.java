@@ -2,14 +2,22 @@ package org.joget.marketplace;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import org.joget.commons.util.LogUtil;
@@ -20,6 +28,13 @@ import org.json.JSONObject;
  * Utility class for creating zip files from code snippets
  */
 public class ZipFileUtil {
+
+    // Modification time of every entry, so the same files always give the same zip
+    private static final long ENTRY_TIME = new GregorianCalendar(1980, 0, 1).getTimeInMillis();
+
+    // The project layout closes the response, so it is only looked for in this many characters at the end
+    private static final int LAYOUT_WINDOW = 256 * 1024;
+
     /**
      * Creates a zip file from chat content containing code snippets
      * 
@@ -30,25 +45,14 @@ public class ZipFileUtil {
         try {
             LogUtil.info(ZipFileUtil.class.getName(), "Starting to create zip from chat content");
 
-            // Extract code files from chat content
-            Map<String, String> codeFiles = extractCodeFiles(chatContent);
-
-            // Extract project structure from JSON at the end of the response
-            JSONObject projectStructure = extractProjectStructure(chatContent);
-
-            // Create a zip file with the extracted code files
-            if (codeFiles.isEmpty()) {
-                LogUtil.info(ZipFileUtil.class.getName(), "No code files found in chat content");
+            Map<String, String> zipEntries = extractZipEntries(chatContent);
+            if (zipEntries.isEmpty()) {
                 return null;
             }
 
-            // If we have a project structure, use it to organize files
-            if (projectStructure != null) {
-                return createZipFromCodeFilesWithJsonStructure(codeFiles, projectStructure);
-            } else {
-                // Fallback to simple zip creation if no project structure is found
-                return createZipFromCodeFiles(codeFiles);
-            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            writeZip(zipEntries, baos);
+            return baos.toByteArray();
         } catch (Exception e) {
             LogUtil.error(ZipFileUtil.class.getName(), e, "Error creating zip from chat content: " + e.getMessage());
             return null;
@@ -56,129 +60,132 @@ public class ZipFileUtil {
     }
 
     /**
-     * Extracts code files from chat content
+     * Extracts the code files of chat content and places them at their path in
+     * the project layout, when the content has one
      * 
      * @param chatContent The chat content containing code snippets
-     * @return A map of filenames to code content
+     * @return A map of zip entry paths to code content, empty if the content
+     *         has no code files
+     * @throws IOException If the chat content is too long to extract
      */
-    private static Map<String, String> extractCodeFiles(String chatContent) {
-        Map<String, String> codeFiles = new HashMap<>();
+    public static Map<String, String> extractZipEntries(String chatContent) throws IOException {
+        return arrangeZipEntries(extractCodeFiles(chatContent), chatContent);
+    }
 
-        // Log a sample of the chat content for debugging
-        LogUtil.info(ZipFileUtil.class.getName(), "Chat content sample for debugging: " +
-                (chatContent.length() > 200 ? chatContent.substring(0, 200) + "..." : chatContent));
+    /**
+     * Extracts the code files of chat content read from a stream, keeping only
+     * the end of the content for the project layout, so content of any length
+     * is extracted in bounded memory
+     * 
+     * @param chatContent The chat content containing code snippets, left open
+     * @return A map of zip entry paths to code content, empty if the content
+     *         has no code files
+     * @throws IOException If the chat content cannot be read or is too long to
+     *                     extract
+     */
+    public static Map<String, String> extractZipEntries(Reader chatContent) throws IOException {
+        CodeBlockTokenizer tokenizer = new CodeBlockTokenizer();
+        StringBuilder tail = new StringBuilder();
+        char[] chunk = new char[8192];
+        int read;
+        while ((read = chatContent.read(chunk)) != -1) {
+            tokenizer.feed(CharBuffer.wrap(chunk, 0, read));
+            tail.append(chunk, 0, read);
+            if (tail.length() > 2 * LAYOUT_WINDOW) {
+                tail.delete(0, tail.length() - LAYOUT_WINDOW);
+            }
+        }
+        tokenizer.finish();
 
-        // Track the current file being processed
-        String currentFileName = null;
-
-        // Patterns to match file headers in different formats
-        List<Pattern> fileHeaderPatterns = new ArrayList<>();
-        // Pattern for <strong>File 1: filename.ext</strong>
-        fileHeaderPatterns.add(Pattern.compile("<strong>File\\s+\\d+:?\\s+([^<]+)</strong>"));
-
-        // Patterns to match code blocks
-        List<Pattern> codeBlockPatterns = new ArrayList<>();
-        // HTML code blocks with language and double underscore separators
-        codeBlockPatterns
-                .add(Pattern.compile("<pre><code\\s+class=\"language-([^\"]+)\">(.*?)</code></pre>__", Pattern.DOTALL));
-        // HTML code blocks with language
-        codeBlockPatterns
-                .add(Pattern.compile("<pre><code\\s+class=\"language-([^\"]+)\">(.*?)</code></pre>", Pattern.DOTALL));
-        // HTML code blocks without language
-        codeBlockPatterns.add(Pattern.compile("<pre><code>(.*?)</code></pre>", Pattern.DOTALL));
-        // Code block container
-        codeBlockPatterns
-                .add(Pattern.compile("<div class=\"code-block-container\"><pre>(.*?)</pre></div>", Pattern.DOTALL));
-        // Simple pre tags
-        codeBlockPatterns.add(Pattern.compile("<pre>(.*?)</pre>", Pattern.DOTALL));
-        // Markdown code fences with language
-        codeBlockPatterns.add(Pattern.compile("```([a-zA-Z0-9]+)\\s*\\n(.*?)\\n```", Pattern.DOTALL));
-        // Markdown code fences without language
-        codeBlockPatterns.add(Pattern.compile("```\\s*\\n(.*?)\\n```", Pattern.DOTALL));
-
-        // Process each file header pattern
-        for (int i = 0; i < fileHeaderPatterns.size(); i++) {
-            Pattern fileHeaderPattern = fileHeaderPatterns.get(i);
-            Matcher fileHeaderMatcher = fileHeaderPattern.matcher(chatContent);
-            int lastEnd = 0;
+        List<CodeBlockTokenizer.CodeFile> codeFiles = tokenizer.getFiles();
+        logCodeFiles(codeFiles);
+        return arrangeZipEntries(codeFiles, tail.toString());
+    }
 
-            LogUtil.info(ZipFileUtil.class.getName(),
-                    "Trying file header pattern #" + (i + 1) + ": " + fileHeaderPattern.pattern());
+    /**
+     * Places code files already extracted from chat content at their path in
+     * the project layout, when the content has one
+     * 
+     * @param codeFiles   The code files
+     * @param chatContent The chat content the files were extracted from, or
+     *                    null if the names of the files are their full paths
+     * @return A map of zip entry paths to code content, empty if there are no
+     *         code files
+     */
+    public static Map<String, String> arrangeZipEntries(List<CodeBlockTokenizer.CodeFile> codeFiles,
+            String chatContent) {
+        if (codeFiles.isEmpty()) {
+            LogUtil.info(ZipFileUtil.class.getName(), "No code files found in chat content");
+            return new LinkedHashMap<>();
+        }
 
-            while (fileHeaderMatcher.find()) {
-                currentFileName = fileHeaderMatcher.group(1).trim();
-                LogUtil.info(ZipFileUtil.class.getName(),
-                        "Found file header match with pattern #" + (i + 1) + ": " + currentFileName);
-
-                // Remove code tags if present
-                if (currentFileName.startsWith("<code>") && currentFileName.endsWith("</code>")) {
-                    currentFileName = currentFileName.substring(6, currentFileName.length() - 7).trim();
-                    LogUtil.info(ZipFileUtil.class.getName(), "Cleaned filename: " + currentFileName);
-                }
-
-                lastEnd = fileHeaderMatcher.end();
-
-                // Look for code block after the file header
-                boolean foundCodeBlock = false;
-                for (int j = 0; j < codeBlockPatterns.size(); j++) {
-                    Pattern pattern = codeBlockPatterns.get(j);
-                    Matcher codeMatcher = pattern.matcher(chatContent);
-                    LogUtil.info(ZipFileUtil.class.getName(),
-                            "Trying code block pattern #" + (j + 1) + " for file: " + currentFileName);
-
-                    if (codeMatcher.find(lastEnd)) {
-                        LogUtil.info(ZipFileUtil.class.getName(),
-                                "Found code block match with pattern #" + (j + 1) + " for file: " + currentFileName);
-
-                        String codeContent;
-                        if (codeMatcher.groupCount() > 1) {
-                            // If the pattern has a language group, use the second group for content
-                            codeContent = codeMatcher.group(2);
-                            LogUtil.info(ZipFileUtil.class.getName(), "Using group 2 for code content (with language)");
-                        } else {
-                            // Otherwise use the first group
-                            codeContent = codeMatcher.group(1);
-                            LogUtil.info(ZipFileUtil.class.getName(), "Using group 1 for code content");
-                        }
-
-                        // Clean up HTML entities
-                        codeContent = codeContent.replace("&lt;", "<")
-                                .replace("&gt;", ">")
-                                .replace("&amp;", "&")
-                                .replace("&quot;", "\"")
-                                .replace("&#39;", "'");
-
-                        // Remove File X: and Code: header lines
-                        codeContent = codeContent.replace("^File\\s+\\d+:\\s+[^\n]+\\n", "");
-                        codeContent = codeContent.replace("^Code:\\s*\\n", "");
-
-                        // Add the file to our map
-                        codeFiles.put(currentFileName, codeContent);
-                        foundCodeBlock = true;
-                        lastEnd = codeMatcher.end();
-                        break;
-                    }
-                }
-
-                if (!foundCodeBlock) {
-                    LogUtil.info(ZipFileUtil.class.getName(),
-                            "Found file header but no code block for: " + currentFileName);
-                }
+        // Extract project structure from JSON at the end of the response
+        JSONObject projectStructure = null;
+        if (chatContent != null) {
+            projectStructure = extractProjectStructure(chatContent.length() > LAYOUT_WINDOW
+                    ? chatContent.substring(chatContent.length() - LAYOUT_WINDOW) : chatContent);
+        }
+
+        // If we have a project structure, use it to organize files
+        if (projectStructure != null) {
+            return arrangeByJsonStructure(codeFiles, projectStructure);
+        } else {
+            // Fallback to the file names alone if no project structure is found
+            Map<String, String> zipEntries = new LinkedHashMap<>();
+            for (CodeBlockTokenizer.CodeFile file : codeFiles) {
+                addEntry(zipEntries, ProjectPathIndex.normalizePath(file.getName()), file.getContent());
             }
+            return zipEntries;
         }
+    }
 
-        // Look for "Code:" pattern
-        Pattern codePattern = Pattern.compile("<strong>Code:</strong></p>__<pre>");
-        Matcher codeMatcher = codePattern.matcher(chatContent);
-        if (codeMatcher.find() && currentFileName != null) {
-            // This is a special case where "Code:" appears on a separate line
-            LogUtil.info(ZipFileUtil.class.getName(), "Found 'Code:' pattern for: " + currentFileName);
+    /**
+     * Builds the zip of code files already extracted from chat content
+     * 
+     * @param codeFiles   The code files
+     * @param chatContent The chat content the files were extracted from, or
+     *                    null if the names of the files are their full paths
+     * @return The zip file data, or null if there are no code files
+     * @throws IOException If the zip cannot be written
+     */
+    public static byte[] createZip(List<CodeBlockTokenizer.CodeFile> codeFiles, String chatContent)
+            throws IOException {
+        Map<String, String> zipEntries = arrangeZipEntries(codeFiles, chatContent);
+        if (zipEntries.isEmpty()) {
+            return null;
         }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writeZip(zipEntries, baos);
+        return baos.toByteArray();
+    }
 
-        LogUtil.info(ZipFileUtil.class.getName(), "Extracted " + codeFiles.size() + " code files");
+    /**
+     * Extracts code files from chat content
+     * 
+     * @param chatContent The chat content containing code snippets
+     * @return The code files, in the order they appear
+     * @throws IOException If the chat content is too long to extract
+     */
+    private static List<CodeBlockTokenizer.CodeFile> extractCodeFiles(String chatContent) throws IOException {
+        // Log a sample of the chat content for debugging
+        LogUtil.info(ZipFileUtil.class.getName(), "Chat content sample for debugging: " +
+                (chatContent.length() > 200 ? chatContent.substring(0, 200) + "..." : chatContent));
+
+        // Read the file headers and the code blocks following them in a single pass
+        List<CodeBlockTokenizer.CodeFile> codeFiles = CodeBlockTokenizer.tokenize(chatContent);
+        logCodeFiles(codeFiles);
         return codeFiles;
     }
 
+    private static void logCodeFiles(List<CodeBlockTokenizer.CodeFile> codeFiles) {
+        for (CodeBlockTokenizer.CodeFile file : codeFiles) {
+            LogUtil.info(ZipFileUtil.class.getName(),
+                    "Found code block for file: " + file.getName() + " (" + file.getContent().length() + " characters)");
+        }
+
+        LogUtil.info(ZipFileUtil.class.getName(), "Extracted " + codeFiles.size() + " code files");
+    }
+
     /**
      * Extracts project structure JSON from chat content
      * 
@@ -229,181 +236,135 @@ public class ZipFileUtil {
     }
 
     /**
-     * Creates a zip file from code files using the JSON project structure
+     * Places code files at their paths in the JSON project structure
      * 
-     * @param codeFiles        Map of filenames to code content
+     * @param codeFiles        The code files
      * @param projectStructure JSONObject representing the project structure
-     * @return A byte array containing the zip file data
+     * @return A map of full paths to code content
      */
-    private static byte[] createZipFromCodeFilesWithJsonStructure(Map<String, String> codeFiles,
+    private static Map<String, String> arrangeByJsonStructure(List<CodeBlockTokenizer.CodeFile> codeFiles,
             JSONObject projectStructure) {
-        try {
-            LogUtil.info(ZipFileUtil.class.getName(), "Creating zip with JSON structure");
-
-            // Extract the hierarchical project structure
-            Map<String, String> filePathMap = new HashMap<>();
-            String rootDir = extractHierarchicalProjectStructure(projectStructure, "", filePathMap);
-
-            if (rootDir == null || rootDir.isEmpty()) {
-                LogUtil.info(ZipFileUtil.class.getName(), "Could not determine root directory from JSON structure");
-                return createZipFromCodeFiles(codeFiles); // Fallback to simple zip
-            }
-
-            // Log the extracted file paths for debugging
-            LogUtil.info(ZipFileUtil.class.getName(), "Root directory: " + rootDir);
-            LogUtil.info(ZipFileUtil.class.getName(), "Found " + filePathMap.size() + " file paths in JSON structure");
-            for (Map.Entry<String, String> entry : filePathMap.entrySet()) {
+        LogUtil.info(ZipFileUtil.class.getName(), "Arranging files with JSON structure");
+
+        // Index the paths of the layout by their segments, basename first
+        ProjectPathIndex index = ProjectPathIndex.fromLayout(projectStructure);
+        LogUtil.info(ZipFileUtil.class.getName(), "Root directory: " + index.getRootDir());
+        LogUtil.info(ZipFileUtil.class.getName(),
+                "Found " + index.getPaths().size() + " file paths in JSON structure");
+
+        // Create a map of full paths to code content
+        List<String> fileNames = new ArrayList<>();
+        for (CodeBlockTokenizer.CodeFile file : codeFiles) {
+            fileNames.add(file.getName());
+        }
+        List<String> paths = index.resolveAll(fileNames);
+
+        Map<String, String> pathToContentMap = new LinkedHashMap<>();
+        for (int i = 0; i < codeFiles.size(); i++) {
+            CodeBlockTokenizer.CodeFile file = codeFiles.get(i);
+            String path = paths.get(i);
+            if (path != null) {
+                LogUtil.info(ZipFileUtil.class.getName(), "  " + file.getName() + " matched to path: " + path);
+            } else {
+                // The layout does not list the file, place it in the root directory
+                path = index.placeUnlisted(file.getName());
                 LogUtil.info(ZipFileUtil.class.getName(),
-                        "  File path: " + entry.getValue() + " (key: " + entry.getKey() + ")");
-            }
-
-            // Create a map of full paths to code content
-            Map<String, String> pathToContentMap = new HashMap<>();
-
-            // Match code files to paths in the structure
-            for (Map.Entry<String, String> entry : codeFiles.entrySet()) {
-                String filename = entry.getKey();
-                String content = entry.getValue();
-                boolean fileAdded = false;
-
-                LogUtil.info(ZipFileUtil.class.getName(), "Processing file: " + filename);
-
-                // Try to find an exact match in the file path map
-                for (Map.Entry<String, String> pathEntry : filePathMap.entrySet()) {
-                    String key = pathEntry.getKey();
-                    String path = pathEntry.getValue();
-
-                    // Check if the filename matches the end of the path or the key exactly
-                    if (path.endsWith("/" + filename) || key.equals(filename)) {
-                        pathToContentMap.put(path, content);
-                        fileAdded = true;
-                        LogUtil.info(ZipFileUtil.class.getName(), "  Matched to path: " + path);
-                        break;
-                    }
-                }
-
-                // If no exact match, try to match by filename only (ignoring directory structure)
-                if (!fileAdded) {
-                    for (Map.Entry<String, String> pathEntry : filePathMap.entrySet()) {
-                        String key = pathEntry.getKey();
-                        String path = pathEntry.getValue();
-
-                        if (key.equals(filename)) {
-                            pathToContentMap.put(path, content);
-                            fileAdded = true;
-                            LogUtil.info(ZipFileUtil.class.getName(), "  Matched by key: " + path);
-                            break;
-                        }
-                    }
-                }
-
-                // If still no match, place in the root directory
-                if (!fileAdded) {
-                    String path = rootDir + "/" + filename;
-                    pathToContentMap.put(path, content);
-                    LogUtil.info(ZipFileUtil.class.getName(), "  No match found, placing in root: " + path);
-                }
+                        "  " + file.getName() + " not in layout, placing in root: " + path);
             }
-
-            // Create the zip file
-            return createZipFromCodeFiles(pathToContentMap);
-
-        } catch (Exception e) {
-            LogUtil.error(ZipFileUtil.class.getName(), e, "Error creating zip with JSON structure: " + e.getMessage());
-            return createZipFromCodeFiles(codeFiles); // Fallback to simple zip
+            addEntry(pathToContentMap, path, file.getContent());
         }
+        return pathToContentMap;
     }
 
     /**
-     * Recursively extracts the hierarchical project structure from a JSONObject
+     * Adds a zip entry, numbering the name when the path is already taken, as
+     * happens when files sharing a name are not all listed in the layout
      * 
-     * @param json        The JSONObject to extract from
-     * @param currentPath The current path in the hierarchy
-     * @param filePathMap Map to store file paths
-     * @return The root directory name
+     * @param zipEntries The entries so far
+     * @param path       The path of the entry
+     * @param content    The content of the entry
      */
-    private static String extractHierarchicalProjectStructure(JSONObject json, String currentPath, Map<String, String> filePathMap) {
-        String rootDir = null;
-
-        try {
-            // Get the first key as the root directory if we're at the top level
-            if (currentPath.isEmpty() && json.keys().hasNext()) {
-                rootDir = json.keys().next();
-                currentPath = rootDir;
+    private static void addEntry(Map<String, String> zipEntries, String path, String content) {
+        if (path.isEmpty()) {
+            return;
+        }
+        String uniquePath = path;
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        boolean hasExtension = dot > slash + 1;
+        for (int copy = 2; zipEntries.containsKey(uniquePath); copy++) {
+            uniquePath = hasExtension ? path.substring(0, dot) + "-" + copy + path.substring(dot)
+                    : path + "-" + copy;
+        }
+        zipEntries.put(uniquePath, content);
+    }
 
-                // Log the root directory
-                LogUtil.info(ZipFileUtil.class.getName(), "Found root directory: " + rootDir);
+    /**
+     * Reads the files of a zip written by {@link #writeZip}
+     * 
+     * @param in The zip file data, left open
+     * @return A map of zip entry paths to code content, in the order of the
+     *         entries
+     * @throws IOException If the zip cannot be read
+     */
+    public static Map<String, String> readZip(InputStream in) throws IOException {
+        Map<String, String> zipEntries = new LinkedHashMap<>();
+        ZipInputStream zis = new ZipInputStream(in, StandardCharsets.UTF_8);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        ZipEntry zipEntry;
+        while ((zipEntry = zis.getNextEntry()) != null) {
+            if (zipEntry.isDirectory()) {
+                continue;
             }
-
-            // Iterate through all keys in this object
-            for (String key : json.keySet()) {
-                // Skip if the key is the same as the last path segment
-                String newPath;
-                if (currentPath.endsWith("/" + key) || currentPath.equals(key)) {
-                    newPath = currentPath; // Avoid duplicating directory names
-                } else {
-                    newPath = currentPath.isEmpty() ? key : currentPath + "/" + key;
-                }
-
-                Object value = json.get(key);
-
-                if (value instanceof JSONObject) {
-                    // Recursively process nested directories
-                    extractHierarchicalProjectStructure((JSONObject) value, newPath, filePathMap);
-                } else if (value == null || value.equals(JSONObject.NULL)) {
-                    // This is a file (null value)
-                    filePathMap.put(key, newPath);
-                    LogUtil.info(ZipFileUtil.class.getName(),
-                            "Found file in JSON structure: " + newPath + " (key: " + key + ")");
-                }
+            content.reset();
+            int read;
+            while ((read = zis.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
             }
-
-            return rootDir;
-        } catch (JSONException e) {
-            LogUtil.error(ZipFileUtil.class.getName(), e, "Error extracting hierarchical structure: " + e.getMessage());
-            return null;
+            zipEntries.put(zipEntry.getName(), new String(content.toByteArray(), StandardCharsets.UTF_8));
         }
+        return zipEntries;
     }
 
     /**
-     * Creates a zip file from a map of filenames to code content
+     * Writes a zip file of code files to a stream, one entry at a time. Only
+     * the encoder buffer and the deflater are held in memory besides the
+     * content, so the stream can be a servlet response.
      * 
      * @param codeFiles Map of filenames to code content
-     * @return A byte array containing the zip file data
+     * @param out       The stream to write to, left open
+     * @throws IOException If the stream cannot be written to
      */
-    private static byte[] createZipFromCodeFiles(Map<String, String> codeFiles) {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                ZipOutputStream zos = new ZipOutputStream(baos)) {
-
-            LogUtil.info(ZipFileUtil.class.getName(), "Creating zip with " + codeFiles.size() + " files");
-
-            // Add each file to the zip
-            for (Map.Entry<String, String> entry : codeFiles.entrySet()) {
-                String filename = entry.getKey();
-                String content = entry.getValue();
-
-                // Normalize path separators
-                filename = filename.replace("\\", "/");
-
-                // Create a zip entry
-                ZipEntry zipEntry = new ZipEntry(filename);
-                zos.putNextEntry(zipEntry);
+    public static void writeZip(Map<String, String> codeFiles, OutputStream out) throws IOException {
+        // Large projects are compressed on several threads
+        if (ParallelZipWriter.accepts(codeFiles)) {
+            LogUtil.info(ZipFileUtil.class.getName(), "Writing zip with " + codeFiles.size() + " files in parallel");
+            ParallelZipWriter.write(codeFiles, out);
+            return;
+        }
 
-                // Write the file content
-                byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
-                zos.write(bytes, 0, bytes.length);
+        LogUtil.info(ZipFileUtil.class.getName(), "Writing zip with " + codeFiles.size() + " files");
 
-                // Close the entry
-                zos.closeEntry();
-            }
+        ZipOutputStream zos = new ZipOutputStream(out);
+        Writer writer = new OutputStreamWriter(zos, StandardCharsets.UTF_8);
 
-            // Finish the zip
-            zos.finish();
+        // Add each file to the zip
+        for (Map.Entry<String, String> entry : codeFiles.entrySet()) {
+            // Normalize path separators
+            String filename = entry.getKey().replace("\\", "/");
 
-            return baos.toByteArray();
-        } catch (IOException e) {
-            LogUtil.error(ZipFileUtil.class.getName(), e, "Error creating zip file: " + e.getMessage());
-            return null;
+            // Encode the content straight into the entry
+            ZipEntry zipEntry = new ZipEntry(filename);
+            zipEntry.setTime(ENTRY_TIME);
+            zos.putNextEntry(zipEntry);
+            writer.write(entry.getValue());
+            writer.flush();
+            zos.closeEntry();
         }
+
+        // Finish the zip without closing the caller's stream
+        zos.finish();
+        zos.flush();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,815 @@
+$(document).ready(function() {
+    const chatMessages = $('#chatMessages');
+    const messageInput = $('#messageInput');
+    const sendButton = $('#sendButton');
+    const stopButton = $('#stopButton');
+    const errorMessage = $('#errorMessage');
+    const newChatButton = $('#newChatButton');
+    
+    // The plugin web service and the app of the page, as rendered by the server
+    const chatContainer = $('.llm-chat-container');
+    const serviceUrl = chatContainer.attr('data-service-url');
+    const appId = chatContainer.attr('data-app-id');
+    const appVersion = chatContainer.attr('data-app-version');
+    
+    // Identifies this conversation so the server can keep its history
+    let conversationId = createId();
+    
+    function createId() {
+        return Date.now().toString(36) + Math.random().toString(36).substring(2, 10);
+    }
+    
+    // The message being generated, which the Stop button and leaving the page cancel
+    let activeMessage = null;
+    
+    // Tell the server to stop generating a message; a beacon still goes out while the page unloads
+    function cancelOnServer(requestId, beacon) {
+        const data = {
+            action: 'cancel',
+            conversationId: conversationId,
+            requestId: requestId,
+            appId: appId,
+            appVersion: appVersion
+        };
+        if (beacon && navigator.sendBeacon) {
+            navigator.sendBeacon(serviceUrl, new URLSearchParams(data));
+        } else {
+            $.ajax({ url: serviceUrl, type: 'POST', data: data });
+        }
+    }
+    
+    // Function to format LLM responses with markdown and handle special characters
+    function formatLLMResponse(text) {
+        // First, temporarily replace <br> tags with a placeholder
+        let processedText = text.replace(/<br\s*\/?>/gi, '{{BR_PLACEHOLDER}}');
+        
+        // Escape any HTML to prevent XSS
+        processedText = processedText
+            .replace(/&/g, '&amp;')
+            .replace(/</g, '&lt;')
+            .replace(/>/g, '&gt;');
+        
+        // Restore <br> tags from placeholders
+        processedText = processedText.replace(/{{BR_PLACEHOLDER}}/g, '<br>');
+        
+        try {
+            // Use marked.js to convert markdown to HTML
+            const formattedText = marked.parse(processedText);
+            return formattedText;
+        } catch (e) {
+            console.error('Error formatting response:', e);
+            return '<p>' + processedText + '</p>';
+        }
+    }
+    
+    // Find where the settled blocks of a growing markdown text end: after a blank line that is not followed
+    // by an indented line, or after a closing code fence. The last line is left alone as it may still grow.
+    function findSettledEnd(text, from) {
+        let settled = from;
+        let blankEnd = -1;
+        let fence = null;
+        let position = from;
+        let end;
+        while ((end = text.indexOf('\n', position)) !== -1) {
+            const line = text.substring(position, end);
+            const marker = /^ {0,3}(`{3,}|~{3,})/.exec(line);
+            if (fence) {
+                if (marker && marker[1].charAt(0) === fence.charAt(0) && marker[1].length >= fence.length
+                        && line.trim() === marker[1]) {
+                    fence = null;
+                    settled = end + 1;
+                }
+            } else if (!line.trim()) {
+                blankEnd = end + 1;
+            } else {
+                // An indented line may continue the block above the blank line, such as a list item
+                if (blankEnd !== -1 && !/^[ \t]/.test(line)) {
+                    settled = blankEnd;
+                }
+                blankEnd = -1;
+                if (marker) {
+                    fence = marker[1];
+                }
+            }
+            position = end + 1;
+        }
+        return settled;
+    }
+    
+    // Function to render a streamed response as it grows: settled blocks are parsed once and kept, only the
+    // block still being generated is parsed again on each update
+    function createMarkdownRenderer() {
+        const element = $('<div>');
+        const settledDiv = $('<div>').appendTo(element);
+        const tailDiv = $('<div>').appendTo(element);
+        let settledLength = 0;
+        return {
+            element: element,
+            update: function(text) {
+                if (text.length < settledLength) {
+                    // The text started over, as after a retry
+                    settledDiv.empty();
+                    settledLength = 0;
+                }
+                const settledEnd = findSettledEnd(text, settledLength);
+                if (settledEnd > settledLength) {
+                    const block = $('<div>').html(formatLLMResponse(text.substring(settledLength, settledEnd)));
+                    collapseCodeBlocks(block);
+                    settledDiv.append(block.contents());
+                    settledLength = settledEnd;
+                }
+                tailDiv.html(formatLLMResponse(text.substring(settledLength)));
+            }
+        };
+    }
+    
+    // Code blocks longer than this are cut to their first lines until expanded, so they cost little to lay out
+    const CODE_COLLAPSE_LINES = 25;
+    const CODE_PREVIEW_LINES = 10;
+    
+    // expandedBlocks, when given, holds the indexes of the blocks the user expanded, so they stay expanded
+    // when the response is rendered again
+    function collapseCodeBlocks(container, expandedBlocks) {
+        container.find('pre > code').each(function(index) {
+            const code = $(this);
+            const fullText = code.text();
+            const lines = fullText.replace(/\n$/, '').split('\n');
+            if (lines.length <= CODE_COLLAPSE_LINES) return;
+            const preview = lines.slice(0, CODE_PREVIEW_LINES).join('\n');
+            const label = 'Show all ' + lines.length + ' lines';
+            const pre = code.parent().addClass('code-collapsed');
+            const toggle = $('<button>').addClass('code-toggle').text(label);
+            let expanded = false;
+            function show(expand) {
+                expanded = expand;
+                code.text(expanded ? fullText : preview);
+                pre.toggleClass('code-collapsed', !expanded);
+                toggle.text(expanded ? 'Collapse' : label);
+            }
+            show(!!expandedBlocks && expandedBlocks.has(index));
+            toggle.on('click', function() {
+                show(!expanded);
+                if (!expandedBlocks) return;
+                if (expanded) {
+                    expandedBlocks.add(index);
+                } else {
+                    expandedBlocks.delete(index);
+                }
+            });
+            pre.after(toggle);
+        });
+    }
+    
+    // Messages far outside the visible part of the chat are emptied, keeping their height, and filled again
+    // when they come back near it. Responses are rendered again from their text, so their elements are freed.
+    const virtualizer = createVirtualizer();
+    
+    function createVirtualizer() {
+        if (!('IntersectionObserver' in window)) {
+            return { observe: function() {}, unobserve: function() {} };
+        }
+        const observer = new IntersectionObserver(function(entries) {
+            entries.forEach(function(entry) {
+                if (entry.isIntersecting) {
+                    restoreMessage($(entry.target));
+                } else {
+                    virtualizeMessage($(entry.target));
+                }
+            });
+        }, { root: chatMessages[0], rootMargin: '1500px 0px' });
+        return {
+            observe: function(element) { observer.observe(element); },
+            unobserve: function(element) { observer.unobserve(element); }
+        };
+    }
+    
+    function virtualizeMessage(message) {
+        if (message.hasClass('streaming') || message.data('virtualized')) return;
+        message.height(message.height());
+        const markdown = message.data('markdown');
+        if (markdown) {
+            // The list of ready files is kept as it is, the rest is rendered again from the text
+            if (markdown.readyFiles) markdown.readyFiles.detach();
+            message.empty();
+        } else {
+            message.data('detached', message.contents().detach());
+        }
+        message.data('virtualized', true);
+    }
+    
+    function restoreMessage(message) {
+        if (!message.data('virtualized')) return;
+        const markdown = message.data('markdown');
+        if (markdown) {
+            showBotResponse(message, markdown.text, markdown.responseId, markdown.readyFiles,
+                markdown.expandedBlocks);
+        } else {
+            message.append(message.data('detached'));
+            message.removeData('detached');
+        }
+        message.css('height', '').removeData('virtualized');
+    }
+    
+    // Function to add a message to the chat
+    function addMessage(message, isUser) {
+        const messageDiv = $('<div>').addClass('message').addClass(isUser ? 'user-message' : 'bot-message').css({
+            'margin-bottom': '15px',
+            'padding': '10px',
+            'border-radius': '5px',
+            'max-width': '80%',
+            'word-wrap': 'break-word'
+        });
+        
+        if (isUser) {
+            messageDiv.css({
+                'background-color': '#dcf8c6',
+                'margin-left': 'auto',
+                'margin-right': '10px'
+            });
+        } else {
+            messageDiv.css({
+                'background-color': '#ffffff',
+                'margin-right': 'auto',
+                'margin-left': '10px',
+                'border': '1px solid #e0e0e0',
+                'padding-bottom': '15px' /* Add extra padding at the bottom */
+            });
+        }
+        
+        if (!isUser) {
+            // Format LLM responses with markdown
+            messageDiv.html(formatLLMResponse(message));
+            
+            // Add download button if the message contains code
+            if (message.includes('```') || message.includes('<pre>') || message.includes('<code>')) {
+                messageDiv.append($('<div>').addClass('download-divider'));
+                appendDownloadButton(messageDiv, null, message);
+            }
+        } else {
+            // User messages are displayed as plain text
+            messageDiv.text(message);
+        }
+        chatMessages.append(messageDiv);
+        virtualizer.observe(messageDiv[0]);
+        chatMessages.scrollTop(chatMessages[0].scrollHeight);
+    }
+    
+    // Function to render a complete bot response, the files found in it and its download button
+    function showBotResponse(responseDiv, responseText, responseId, readyFiles, expandedBlocks) {
+        // Replace loading animation with formatted response text
+        if (readyFiles) readyFiles.detach();
+        responseDiv.empty().html(formatLLMResponse(responseText));
+        expandedBlocks = expandedBlocks || new Set();
+        collapseCodeBlocks(responseDiv, expandedBlocks);
+        
+        // Keep the text, the ready files and the expanded code blocks, so the response can be rendered again
+        // as it was after it was scrolled far away
+        responseDiv.data('markdown', {
+            text: responseText,
+            responseId: responseId,
+            readyFiles: readyFiles,
+            expandedBlocks: expandedBlocks
+        });
+        if (readyFiles && readyFiles.children().length) {
+            responseDiv.append(readyFiles);
+        }
+        
+        // Add download button if the response contains code
+        if (responseText.includes('```') || responseText.includes('<pre>') || responseText.includes('<code>')) {
+            const actionsDiv = $('<div>').addClass('response-actions');
+            appendDownloadButton(actionsDiv, responseId, responseText);
+            if (responseId) {
+                appendFilesButton(actionsDiv, responseId);
+            }
+            responseDiv.append(actionsDiv);
+        }
+    }
+    
+    // Function to add a button downloading the code of a response as a zip file
+    function appendDownloadButton(container, responseId, responseText) {
+        // The server only hands a kept response to the conversation it belongs to
+        const responseConversationId = conversationId;
+        const downloadBtn = $('<button>').addClass('response-download-btn')
+            .html('<i class="fas fa-download"></i> Download Code')
+            .attr('title', 'Download code from this response');
+        
+        // Add click handler for the download button
+        downloadBtn.on('click', function() {
+            // Disable the button during download
+            downloadBtn.prop('disabled', true);
+            downloadBtn.html('<i class="fas fa-spinner fa-spin"></i> Preparing...');
+            
+            try {
+                const params = {
+                    action: 'downloadCode',
+                    conversationId: responseConversationId,
+                    appId: appId,
+                    appVersion: appVersion
+                };
+                if (!responseId) {
+                    // Without an ID the text is sent as the request body, which the server reads as a stream
+                    uploadForDownload(serviceUrl + '?' + $.param(params), responseText, downloadBtn);
+                    return;
+                }
+                params.responseId = responseId;
+                
+                // Refer to the response kept by the server; a GET lets the browser revalidate its copy by ETag
+                const form = $('<form>');
+                form.attr('method', 'get');
+                form.attr('action', serviceUrl);
+                form.attr('target', '_blank');
+                $.each(params, function(name, value) {
+                    form.append($('<input>').attr({type: 'hidden', name: name, value: value}));
+                });
+                
+                // Append the form to the body and submit it
+                $('body').append(form);
+                form.submit();
+                form.remove();
+                
+                // Re-enable the button after a delay
+                setTimeout(function() {
+                    resetDownloadButton(downloadBtn);
+                }, 2000);
+            } catch (error) {
+                console.error('Error downloading code:', error);
+                alert('Error downloading code: ' + error.message);
+                
+                // Re-enable the button
+                resetDownloadButton(downloadBtn);
+            }
+        });
+        container.append(downloadBtn);
+    }
+    
+    // Function to reset a download button once its download has started or failed
+    function resetDownloadButton(downloadBtn) {
+        downloadBtn.prop('disabled', false);
+        downloadBtn.html('<i class="fas fa-download"></i> Download Code');
+    }
+    
+    // Function to post the text of a response and save the zip sent back
+    function uploadForDownload(url, responseText, downloadBtn) {
+        const xhr = new XMLHttpRequest();
+        xhr.open('POST', url);
+        xhr.responseType = 'blob';
+        xhr.setRequestHeader('Content-Type', 'text/plain;charset=UTF-8');
+        xhr.onload = function() {
+            if (xhr.status === 200) {
+                const link = document.createElement('a');
+                link.href = URL.createObjectURL(xhr.response);
+                link.download = 'code_snippets.zip';
+                document.body.appendChild(link);
+                link.click();
+                document.body.removeChild(link);
+                setTimeout(function() {
+                    URL.revokeObjectURL(link.href);
+                }, 1000);
+            } else if (xhr.status === 413) {
+                alert('This response is too long to download its code');
+            } else {
+                alert('Could not download the code of this response (status ' + xhr.status + ')');
+            }
+            resetDownloadButton(downloadBtn);
+        };
+        xhr.onerror = function() {
+            alert('Could not download the code of this response');
+            resetDownloadButton(downloadBtn);
+        };
+        xhr.send(responseText);
+    }
+    
+    // Function to add a button listing the files of a response, so that single files can be downloaded
+    function appendFilesButton(container, responseId) {
+        const responseConversationId = conversationId;
+        const filesBtn = $('<button>').addClass('response-download-btn').css('margin-right', '6px')
+            .html('<i class="fas fa-folder-open"></i> Files')
+            .attr('title', 'Show the files of this response');
+        const filesPanel = $('<div>').addClass('response-files').hide();
+        
+        filesBtn.on('click', function() {
+            // The manifest is fetched once, then the list is only shown or hidden
+            if (filesPanel.children().length) {
+                filesPanel.toggle();
+                return;
+            }
+            filesBtn.prop('disabled', true);
+            $.ajax({
+                url: serviceUrl,
+                type: 'GET',
+                dataType: 'json',
+                data: {
+                    action: 'listFiles',
+                    responseId: responseId,
+                    conversationId: responseConversationId,
+                    appId: appId,
+                    appVersion: appVersion
+                },
+                success: function(manifest) {
+                    renderFileList(filesPanel, manifest, function(paths) {
+                        downloadFiles(serviceUrl, responseId, responseConversationId, paths);
+                    });
+                    filesPanel.show();
+                },
+                error: function(xhr) {
+                    let message = 'Could not list the files of this response';
+                    try {
+                        message = JSON.parse(xhr.responseText).error || message;
+                    } catch (e) {
+                        // Keep the generic message
+                    }
+                    alert(message);
+                },
+                complete: function() {
+                    filesBtn.prop('disabled', false);
+                }
+            });
+        });
+        container.append(filesBtn);
+        container.append(filesPanel);
+    }
+    
+    // Function to show the files of a manifest as a tree, each with a download link and a checkbox
+    function renderFileList(panel, manifest, download) {
+        panel.empty();
+        const shownDirs = {};
+        const files = manifest.files.slice().sort(function(a, b) {
+            return a.path.localeCompare(b.path);
+        });
+        files.forEach(function(file) {
+            const segments = file.path.split('/');
+            
+            // A directory gets its own row the first time one of its files is listed
+            for (let depth = 0; depth < segments.length - 1; depth++) {
+                const dir = segments.slice(0, depth + 1).join('/');
+                if (!shownDirs[dir]) {
+                    shownDirs[dir] = true;
+                    panel.append($('<div>').addClass('response-files-dir')
+                        .css('padding-left', (depth * 14) + 'px').text(segments[depth] + '/'));
+                }
+            }
+            
+            const row = $('<div>').css('padding-left', ((segments.length - 1) * 14) + 'px');
+            row.append($('<input type="checkbox">').val(file.path).css('margin-right', '4px'));
+            row.append($('<a href="#">').text(segments[segments.length - 1]).attr('title', file.path)
+                .on('click', function(e) {
+                    e.preventDefault();
+                    download([file.path]);
+                }));
+            row.append($('<span>').addClass('response-files-size').text(formatSize(file.size)));
+            panel.append(row);
+        });
+        
+        const downloadSelected = $('<button>').addClass('response-download-btn').text('Download selected')
+            .on('click', function() {
+                const paths = panel.find('input:checked').map(function() {
+                    return this.value;
+                }).get();
+                if (paths.length) {
+                    download(paths);
+                }
+            });
+        panel.append($('<div>').addClass('response-files-summary')
+            .text(files.length + ' files, ' + formatSize(manifest.totalSize)).append(downloadSelected));
+    }
+    
+    // Function to download one file of a response as is, or several as a zip
+    function downloadFiles(serviceUrl, responseId, responseConversationId, paths) {
+        const form = $('<form>').attr({method: 'get', action: serviceUrl, target: '_blank'});
+        const params = {
+            action: 'downloadFile',
+            responseId: responseId,
+            conversationId: responseConversationId,
+            appId: appId,
+            appVersion: appVersion
+        };
+        $.each(params, function(name, value) {
+            form.append($('<input>').attr({type: 'hidden', name: name, value: value}));
+        });
+        paths.forEach(function(path) {
+            form.append($('<input>').attr({type: 'hidden', name: 'path', value: path}));
+        });
+        $('body').append(form);
+        form.submit();
+        form.remove();
+    }
+    
+    // Function to format a size in bytes for display
+    function formatSize(bytes) {
+        if (bytes < 1024) {
+            return bytes + ' B';
+        }
+        if (bytes < 1024 * 1024) {
+            return (bytes / 1024).toFixed(1) + ' KB';
+        }
+        return (bytes / (1024 * 1024)).toFixed(1) + ' MB';
+    }
+    
+    // Function to parse server-sent events out of a growing response body
+    function createEventParser(onEvent) {
+        let offset = 0;
+        return function(text) {
+            let boundary;
+            while ((boundary = text.indexOf('\n\n', offset)) !== -1) {
+                const frame = text.substring(offset, boundary);
+                offset = boundary + 2;
+                let eventName = 'message';
+                let data = '';
+                frame.split('\n').forEach(function(line) {
+                    if (line.indexOf('event:') === 0) {
+                        eventName = line.substring(6).trim();
+                    } else if (line.indexOf('data:') === 0) {
+                        data += line.substring(5).trim();
+                    }
+                });
+                if (data) {
+                    try {
+                        onEvent(eventName, JSON.parse(data));
+                    } catch (e) {
+                        console.error('Error parsing stream event:', e);
+                    }
+                }
+            }
+        };
+    }
+    
+    // Function to send a message to the LLM API
+    function sendMessage() {
+        const message = messageInput.val().trim();
+        if (!message) return;
+        
+        // Add user message to chat
+        addMessage(message, true);
+        
+        // Clear input
+        messageInput.val('');
+        
+        // Disable send button and hide error message
+        sendButton.prop('disabled', true);
+        errorMessage.hide();
+        
+        // Create a message div for the response with loading animation
+        const responseDiv = $('<div>').addClass('message').addClass('bot-message').css({
+            'background-color': '#ffffff',
+            'margin-right': 'auto',
+            'margin-left': '10px',
+            'border': '1px solid #e0e0e0',
+            'margin-bottom': '15px',
+            'padding': '10px',
+            'padding-bottom': '15px', /* Add extra padding at the bottom */
+            'border-radius': '5px',
+            'max-width': '80%',
+            'word-wrap': 'break-word'
+        });
+        
+        // Add loading animation to the response div
+        const loadingAnimation = $('<div>').addClass('loading-animation');
+        responseDiv.addClass('streaming').append(loadingAnimation);
+        chatMessages.append(responseDiv);
+        virtualizer.observe(responseDiv[0]);
+        const queueStatus = $('<div>').css({'font-size': '12px', 'color': '#6c757d'});
+        const readyFiles = $('<div>').addClass('ready-files').css({'font-size': '12px', 'color': '#6c757d', 'margin-top': '8px'});
+        chatMessages.scrollTop(chatMessages[0].scrollHeight);
+        
+        // Accumulate streamed tokens and render the new ones at most once per animation frame
+        let streamedText = '';
+        let streamFinished = false;
+        let renderPending = false;
+        let markdown = null;
+        function scheduleRender() {
+            if (renderPending) return;
+            renderPending = true;
+            window.requestAnimationFrame(function() {
+                renderPending = false;
+                if (streamFinished) return;
+                if (!markdown) {
+                    // The first tokens replace the loading animation and the queue status
+                    readyFiles.detach();
+                    markdown = createMarkdownRenderer();
+                    responseDiv.empty().append(markdown.element);
+                    if (readyFiles.children().length) {
+                        responseDiv.append(readyFiles);
+                    }
+                }
+                markdown.update(streamedText);
+                chatMessages.scrollTop(chatMessages[0].scrollHeight);
+            });
+        }
+        
+        // Identifies this message so a retry attaches to the generation already running
+        const requestId = createId();
+        let retried = false;
+        let retryScheduled = false;
+        
+        // Stopping drops the request and tells the server, which stops Ollama once no one else follows it
+        let currentRequest = null;
+        let stopped = false;
+        function stop(leavingPage) {
+            if (stopped || streamFinished) return;
+            stopped = true;
+            streamFinished = true;
+            cancelOnServer(requestId, leavingPage);
+            if (currentRequest) currentRequest.abort();
+            if (leavingPage) return;
+            if (streamedText) {
+                showBotResponse(responseDiv, streamedText);
+            } else {
+                responseDiv.empty();
+            }
+            responseDiv.append($('<div>').css({'font-size': '12px', 'color': '#6c757d', 'margin-top': '8px'}).text('Stopped'));
+            
+            // Rendering the text again would lose the note, so the message is kept as it is when scrolled away
+            responseDiv.removeData('markdown');
+            finishMessage();
+        }
+        function finishMessage() {
+            activeMessage = null;
+            
+            // Observing the message again checks at once whether it is already far away
+            responseDiv.removeClass('streaming');
+            virtualizer.unobserve(responseDiv[0]);
+            virtualizer.observe(responseDiv[0]);
+            stopButton.hide();
+            sendButton.prop('disabled', false);
+        }
+        activeMessage = { stop: stop };
+        stopButton.show();
+        
+        function handleEvent(eventName, data) {
+            if (eventName === 'queue') {
+                // Show where the message stands while the server is busy
+                const seconds = Math.max(1, Math.round(data.estimatedWait / 1000));
+                queueStatus.text('Waiting in queue: position ' + data.position + ', about ' + seconds + 's');
+                if (!queueStatus.parent().length) {
+                    responseDiv.append(queueStatus);
+                }
+            } else if (eventName === 'token') {
+                streamedText += data.token;
+                scheduleRender();
+            } else if (eventName === 'file') {
+                // List each code file as soon as the server has extracted it
+                readyFiles.append($('<div>').text('\u2713 ' + data.name + ' (' + data.length + ' characters)'));
+                if (!readyFiles.parent().length) {
+                    responseDiv.append(readyFiles);
+                }
+            } else if (eventName === 'done') {
+                streamFinished = true;
+                showBotResponse(responseDiv, streamedText, data.responseId, readyFiles);
+                chatMessages.scrollTop(chatMessages[0].scrollHeight);
+            } else if (eventName === 'error') {
+                streamFinished = true;
+                errorMessage.text(data.error).show();
+                responseDiv.empty().text('Error: Could not get response from Ollama. Please try again.');
+            }
+        }
+        
+        // Send message to server
+        function post() {
+            retryScheduled = false;
+            if (stopped) return;
+            const parseEvents = createEventParser(handleEvent);
+            currentRequest = $.ajax({
+                url: serviceUrl,
+                type: 'POST',
+                data: {
+                    action: 'sendMessage',
+                    message: message,
+                    conversationId: conversationId,
+                    requestId: requestId,
+                    stream: 'true',
+                    appId: appId,
+                    appVersion: appVersion
+                },
+                dataType: 'text',
+                xhr: function() {
+                    // Parse events as they arrive instead of waiting for the whole body
+                    const xhr = $.ajaxSettings.xhr();
+                    xhr.addEventListener('progress', function() {
+                        parseEvents(xhr.responseText);
+                    });
+                    return xhr;
+                },
+                success: function(data) {
+                    if (stopped) return;
+                    // Pick up any events that arrived with the final chunk
+                    parseEvents(data);
+                    if (!streamFinished) {
+                        if (streamedText) {
+                            // The stream ended without a done event, keep what was generated
+                            showBotResponse(responseDiv, streamedText);
+                        } else {
+                            // Server answered without streaming, fall back to the JSON response
+                            console.log('Raw success response:', data);
+                            try {
+                                const jsonData = JSON.parse(data);
+                                showBotResponse(responseDiv, jsonData.response || '', jsonData.responseId);
+                            } catch (e) {
+                                console.error('Error parsing response:', e);
+                                showBotResponse(responseDiv, data);
+                            }
+                        }
+                    }
+                    chatMessages.scrollTop(chatMessages[0].scrollHeight);
+                },
+                error: function(xhr, status, error) {
+                    if (stopped) return;
+                    if (xhr.status === 0 && status !== 'abort' && !retried) {
+                        // The connection dropped, retry once; the server replays the answer from the start
+                        retried = true;
+                        retryScheduled = true;
+                        streamedText = '';
+                        markdown = null;
+                        setTimeout(post, 1000);
+                        return;
+                    }
+                    
+                    // Show error message
+                    let errorText = 'Error communicating with the LLM API';
+                    try {
+                        console.log('  or response:', xhr.responseText);
+                        console.log('Status code:', xhr.status);
+                        console.log('Error:', error);
+                        
+                        const debugDiv = $('<div>').css({
+                            'background-color': '#ffeeee',
+                            'border': '1px solid #ff0000',
+                            'padding': '10px',
+                            'margin-top': '10px',
+                            'white-space': 'pre-wrap',
+                            'font-family': 'monospace',
+                            'font-size': '12px'
+                        });
+                        debugDiv.text('Raw Response:\n' + xhr.responseText);
+                        errorMessage.after(debugDiv);
+                        
+                        try {
+                            const response = JSON.parse(xhr.responseText);
+                            if (response.error) {
+                                errorText = response.error;
+                            }
+                        } catch (e) {
+                            console.error('Error parsing error response:', e);
+                            if (xhr.responseText && xhr.responseText.length < 200) {
+                                errorText = xhr.responseText;
+                            }
+                        }
+                    } catch (e) {
+                        console.error('Error parsing error response:', e);
+                    }
+                    errorMessage.text(errorText).show();
+                    
+                    // Replace loading animation with error message
+                    responseDiv.empty().text('Error: Could not get response from Ollama. Please try again.');
+                },
+                complete: function() {
+                    // Re-enable send button
+                    if (!retryScheduled) {
+                        finishMessage();
+                    }
+                }
+            });
+        }
+        post();
+    }
+    
+    // Start a new conversation and let the server forget the old history
+    newChatButton.click(function() {
+        if (activeMessage) activeMessage.stop();
+        $.ajax({
+            url: serviceUrl,
+            type: 'POST',
+            data: {
+                action: 'clearConversation',
+                conversationId: conversationId,
+                appId: appId,
+                appVersion: appVersion
+            }
+        });
+        conversationId = createId();
+        chatMessages.children().not(':first').each(function() {
+            virtualizer.unobserve(this);
+        }).remove();
+        errorMessage.hide();
+    });
+    
+    // Send message when button is clicked
+    sendButton.click(sendMessage);
+    
+    // Stop the message being generated
+    stopButton.click(function() {
+        if (activeMessage) activeMessage.stop();
+    });
+    
+    // Leaving the page stops the message being generated
+    window.addEventListener('pagehide', function() {
+        if (activeMessage) activeMessage.stop(true);
+    });
+    
+    // Send message when Enter key is pressed (but allow Shift+Enter for new lines)
+    messageInput.keydown(function(event) {
+        if (event.keyCode === 13 && !event.shiftKey) {
+            event.preventDefault();
+            sendMessage();
+        }
+    });
+});